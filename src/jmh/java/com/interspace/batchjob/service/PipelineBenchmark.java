@@ -0,0 +1,98 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.config.AppConfig;
+import com.interspace.batchjob.sim.FaultInjector;
+import com.interspace.batchjob.sim.InMemoryS3Client;
+import com.interspace.batchjob.sim.InMemorySqsClient;
+import com.interspace.batchjob.sim.Payloads;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Receive, upload and delete through {@link SqsPoller}, {@link S3Uploader} and {@link RetryService}
+ * against in-memory SQS and S3. Each invocation enqueues a batch of messages and returns once all
+ * of them have been deleted, so the score is messages per second through the whole pipeline.
+ *
+ * <p>Run with {@code -prof gc} for allocation per message: gc.alloc.rate.norm is reported per
+ * operation, and an operation is one message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+    // A multiple of the SQS batch size, so the last delete batch fills up instead of lingering
+    private static final int MESSAGES_PER_INVOCATION = 1000;
+    private static final int SEND_BATCH = 10;
+
+    @Param({"256", "16384", "262144"})
+    private int payloadBytes;
+
+    @Param({"1", "8", "32"})
+    private int workers;
+
+    @Param({"0"})
+    private long s3LatencyMicros;
+
+    @Param({"0.0"})
+    private double s3FailureRate;
+
+    private String queueUrl;
+    private InMemorySqsClient sqsClient;
+    private ExecutorService workerPool;
+    private SqsPoller poller;
+    private List<SendMessageBatchRequest> sendBatches;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queueUrl = AppConfig.getSqsQueueUrl();
+        sqsClient = new InMemorySqsClient();
+        InMemoryS3Client s3Client = new InMemoryS3Client(
+                new FaultInjector(s3LatencyMicros, s3LatencyMicros / 4, s3FailureRate), false);
+        workerPool = Executors.newFixedThreadPool(workers);
+        poller = new SqsPoller(sqsClient, new S3Uploader(s3Client), new RetryService(), workerPool, workers * 2);
+        sendBatches = sendBatches(queueUrl, Payloads.json(payloadBytes));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        poller.stopPolling();
+        sqsClient.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public void pollUploadDelete() {
+        long target = sqsClient.deletedCount(queueUrl) + MESSAGES_PER_INVOCATION;
+        for (SendMessageBatchRequest batch : sendBatches) {
+            sqsClient.sendMessageBatch(batch);
+        }
+        while (sqsClient.deletedCount(queueUrl) < target) {
+            if (poller.pollMessages(0) == 0) {
+                LockSupport.parkNanos(50_000);
+            }
+        }
+    }
+
+    private static List<SendMessageBatchRequest> sendBatches(String queueUrl, String body) {
+        List<SendMessageBatchRequest> batches = new ArrayList<>();
+        for (int sent = 0; sent < MESSAGES_PER_INVOCATION; sent += SEND_BATCH) {
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>(SEND_BATCH);
+            for (int i = 0; i < SEND_BATCH; i++) {
+                entries.add(SendMessageBatchRequestEntry.builder().id(String.valueOf(i)).messageBody(body).build());
+            }
+            batches.add(SendMessageBatchRequest.builder().queueUrl(queueUrl).entries(entries).build());
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,54 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.sim.FaultInjector;
+import com.interspace.batchjob.sim.InMemoryS3Client;
+import com.interspace.batchjob.sim.Payloads;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of one upload through {@link RetryService} and {@link S3Uploader}, including
+ * compression, against an in-memory S3 with injected latency and failures. Sample mode reports the
+ * p50 to p99.99 percentiles; use {@code -t} to measure under concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UploadBenchmark {
+
+    @Param({"256", "16384", "262144"})
+    private int payloadBytes;
+
+    @Param({"0", "2000"})
+    private long s3LatencyMicros;
+
+    @Param({"0.0", "0.01"})
+    private double s3FailureRate;
+
+    private S3Uploader uploader;
+    private RetryService retryService;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryS3Client s3Client = new InMemoryS3Client(
+                new FaultInjector(s3LatencyMicros, s3LatencyMicros / 4, s3FailureRate), false);
+        uploader = new S3Uploader(s3Client);
+        retryService = new RetryService();
+        payload = Payloads.json(payloadBytes);
+    }
+
+    @Benchmark
+    public void uploadWithRetry() throws Exception {
+        String objectKey = "messages/" + UUID.randomUUID() + ".json";
+        retryService.executeWithRetry(() -> {
+            uploader.uploadToS3("benchmark-bucket", objectKey, payload);
+            return null;
+        });
+    }
+}
@@ -2,52 +2,99 @@ package com.interspace.batchjob;
 
 import com.interspace.batchjob.config.AppConfig;
 import com.interspace.batchjob.config.AwsClientFactory;
+import com.interspace.batchjob.config.ConfigReloader;
+import com.interspace.batchjob.config.QueueConfig;
 import com.interspace.batchjob.service.RetryService;
 import com.interspace.batchjob.service.S3Uploader;
 import com.interspace.batchjob.service.SqsPoller;
+import com.interspace.batchjob.sim.LoadTest;
 import com.interspace.batchjob.telemetry.TelemetryConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
-import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
-import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class BatchJobProcessorApplication {
     private static final Logger logger = LoggerFactory.getLogger(BatchJobProcessorApplication.class);
 
     public static void main(String[] args) {
+        if (args.length > 0 && "load-test".equals(args[0])) {
+            LoadTest.main(args);
+            return;
+        }
+
         logger.info("Starting Batch Job Processor Application");
+        long startNanos = System.nanoTime();
 
         try {
-            // Initialize OpenTelemetry
-            TelemetryConfig.initialize();
+            // Telemetry and the AWS clients do not depend on each other, so build them in parallel
+            CompletableFuture<Void> telemetry = CompletableFuture.runAsync(TelemetryConfig::initialize);
+            CompletableFuture<SqsClient> sqsClientFuture = CompletableFuture.supplyAsync(AwsClientFactory::createSqsClient);
+            CompletableFuture<S3Client> s3ClientFuture = CompletableFuture.supplyAsync(AwsClientFactory::createS3Client);
+            CompletableFuture<S3AsyncClient> s3AsyncClientFuture = AppConfig.isS3AsyncEnabled()
+                    ? CompletableFuture.supplyAsync(AwsClientFactory::createS3AsyncClient)
+                    : CompletableFuture.completedFuture(null);
+            telemetry.join();
             logger.info("OpenTelemetry initialized");
-
-            // Create AWS clients
-            SqsClient sqsClient = AwsClientFactory.createSqsClient();
-            S3Client s3Client = AwsClientFactory.createS3Client();
+            SqsClient sqsClient = sqsClientFuture.join();
+            S3Client s3Client = s3ClientFuture.join();
+            S3AsyncClient s3AsyncClient = s3AsyncClientFuture.join();
             logger.info("AWS clients created");
 
             // Initialize AWS resources
-            initializeAwsResources(sqsClient, s3Client);
+            if (AppConfig.isBootstrapProvisionResources()) {
+                initializeAwsResources(sqsClient, s3Client);
+            }
+            AwsClientFactory.warmUp(sqsClient, s3Client, s3AsyncClient);
 
             // Create services
             RetryService retryService = new RetryService();
-            S3Uploader s3Uploader = new S3Uploader(s3Client);
+            S3Uploader s3Uploader = new S3Uploader(s3Client, s3AsyncClient);
             SqsPoller sqsPoller = new SqsPoller(sqsClient, s3Uploader, retryService);
 
+            // Watch the external config file so tuning changes apply without a restart
+            ConfigReloader configReloader = AppConfig.getConfigFile().isBlank() ? null
+                    : new ConfigReloader(Path.of(AppConfig.getConfigFile()), AppConfig.getConfigReloadIntervalMs());
+            if (configReloader != null) {
+                configReloader.addListener(retryService::applyTuning);
+                configReloader.addListener(sqsPoller::applyTuning);
+                configReloader.start();
+            }
+
             // Add shutdown hook for graceful shutdown
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 logger.info("Shutting down application...");
+                if (configReloader != null) {
+                    configReloader.close();
+                }
                 sqsPoller.stopPolling();
                 sqsClient.close();
                 s3Client.close();
+                if (s3AsyncClient != null) {
+                    s3AsyncClient.close();
+                }
+                TelemetryConfig.shutdown();
                 logger.info("Application shutdown complete");
             }));
 
+            logger.info("Startup completed in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            if (AppConfig.isBootstrapDryRun()) {
+                // Used to check the configuration and to record an AppCDS archive; runs the shutdown hook
+                System.exit(0);
+            }
+
             // Start polling (this will run indefinitely)
             sqsPoller.startPolling();
 
@@ -57,50 +104,51 @@ public class BatchJobProcessorApplication {
         }
     }
 
+    /**
+     * Creates the queues and the bucket if they are missing, all at once. CreateQueue returns the
+     * existing queue and CreateBucket fails with BucketAlreadyOwnedByYou when it already exists, so
+     * each resource costs one round trip. Disable with app.bootstrap.provision-resources=false
+     * where the resources are managed outside the application.
+     */
     private static void initializeAwsResources(SqsClient sqsClient, S3Client s3Client) {
         logger.info("Initializing AWS resources...");
-        
-        // Create SQS queues if they don't exist
-        createQueueIfNotExists(sqsClient, "batch-job-queue");
-        createQueueIfNotExists(sqsClient, "batch-job-dlq");
-        
-        // Create S3 bucket if it doesn't exist
-        createBucketIfNotExists(s3Client, AppConfig.getS3BucketName());
-        
+
+        Set<String> queueNames = new LinkedHashSet<>();
+        Set<String> bucketNames = new LinkedHashSet<>();
+        for (QueueConfig queue : QueueConfig.fromAppConfig()) {
+            queueNames.add(queueName(queue.queueUrl()));
+            queueNames.add(queueName(queue.dlqUrl()));
+            bucketNames.add(queue.bucketName());
+        }
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        queueNames.forEach(name -> calls.add(CompletableFuture.runAsync(() -> createQueueIfNotExists(sqsClient, name))));
+        bucketNames.forEach(name -> calls.add(CompletableFuture.runAsync(() -> createBucketIfNotExists(s3Client, name))));
+        CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).join();
+
         logger.info("AWS resources initialized");
     }
 
+    private static String queueName(String queueUrl) {
+        return queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+    }
+
     private static void createQueueIfNotExists(SqsClient sqsClient, String queueName) {
-        try {
-            GetQueueUrlRequest getQueueRequest = GetQueueUrlRequest.builder()
-                    .queueName(queueName)
-                    .build();
-            sqsClient.getQueueUrl(getQueueRequest);
-            logger.info("Queue already exists: {}", queueName);
-        } catch (Exception e) {
-            logger.info("Creating queue: {}", queueName);
-            CreateQueueRequest createQueueRequest = CreateQueueRequest.builder()
-                    .queueName(queueName)
-                    .build();
-            sqsClient.createQueue(createQueueRequest);
-            logger.info("Queue created: {}", queueName);
-        }
+        CreateQueueRequest createQueueRequest = CreateQueueRequest.builder()
+                .queueName(queueName)
+                .build();
+        sqsClient.createQueue(createQueueRequest);
+        logger.info("Queue ready: {}", queueName);
     }
 
     private static void createBucketIfNotExists(S3Client s3Client, String bucketName) {
         try {
-            HeadBucketRequest headBucketRequest = HeadBucketRequest.builder()
-                    .bucket(bucketName)
-                    .build();
-            s3Client.headBucket(headBucketRequest);
-            logger.info("Bucket already exists: {}", bucketName);
-        } catch (Exception e) {
-            logger.info("Creating bucket: {}", bucketName);
             CreateBucketRequest createBucketRequest = CreateBucketRequest.builder()
                     .bucket(bucketName)
                     .build();
             s3Client.createBucket(createBucketRequest);
             logger.info("Bucket created: {}", bucketName);
+        } catch (BucketAlreadyOwnedByYouException e) {
+            logger.info("Bucket already exists: {}", bucketName);
         }
     }
 }
\ No newline at end of file
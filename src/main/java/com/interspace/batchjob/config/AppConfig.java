@@ -2,62 +2,599 @@ package com.interspace.batchjob.config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+/**
+ * Application settings. Each setting is resolved, highest precedence first, from:
+ * <ol>
+ *   <li>a system property with the same name ({@code -Dapp.worker.pool-size=32})</li>
+ *   <li>an environment variable named after it in upper case with dots and dashes replaced by
+ *       underscores ({@code APP_WORKER_POOL_SIZE=32})</li>
+ *   <li>the optional file named by {@code app.config.file}</li>
+ *   <li>{@code application.properties} on the classpath</li>
+ * </ol>
+ * The two files are read into an immutable snapshot, which {@link #reload()} replaces as a whole.
+ * Components read their settings once, when they are created; only the settings in
+ * {@link TuningConfig} are applied again after a reload.
+ */
 public class AppConfig {
-    private static final Properties properties = new Properties();
-    
-    static {
+    private static final String CONFIG_FILE_KEY = "app.config.file";
+    private static volatile Properties properties = load();
+
+    /**
+     * Re-reads the configuration files. Fails, leaving the current snapshot in place, if the
+     * external file cannot be read.
+     */
+    public static void reload() {
+        properties = load();
+    }
+
+    public static String getConfigFile() {
+        return get(CONFIG_FILE_KEY, "");
+    }
+
+    public static long getConfigReloadIntervalMs() {
+        return Long.parseLong(get("app.config.reload-interval-ms", "5000"));
+    }
+
+    static String envName(String key) {
+        return key.toUpperCase().replaceAll("[^A-Z0-9]", "_");
+    }
+
+    private static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(envName(key));
+        }
+        if (value == null) {
+            value = properties.getProperty(key, defaultValue);
+        }
+        return value;
+    }
+
+    private static String get(String key) {
+        return get(key, null);
+    }
+
+    // Comma-separated values, blanks skipped
+    private static List<String> getList(String key) {
+        return Arrays.stream(get(key, "").split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .toList();
+    }
+
+    // Comma-separated name:value pairs, in order; the value is everything after the first colon
+    private static Map<String, String> getMap(String key) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String entry : getList(key)) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected name:value in " + key + ", got: " + entry);
+            }
+            map.put(entry.substring(0, colon).trim(), entry.substring(colon + 1).trim());
+        }
+        return map;
+    }
+
+    private static Properties load() {
+        Properties loaded = new Properties();
         try (InputStream input = AppConfig.class.getClassLoader().getResourceAsStream("application.properties")) {
             if (input != null) {
-                properties.load(input);
+                loaded.load(input);
             }
         } catch (IOException e) {
             throw new RuntimeException("Failed to load application properties", e);
         }
+
+        String configFile = System.getProperty(CONFIG_FILE_KEY);
+        if (configFile == null) {
+            configFile = System.getenv(envName(CONFIG_FILE_KEY));
+        }
+        if (configFile == null) {
+            configFile = loaded.getProperty(CONFIG_FILE_KEY, "");
+        }
+        if (!configFile.isBlank()) {
+            Properties external = new Properties();
+            try (InputStream input = Files.newInputStream(Path.of(configFile))) {
+                external.load(input);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load configuration file " + configFile, e);
+            }
+            loaded.putAll(external);
+        }
+        return loaded;
     }
-    
+
     public static String getSqsQueueUrl() {
-        return properties.getProperty("app.sqs.queue-url");
+        return get("app.sqs.queue-url");
     }
     
     public static String getSqsDlqUrl() {
-        return properties.getProperty("app.sqs.dlq-url");
+        return get("app.sqs.dlq-url");
     }
     
     public static String getS3BucketName() {
-        return properties.getProperty("app.s3.bucket-name");
+        return get("app.s3.bucket-name");
     }
     
+    /**
+     * Names of the queues to consume, from the comma-separated app.queues; empty for the single
+     * queue configured by app.sqs.queue-url.
+     */
+    public static List<String> getQueueNames() {
+        return getList("app.queues");
+    }
+
+    public static String getQueueUrl(String queue) {
+        return get("app.queue." + queue + ".url");
+    }
+
+    public static String getQueueDlqUrl(String queue) {
+        return get("app.queue." + queue + ".dlq-url", getSqsDlqUrl());
+    }
+
+    public static String getQueueBucketName(String queue) {
+        return get("app.queue." + queue + ".bucket-name", getS3BucketName());
+    }
+
+    public static String getQueueKeyPrefix(String queue) {
+        return get("app.queue." + queue + ".key-prefix", queue + "/messages/");
+    }
+
+    public static String getQueueBatchKeyPrefix(String queue) {
+        return get("app.queue." + queue + ".batch-key-prefix", queue + "/" + getAggregationKeyPrefix());
+    }
+
+    public static int getQueueWeight(String queue) {
+        return Integer.parseInt(get("app.queue." + queue + ".weight", "1"));
+    }
+
+    public static int getQueueMaxRetryAttempts(String queue) {
+        return Integer.parseInt(get("app.queue." + queue + ".max-attempts", "0"));
+    }
+
     public static String getS3Region() {
-        return properties.getProperty("app.s3.region");
+        return get("app.s3.region");
+    }
+    
+    public static boolean isS3AsyncEnabled() {
+        return Boolean.parseBoolean(get("app.s3.async-enabled", "true"));
+    }
+    
+    public static String getS3AsyncClientType() {
+        return get("app.s3.async-client", "netty");
+    }
+    
+    public static int getS3MaxConcurrentUploads() {
+        return Integer.parseInt(get("app.s3.max-concurrent-uploads", "64"));
+    }
+    
+    public static String getS3CompressionCodec() {
+        return get("app.s3.compression.codec", "none");
+    }
+    
+    public static long getS3CompressionMinBytes() {
+        return Long.parseLong(get("app.s3.compression.min-bytes", "1024"));
+    }
+    
+    public static long getS3MultipartThresholdBytes() {
+        return Long.parseLong(get("app.s3.multipart.threshold-bytes", "16777216"));
+    }
+    
+    public static int getS3MultipartPartSizeBytes() {
+        // S3 rejects parts smaller than 5 MiB (except the last one)
+        return Math.max(5 * 1024 * 1024,
+                Integer.parseInt(get("app.s3.multipart.part-size-bytes", "8388608")));
+    }
+    
+    public static int getS3MultipartParallelism() {
+        return Integer.parseInt(get("app.s3.multipart.parallelism", "4"));
+    }
+    
+    public static String getS3KeyLayout() {
+        return get("app.s3.key.layout", "flat");
+    }
+
+    public static String getS3KeyTemplate() {
+        return get("app.s3.key.template", "{prefix}{id}");
+    }
+
+    public static int getS3KeyShardChars() {
+        return Integer.parseInt(get("app.s3.key.shard-chars", "2"));
+    }
+
+    public static boolean isAggregationEnabled() {
+        return Boolean.parseBoolean(get("app.aggregation.enabled", "false"));
+    }
+    
+    public static String getAggregationKeyPrefix() {
+        return get("app.aggregation.key-prefix", "batches/");
+    }
+    
+    public static long getAggregationMaxBytes() {
+        return Long.parseLong(get("app.aggregation.max-bytes", "8388608"));
+    }
+    
+    public static int getAggregationMaxCount() {
+        return Integer.parseInt(get("app.aggregation.max-count", "500"));
+    }
+    
+    public static long getAggregationMaxAgeMs() {
+        return Long.parseLong(get("app.aggregation.max-age-ms", "5000"));
     }
     
     public static int getMaxRetryAttempts() {
-        return Integer.parseInt(properties.getProperty("app.retry.max-attempts", "3"));
+        return Integer.parseInt(get("app.retry.max-attempts", "3"));
     }
     
     public static long getInitialDelayMs() {
-        return Long.parseLong(properties.getProperty("app.retry.initial-delay-ms", "1000"));
+        return Long.parseLong(get("app.retry.initial-delay-ms", "1000"));
     }
     
     public static long getMaxDelayMs() {
-        return Long.parseLong(properties.getProperty("app.retry.max-delay-ms", "30000"));
+        return Long.parseLong(get("app.retry.max-delay-ms", "30000"));
+    }
+    
+    public static String getRetryMode() {
+        return get("app.retry.mode", "in-process");
+    }
+    
+    public static boolean isCircuitBreakerEnabled() {
+        return Boolean.parseBoolean(get("app.retry.circuit-breaker.enabled", "true"));
+    }
+    
+    public static int getCircuitBreakerFailureThreshold() {
+        return Integer.parseInt(get("app.retry.circuit-breaker.failure-threshold", "5"));
+    }
+    
+    public static long getCircuitBreakerOpenDurationMs() {
+        return Long.parseLong(get("app.retry.circuit-breaker.open-duration-ms", "30000"));
+    }
+    
+    public static int getCircuitBreakerHalfOpenMaxCalls() {
+        return Integer.parseInt(get("app.retry.circuit-breaker.half-open-max-calls", "1"));
+    }
+    
+    public static boolean isRetryBudgetEnabled() {
+        return Boolean.parseBoolean(get("app.retry.budget.enabled", "true"));
+    }
+    
+    public static double getRetryBudgetRatio() {
+        return Double.parseDouble(get("app.retry.budget.ratio", "0.2"));
+    }
+    
+    public static double getRetryBudgetMinRetriesPerSecond() {
+        return Double.parseDouble(get("app.retry.budget.min-retries-per-second", "5"));
     }
     
+    public static int getRetryBudgetCapacity() {
+        return Integer.parseInt(get("app.retry.budget.capacity", "100"));
+    }
+    
+    public static int getSqsReceiverCount() {
+        return Integer.parseInt(get("app.sqs.receiver-count", "2"));
+    }
+    
+    public static int getSqsMinReceiverCount() {
+        return Integer.parseInt(get("app.sqs.min-receiver-count", "1"));
+    }
+    
+    public static long getSqsReceiverScalingIntervalMs() {
+        return Long.parseLong(get("app.sqs.receiver-scaling-interval-ms", "5000"));
+    }
+    
+    public static long getSqsErrorBackoffInitialMs() {
+        return Long.parseLong(get("app.sqs.error-backoff.initial-ms", "500"));
+    }
+    
+    public static long getSqsErrorBackoffMaxMs() {
+        return Long.parseLong(get("app.sqs.error-backoff.max-ms", "30000"));
+    }
+    
+    public static int getSqsVisibilityTimeoutSeconds() {
+        return Integer.parseInt(get("app.sqs.visibility-timeout-seconds", "30"));
+    }
+    
+    public static boolean isVisibilityHeartbeatEnabled() {
+        return Boolean.parseBoolean(get("app.sqs.visibility.heartbeat-enabled", "true"));
+    }
+    
+    public static int getVisibilityMaxExtensionSeconds() {
+        return Integer.parseInt(get("app.sqs.visibility.max-extension-seconds", "3600"));
+    }
+    
+    public static boolean isIdempotencyEnabled() {
+        return Boolean.parseBoolean(get("app.idempotency.enabled", "true"));
+    }
+    
+    public static int getIdempotencyMaxEntries() {
+        return Integer.parseInt(get("app.idempotency.max-entries", "100000"));
+    }
+    
+    public static long getIdempotencyTtlMs() {
+        return Long.parseLong(get("app.idempotency.ttl-ms", "3600000"));
+    }
+    
+    public static String getIdempotencyFile() {
+        return get("app.idempotency.file", "");
+    }
+    
+    public static long getIdempotencyPersistIntervalMs() {
+        return Long.parseLong(get("app.idempotency.persist-interval-ms", "10000"));
+    }
+    
+    public static int getWorkerPoolSize() {
+        return Integer.parseInt(get("app.worker.pool-size", "16"));
+    }
+    
+    public static int getMaxInFlightMessages() {
+        return Integer.parseInt(get("app.worker.max-in-flight", "32"));
+    }
+    
+    public static int getSqsBatchSize() {
+        return Integer.parseInt(get("app.sqs.batch.size", "10"));
+    }
+    
+    public static long getSqsBatchLingerMs() {
+        return Long.parseLong(get("app.sqs.batch.linger-ms", "100"));
+    }
+    
+    public static int getSqsBatchMaxAttempts() {
+        return Integer.parseInt(get("app.sqs.batch.max-attempts", "3"));
+    }
+    
+    public static boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(get("app.metrics.enabled", "true"));
+    }
+    
+    public static int getMetricsPrometheusPort() {
+        return Integer.parseInt(get("app.metrics.prometheus-port", "9464"));
+    }
+    
+    public static String getOtelTracesExporter() {
+        return get("otel.traces.exporter", "jaeger");
+    }
+
+    public static String getOtelJaegerEndpoint() {
+        return get("otel.exporter.jaeger.endpoint", "http://localhost:14250");
+    }
+
+    public static String getOtelTracesSampler() {
+        return get("otel.traces.sampler", "parentbased_always_on");
+    }
+
+    public static double getOtelTracesSamplerArg() {
+        return Double.parseDouble(get("otel.traces.sampler.arg", "1.0"));
+    }
+
+    public static int getOtelBspMaxQueueSize() {
+        return Integer.parseInt(get("otel.bsp.max.queue.size", "2048"));
+    }
+
+    public static int getOtelBspMaxExportBatchSize() {
+        return Integer.parseInt(get("otel.bsp.max.export.batch.size", "512"));
+    }
+
+    public static long getOtelBspScheduleDelayMs() {
+        return Long.parseLong(get("otel.bsp.schedule.delay", "5000"));
+    }
+
+    public static long getOtelBspExportTimeoutMs() {
+        return Long.parseLong(get("otel.bsp.export.timeout", "30000"));
+    }
+
+    public static boolean isTracingKeepErrors() {
+        return Boolean.parseBoolean(get("app.tracing.keep-errors", "false"));
+    }
+
+    public static String getTracingSpanMode() {
+        return get("app.tracing.span-mode", "full");
+    }
+
+    public static long getLoadTestMessages() {
+        return Long.parseLong(get("app.loadtest.messages", "1000000"));
+    }
+
+    public static double getLoadTestRate() {
+        return Double.parseDouble(get("app.loadtest.rate", "5000"));
+    }
+
+    public static String getLoadTestArrival() {
+        return get("app.loadtest.arrival", "fixed");
+    }
+
+    public static String getLoadTestSizeDistribution() {
+        return get("app.loadtest.size-distribution", "512:60,4096:30,65536:9,262144:1");
+    }
+
+    public static long getLoadTestReportIntervalMs() {
+        return Long.parseLong(get("app.loadtest.report-interval-ms", "5000"));
+    }
+
+    public static long getLoadTestDrainTimeoutMs() {
+        return Long.parseLong(get("app.loadtest.drain-timeout-ms", "120000"));
+    }
+
+    public static long getLoadTestSqsLatencyMicros() {
+        return Long.parseLong(get("app.loadtest.sqs.latency-micros", "0"));
+    }
+
+    public static double getLoadTestSqsFailureRate() {
+        return Double.parseDouble(get("app.loadtest.sqs.failure-rate", "0.0"));
+    }
+
+    public static long getLoadTestS3LatencyMicros() {
+        return Long.parseLong(get("app.loadtest.s3.latency-micros", "0"));
+    }
+
+    public static double getLoadTestS3FailureRate() {
+        return Double.parseDouble(get("app.loadtest.s3.failure-rate", "0.0"));
+    }
+
+    public static boolean isSpillEnabled() {
+        return Boolean.parseBoolean(get("app.spill.enabled", "false"));
+    }
+
+    public static String getSpillDirectory() {
+        return get("app.spill.directory", "spill");
+    }
+
+    public static int getSpillSegmentBytes() {
+        return Integer.parseInt(get("app.spill.segment-bytes", "67108864"));
+    }
+
+    public static int getSpillMaxSegments() {
+        return Integer.parseInt(get("app.spill.max-segments", "32"));
+    }
+
+    public static long getSpillFsyncIntervalMs() {
+        return Long.parseLong(get("app.spill.fsync-interval-ms", "5"));
+    }
+
+    public static long getSpillMaxSegmentAgeMs() {
+        return Long.parseLong(get("app.spill.max-segment-age-ms", "2000"));
+    }
+
+    public static int getSpillDrainConcurrency() {
+        return Integer.parseInt(get("app.spill.drain-concurrency", "64"));
+    }
+
+    public static int getSpillDrainMaxAttempts() {
+        return Integer.parseInt(get("app.spill.drain-max-attempts", "10"));
+    }
+
+    public static long getSpillDrainBackoffMs() {
+        return Long.parseLong(get("app.spill.drain-backoff-ms", "1000"));
+    }
+
+    public static List<String> getHandlerStages() {
+        return getList("app.handler.stages");
+    }
+
+    public static String getHandlerFilterField() {
+        return get("app.handler.filter.field", "");
+    }
+
+    public static List<String> getHandlerFilterValues() {
+        return getList("app.handler.filter.values");
+    }
+
+    public static boolean isHandlerFilterExclude() {
+        return Boolean.parseBoolean(get("app.handler.filter.exclude", "false"));
+    }
+
+    public static List<String> getHandlerTransformDropFields() {
+        return getList("app.handler.transform.drop-fields");
+    }
+
+    public static Map<String, String> getHandlerTransformAddFields() {
+        return getMap("app.handler.transform.add-fields");
+    }
+
+    public static List<String> getHandlerTransformAddAttributes() {
+        return getList("app.handler.transform.add-attributes");
+    }
+
+    public static String getHandlerTransformMessageIdField() {
+        return get("app.handler.transform.message-id-field", "");
+    }
+
+    public static String getHandlerRouteField() {
+        return get("app.handler.route.field", "");
+    }
+
+    public static Map<String, String> getHandlerRoutePrefixes() {
+        return getMap("app.handler.route.prefixes");
+    }
+
+    public static String getHandlerRouteDefaultPrefix() {
+        return get("app.handler.route.default-prefix", "");
+    }
+
+    public static long getShutdownTimeoutMs() {
+        return Long.parseLong(get("app.shutdown.timeout-ms", "25000"));
+    }
+
+    public static boolean isBootstrapProvisionResources() {
+        return Boolean.parseBoolean(get("app.bootstrap.provision-resources", "true"));
+    }
+
+    public static boolean isBootstrapDryRun() {
+        return Boolean.parseBoolean(get("app.bootstrap.dry-run", "false"));
+    }
+
+    public static String getHttpSyncClient() {
+        return get("app.http.sync-client", "apache");
+    }
+
+    public static int getHttpSqsMaxConnections() {
+        return Integer.parseInt(get("app.http.sqs.max-connections", "0"));
+    }
+
+    public static int getHttpS3MaxConnections() {
+        return Integer.parseInt(get("app.http.s3.max-connections", "0"));
+    }
+
+    public static long getHttpConnectTimeoutMs() {
+        return Long.parseLong(get("app.http.connect-timeout-ms", "2000"));
+    }
+
+    public static long getHttpSocketTimeoutMs() {
+        return Long.parseLong(get("app.http.socket-timeout-ms", "30000"));
+    }
+
+    public static long getHttpConnectionAcquisitionTimeoutMs() {
+        return Long.parseLong(get("app.http.connection-acquisition-timeout-ms", "10000"));
+    }
+
+    public static long getHttpConnectionMaxIdleMs() {
+        return Long.parseLong(get("app.http.connection-max-idle-ms", "60000"));
+    }
+
+    public static long getHttpConnectionTtlMs() {
+        return Long.parseLong(get("app.http.connection-ttl-ms", "0"));
+    }
+
+    public static boolean isHttpTcpKeepAlive() {
+        return Boolean.parseBoolean(get("app.http.tcp-keep-alive", "true"));
+    }
+
+    public static long getHttpSqsApiCallAttemptTimeoutMs() {
+        return Long.parseLong(get("app.http.sqs.api-call-attempt-timeout-ms", "30000"));
+    }
+
+    public static long getHttpS3ApiCallAttemptTimeoutMs() {
+        return Long.parseLong(get("app.http.s3.api-call-attempt-timeout-ms", "60000"));
+    }
+
+    public static int getHttpWarmupConnections() {
+        return Integer.parseInt(get("app.http.warmup-connections", "4"));
+    }
+
+    public static long getHttpWarmupTimeoutMs() {
+        return Long.parseLong(get("app.http.warmup-timeout-ms", "10000"));
+    }
+
     public static String getAwsRegion() {
-        return properties.getProperty("aws.region");
+        return get("aws.region");
     }
     
     public static String getAwsEndpoint() {
-        return properties.getProperty("aws.endpoint");
+        return get("aws.endpoint");
     }
     
     public static String getAwsAccessKeyId() {
-        return properties.getProperty("aws.access-key-id");
+        return get("aws.access-key-id");
     }
     
     public static String getAwsSecretAccessKey() {
-        return properties.getProperty("aws.secret-access-key");
+        return get("aws.secret-access-key");
     }
 }
\ No newline at end of file
@@ -1,39 +1,240 @@
 package com.interspace.batchjob.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.crt.S3CrtHttpConfiguration;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class AwsClientFactory {
-    
+    private static final Logger logger = LoggerFactory.getLogger(AwsClientFactory.class);
+    // Each queue's delete, dead-letter and visibility batcher flushers and its visibility heartbeat
+    private static final int SQS_CONNECTIONS_PER_QUEUE = 4;
+    private static final int SQS_MAX_BATCH_SIZE = 10;
+
     public static SqsClient createSqsClient() {
         return SqsClient.builder()
                 .region(Region.of(AppConfig.getAwsRegion()))
                 .endpointOverride(URI.create(AppConfig.getAwsEndpoint()))
-                .credentialsProvider(StaticCredentialsProvider.create(
-                        AwsBasicCredentials.create(
-                                AppConfig.getAwsAccessKeyId(),
-                                AppConfig.getAwsSecretAccessKey()
-                        )
-                ))
+                .credentialsProvider(credentialsProvider())
+                .httpClientBuilder(syncHttpClient(sqsMaxConnections()))
+                .overrideConfiguration(overrideConfiguration(AppConfig.getHttpSqsApiCallAttemptTimeoutMs()))
                 .build();
     }
-    
+
     public static S3Client createS3Client() {
         return S3Client.builder()
                 .region(Region.of(AppConfig.getAwsRegion()))
                 .endpointOverride(URI.create(AppConfig.getAwsEndpoint()))
-                .credentialsProvider(StaticCredentialsProvider.create(
-                        AwsBasicCredentials.create(
-                                AppConfig.getAwsAccessKeyId(),
-                                AppConfig.getAwsSecretAccessKey()
-                        )
-                ))
+                .credentialsProvider(credentialsProvider())
                 .forcePathStyle(true) // Required for LocalStack
+                .httpClientBuilder(syncHttpClient(s3MaxConnections()))
+                .overrideConfiguration(overrideConfiguration(AppConfig.getHttpS3ApiCallAttemptTimeoutMs()))
                 .build();
     }
-}
\ No newline at end of file
+
+    public static S3AsyncClient createS3AsyncClient() {
+        int maxConnections = AppConfig.getHttpS3MaxConnections() > 0
+                ? AppConfig.getHttpS3MaxConnections() : AppConfig.getS3MaxConcurrentUploads();
+        if ("crt".equalsIgnoreCase(AppConfig.getS3AsyncClientType())) {
+            // CRT-based client: native HTTP stack with its own connection pool
+            return S3AsyncClient.crtBuilder()
+                    .region(Region.of(AppConfig.getAwsRegion()))
+                    .endpointOverride(URI.create(AppConfig.getAwsEndpoint()))
+                    .credentialsProvider(credentialsProvider())
+                    .forcePathStyle(true) // Required for LocalStack
+                    .maxConcurrency(maxConnections)
+                    .httpConfiguration(S3CrtHttpConfiguration.builder()
+                            .connectionTimeout(millis(AppConfig.getHttpConnectTimeoutMs()))
+                            .build())
+                    .build();
+        }
+
+        NettyNioAsyncHttpClient.Builder httpClient = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConnections)
+                .connectionTimeout(millis(AppConfig.getHttpConnectTimeoutMs()))
+                .readTimeout(millis(AppConfig.getHttpSocketTimeoutMs()))
+                .writeTimeout(millis(AppConfig.getHttpSocketTimeoutMs()))
+                .connectionAcquisitionTimeout(millis(AppConfig.getHttpConnectionAcquisitionTimeoutMs()))
+                .connectionMaxIdleTime(millis(AppConfig.getHttpConnectionMaxIdleMs()))
+                .useIdleConnectionReaper(true)
+                .tcpKeepAlive(AppConfig.isHttpTcpKeepAlive());
+        if (AppConfig.getHttpConnectionTtlMs() > 0) {
+            httpClient.connectionTimeToLive(millis(AppConfig.getHttpConnectionTtlMs()));
+        }
+        return S3AsyncClient.builder()
+                .region(Region.of(AppConfig.getAwsRegion()))
+                .endpointOverride(URI.create(AppConfig.getAwsEndpoint()))
+                .credentialsProvider(credentialsProvider())
+                .forcePathStyle(true) // Required for LocalStack
+                .httpClientBuilder(httpClient)
+                .overrideConfiguration(overrideConfiguration(AppConfig.getHttpS3ApiCallAttemptTimeoutMs()))
+                .build();
+    }
+
+    /**
+     * Opens connections ahead of the first poll by issuing {@code app.http.warmup-connections}
+     * concurrent cheap calls per client (GetQueueAttributes on SQS, HeadBucket on S3), so the
+     * first messages do not pay for TCP and TLS setup. The calls are spread over every configured
+     * queue and bucket, each getting at least one. Failures are logged and otherwise ignored.
+     */
+    public static void warmUp(SqsClient sqsClient, S3Client s3Client, S3AsyncClient s3AsyncClient) {
+        int connections = AppConfig.getHttpWarmupConnections();
+        if (connections <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<QueueConfig> queues = QueueConfig.fromAppConfig();
+        List<String> queueUrls = queues.stream().map(QueueConfig::queueUrl).distinct().toList();
+        List<String> buckets = queues.stream().map(QueueConfig::bucketName).distinct().toList();
+        int sqsCalls = Math.max(connections, queueUrls.size());
+        int s3Calls = Math.max(connections, buckets.size());
+        ExecutorService executor = Executors.newFixedThreadPool(sqsCalls + s3Calls, runnable -> {
+            Thread thread = new Thread(runnable, "http-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Release all calls at once so each needs its own connection rather than reusing one
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+        try {
+            for (int i = 0; i < sqsCalls; i++) {
+                String queueUrl = queueUrls.get(i % queueUrls.size());
+                calls.add(CompletableFuture.runAsync(() -> {
+                    awaitQuietly(startSignal);
+                    sqsClient.getQueueAttributes(request -> request.queueUrl(queueUrl)
+                            .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES));
+                }, executor));
+            }
+            for (int i = 0; i < s3Calls; i++) {
+                String bucket = buckets.get(i % buckets.size());
+                calls.add(CompletableFuture.runAsync(() -> {
+                    awaitQuietly(startSignal);
+                    s3Client.headBucket(request -> request.bucket(bucket));
+                }, executor));
+            }
+            startSignal.countDown();
+            if (s3AsyncClient != null) {
+                for (int i = 0; i < s3Calls; i++) {
+                    String bucket = buckets.get(i % buckets.size());
+                    calls.add(s3AsyncClient.headBucket(request -> request.bucket(bucket)));
+                }
+            }
+
+            int failed = 0;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AppConfig.getHttpWarmupTimeoutMs());
+            for (CompletableFuture<?> call : calls) {
+                try {
+                    call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    failed++;
+                } catch (ExecutionException e) {
+                    failed++;
+                    logger.debug("Warm-up call failed", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (failed > 0) {
+                logger.warn("Connection warm-up finished in {} ms, {} of {} calls failed",
+                        elapsedMs, failed, calls.size());
+            } else {
+                logger.info("Connection warm-up opened {} connections per client in {} ms", connections, elapsedMs);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static int sqsMaxConnections() {
+        int configured = AppConfig.getHttpSqsMaxConnections();
+        if (configured > 0) {
+            return configured;
+        }
+        // Receivers and batchers are per queue; workers send a batch themselves when they fill it,
+        // which takes ten submits, and the receiver scaler checks queue depths one at a time
+        int queues = QueueConfig.fromAppConfig().size();
+        return queues * (AppConfig.getSqsReceiverCount() + SQS_CONNECTIONS_PER_QUEUE)
+                + AppConfig.getWorkerPoolSize() / SQS_MAX_BATCH_SIZE + 1;
+    }
+
+    static int s3MaxConnections() {
+        int configured = AppConfig.getHttpS3MaxConnections();
+        return configured > 0 ? configured : AppConfig.getWorkerPoolSize() + AppConfig.getS3MultipartParallelism();
+    }
+
+    private static SdkHttpClient.Builder<?> syncHttpClient(int maxConnections) {
+        if ("url-connection".equalsIgnoreCase(AppConfig.getHttpSyncClient())) {
+            // No pool settings: connection reuse is left to the JDK's keep-alive cache
+            return UrlConnectionHttpClient.builder()
+                    .connectionTimeout(millis(AppConfig.getHttpConnectTimeoutMs()))
+                    .socketTimeout(millis(AppConfig.getHttpSocketTimeoutMs()));
+        }
+        ApacheHttpClient.Builder httpClient = ApacheHttpClient.builder()
+                .maxConnections(maxConnections)
+                .connectionTimeout(millis(AppConfig.getHttpConnectTimeoutMs()))
+                .socketTimeout(millis(AppConfig.getHttpSocketTimeoutMs()))
+                .connectionAcquisitionTimeout(millis(AppConfig.getHttpConnectionAcquisitionTimeoutMs()))
+                .connectionMaxIdleTime(millis(AppConfig.getHttpConnectionMaxIdleMs()))
+                .useIdleConnectionReaper(true)
+                .tcpKeepAlive(AppConfig.isHttpTcpKeepAlive());
+        if (AppConfig.getHttpConnectionTtlMs() > 0) {
+            httpClient.connectionTimeToLive(millis(AppConfig.getHttpConnectionTtlMs()));
+        }
+        return httpClient;
+    }
+
+    private static ClientOverrideConfiguration overrideConfiguration(long attemptTimeoutMs) {
+        ClientOverrideConfiguration.Builder configuration = ClientOverrideConfiguration.builder();
+        if (attemptTimeoutMs > 0) {
+            configuration.apiCallAttemptTimeout(millis(attemptTimeoutMs));
+        }
+        return configuration.build();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Duration millis(long millis) {
+        return Duration.ofMillis(millis);
+    }
+
+    private static AwsCredentialsProvider credentialsProvider() {
+        return StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(
+                        AppConfig.getAwsAccessKeyId(),
+                        AppConfig.getAwsSecretAccessKey()
+                )
+        );
+    }
+}
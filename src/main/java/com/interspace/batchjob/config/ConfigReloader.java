@@ -0,0 +1,109 @@
+package com.interspace.batchjob.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the external configuration file and, when it changes, reloads {@link AppConfig} and
+ * hands the new {@link TuningConfig} to every listener. The file is polled for a new modification
+ * time or size rather than watched with a WatchService, which also catches files replaced through
+ * a symlink swap (as Kubernetes does for mounted ConfigMaps).
+ *
+ * <p>Only the tuning settings take effect; other changes are picked up on the next restart.
+ * A file that fails to load is logged and the previous settings stay in force.
+ */
+public class ConfigReloader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigReloader.class);
+    private final Path file;
+    private final long intervalMs;
+    private final List<Consumer<TuningConfig>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService watcher;
+    private volatile TuningConfig current;
+    private String lastVersion;
+
+    public ConfigReloader(Path file, long intervalMs) {
+        this.file = file;
+        this.intervalMs = Math.max(100, intervalMs);
+        this.current = TuningConfig.fromAppConfig();
+        this.lastVersion = version();
+        this.watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void addListener(Consumer<TuningConfig> listener) {
+        listeners.add(listener);
+    }
+
+    public void start() {
+        logger.info("Watching {} for tuning changes every {} ms", file, intervalMs);
+        watcher.scheduleWithFixedDelay(this::checkForChanges, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public TuningConfig current() {
+        return current;
+    }
+
+    /**
+     * Reloads if the file changed since the last check. Runs on the watcher thread.
+     */
+    synchronized void checkForChanges() {
+        try {
+            String version = version();
+            if (Objects.equals(version, lastVersion)) {
+                return;
+            }
+            lastVersion = version;
+            AppConfig.reload();
+            TuningConfig updated = TuningConfig.fromAppConfig();
+            if (updated.equals(current)) {
+                logger.info("{} changed, tuning settings unchanged", file);
+                return;
+            }
+            logger.info("Applying tuning settings from {}: {}", file, updated);
+            current = updated;
+            for (Consumer<TuningConfig> listener : listeners) {
+                try {
+                    listener.accept(updated);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to apply tuning settings", e);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled check
+            logger.error("Could not reload {}, keeping the current settings", file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        watcher.shutdownNow();
+    }
+
+    private String version() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Could not read attributes of {}: {}", file, e.getMessage());
+            return lastVersion;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.interspace.batchjob.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One queue the processor consumes, with where its messages are stored and how it is retried.
+ * Without {@code app.queues} there is a single queue named {@code default}, configured by the
+ * {@code app.sqs.*} and {@code app.s3.*} settings; otherwise each listed queue is configured by
+ * {@code app.queue.<name>.*}, falling back to those settings.
+ *
+ * @param keyPrefix        prefix of the objects stored one per message
+ * @param batchKeyPrefix   prefix of the aggregated batch objects
+ * @param weight           share of the worker slots relative to the other queues
+ * @param maxRetryAttempts attempts per message; 0 follows app.retry.max-attempts
+ */
+public record QueueConfig(String name, String queueUrl, String dlqUrl, String bucketName,
+                          String keyPrefix, String batchKeyPrefix, int weight, int maxRetryAttempts) {
+
+    public static final String DEFAULT_NAME = "default";
+
+    public QueueConfig {
+        weight = Math.max(1, weight);
+        maxRetryAttempts = Math.max(0, maxRetryAttempts);
+    }
+
+    public static List<QueueConfig> fromAppConfig() {
+        List<QueueConfig> queues = new ArrayList<>();
+        for (String name : AppConfig.getQueueNames()) {
+            queues.add(new QueueConfig(name,
+                    AppConfig.getQueueUrl(name),
+                    AppConfig.getQueueDlqUrl(name),
+                    AppConfig.getQueueBucketName(name),
+                    AppConfig.getQueueKeyPrefix(name),
+                    AppConfig.getQueueBatchKeyPrefix(name),
+                    AppConfig.getQueueWeight(name),
+                    AppConfig.getQueueMaxRetryAttempts(name)));
+        }
+        if (queues.isEmpty()) {
+            queues.add(new QueueConfig(DEFAULT_NAME, AppConfig.getSqsQueueUrl(), AppConfig.getSqsDlqUrl(),
+                    AppConfig.getS3BucketName(), "messages/", AppConfig.getAggregationKeyPrefix(), 1, 0));
+        }
+        return queues;
+    }
+}
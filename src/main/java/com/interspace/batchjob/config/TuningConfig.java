@@ -0,0 +1,32 @@
+package com.interspace.batchjob.config;
+
+/**
+ * The settings that can be changed while the processor runs, as an immutable snapshot.
+ * Components keep the snapshot they were last given in a field and receive a new one from
+ * {@link ConfigReloader} when the configuration file changes.
+ */
+public record TuningConfig(int maxRetryAttempts, long initialDelayMs, long maxDelayMs,
+                           int minReceivers, int maxReceivers,
+                           int sqsBatchSize, long sqsBatchLingerMs,
+                           long aggregationMaxBytes, int aggregationMaxCount, long aggregationMaxAgeMs) {
+
+    public TuningConfig {
+        maxRetryAttempts = Math.max(1, maxRetryAttempts);
+        maxReceivers = Math.max(1, maxReceivers);
+        minReceivers = Math.max(1, Math.min(minReceivers, maxReceivers));
+    }
+
+    public static TuningConfig fromAppConfig() {
+        return new TuningConfig(
+                AppConfig.getMaxRetryAttempts(),
+                AppConfig.getInitialDelayMs(),
+                AppConfig.getMaxDelayMs(),
+                AppConfig.getSqsMinReceiverCount(),
+                AppConfig.getSqsReceiverCount(),
+                AppConfig.getSqsBatchSize(),
+                AppConfig.getSqsBatchLingerMs(),
+                AppConfig.getAggregationMaxBytes(),
+                AppConfig.getAggregationMaxCount(),
+                AppConfig.getAggregationMaxAgeMs());
+    }
+}
@@ -0,0 +1,61 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Changes the visibility timeout of received messages with ChangeMessageVisibilityBatch.
+ */
+public class ChangeVisibilityBatcher extends SqsBatcher<ChangeVisibilityBatcher.VisibilityChange> {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeVisibilityBatcher.class);
+    private final SqsClient sqsClient;
+    private final String queueUrl;
+
+    public ChangeVisibilityBatcher(SqsClient sqsClient, String queueUrl, int batchSize, long lingerMs, int maxAttempts) {
+        this("sqs-visibility-batcher", sqsClient, queueUrl, batchSize, lingerMs, maxAttempts, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * @param name names the flusher thread and log lines, e.g. after the queue when there are several
+     */
+    public ChangeVisibilityBatcher(String name, SqsClient sqsClient, String queueUrl, int batchSize, long lingerMs,
+                                   int maxAttempts, IntToLongFunction retryDelayMs) {
+        super(name, batchSize, lingerMs, maxAttempts, retryDelayMs);
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    protected List<BatchResultErrorEntry> sendBatch(List<VisibilityChange> changes) {
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            VisibilityChange change = changes.get(i);
+            entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .receiptHandle(change.receiptHandle())
+                    .visibilityTimeout(change.visibilityTimeoutSeconds())
+                    .build());
+        }
+
+        ChangeMessageVisibilityBatchResponse response = sqsClient.changeMessageVisibilityBatch(
+                ChangeMessageVisibilityBatchRequest.builder()
+                        .queueUrl(queueUrl)
+                        .entries(entries)
+                        .build());
+
+        logger.debug("Changed visibility of {} of {} messages", response.successful().size(), changes.size());
+        return response.failed();
+    }
+
+    public record VisibilityChange(String receiptHandle, int visibilityTimeoutSeconds) {
+    }
+}
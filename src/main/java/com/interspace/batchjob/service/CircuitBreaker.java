@@ -0,0 +1,116 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A consecutive-failure circuit breaker shared by every operation going through {@link RetryService};
+ * the spill journal's drainer has one of its own.
+ * After failureThreshold failures in a row the breaker opens and rejects calls for openDurationMs;
+ * it then lets up to halfOpenMaxCalls trial calls through. A successful trial closes the breaker,
+ * a failed one opens it again. Failures that say nothing about the dependency's health, such as
+ * client errors, are reported through {@link #onNeutral()} and count neither way.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final int halfOpenMaxCalls;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private int halfOpenCalls = 0;
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs, int halfOpenMaxCalls) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMs = openDurationMs;
+        this.halfOpenMaxCalls = Math.max(1, halfOpenMaxCalls);
+    }
+
+    /**
+     * A breaker with the {@code app.retry.circuit-breaker} settings, or one that never opens if disabled.
+     */
+    public static CircuitBreaker fromAppConfig() {
+        return AppConfig.isCircuitBreakerEnabled()
+                ? new CircuitBreaker(AppConfig.getCircuitBreakerFailureThreshold(),
+                        AppConfig.getCircuitBreakerOpenDurationMs(), AppConfig.getCircuitBreakerHalfOpenMaxCalls())
+                : disabled();
+    }
+
+    /**
+     * A breaker that never opens.
+     */
+    public static CircuitBreaker disabled() {
+        return new CircuitBreaker(Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns whether a call may go ahead. Every permitted call must report back through
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onNeutral()}.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (currentState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenCalls < halfOpenMaxCalls) {
+                    halfOpenCalls++;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            logger.info("Circuit breaker closed after a successful trial call");
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            logger.warn("Circuit breaker opened after {} consecutive failures, rejecting calls for {} ms",
+                       consecutiveFailures, openDurationMs);
+        }
+    }
+
+    /**
+     * Ends a call without counting it either way; a half-open trial slot it held is handed back.
+     */
+    public synchronized void onNeutral() {
+        if (state == State.HALF_OPEN && halfOpenCalls > 0) {
+            halfOpenCalls--;
+        }
+    }
+
+    public synchronized State getState() {
+        return currentState();
+    }
+
+    /**
+     * True while calls are being rejected outright, i.e. the breaker is open and not yet
+     * ready to let trial calls through.
+     */
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    private State currentState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+            halfOpenCalls = 0;
+            logger.info("Circuit breaker half-open, allowing {} trial call(s)", halfOpenMaxCalls);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,41 @@
+package com.interspace.batchjob.service;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A message whose body is only a pointer to a payload already stored in S3, in the format written
+ * by the Amazon SQS Extended Client Library:
+ * {@code ["software.amazon.payloadoffloading.PayloadS3Pointer",{"s3BucketName":"...","s3Key":"..."}]}.
+ * Such payloads are copied inside S3 rather than pulled through this process.
+ */
+public record ClaimCheck(String bucketName, String objectKey) {
+    private static final String POINTER_CLASS = "software.amazon.payloadoffloading.PayloadS3Pointer";
+    private static final Pattern BUCKET = Pattern.compile("\"s3BucketName\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern KEY = Pattern.compile("\"s3Key\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final int MAX_POINTER_LENGTH = 4096;
+
+    /**
+     * Returns the claim check carried by the message, or null for a regular message.
+     */
+    public static ClaimCheck from(Message message) {
+        String body = message.body();
+        if (body == null || body.length() > MAX_POINTER_LENGTH || !body.trim().startsWith("[")
+                || !body.contains(POINTER_CLASS)) {
+            return null;
+        }
+
+        Matcher bucket = BUCKET.matcher(body);
+        Matcher key = KEY.matcher(body);
+        if (!bucket.find() || !key.find()) {
+            return null;
+        }
+        return new ClaimCheck(unescape(bucket.group(1)), unescape(key.group(1)));
+    }
+
+    private static String unescape(String value) {
+        return value.replace("\\/", "/").replace("\\\"", "\"").replace("\\\\", "\\");
+    }
+}
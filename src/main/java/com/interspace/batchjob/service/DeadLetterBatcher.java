@@ -0,0 +1,202 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Copies failed messages to the dead-letter queue with SendMessageBatch. The copy keeps the
+ * original body and attributes and adds {@code failure.*} attributes describing why processing
+ * failed, as far as the SQS limit of ten attributes per message allows.
+ *
+ * <p>SQS also limits a message, and a whole SendMessageBatch request, to 256 KiB of body plus
+ * attribute names, types and values. A flush is split into requests under that size, and a copy
+ * that would be larger drops the original attributes, then the failure ones, so a message close
+ * to the limit can still be dead-lettered.
+ */
+public class DeadLetterBatcher extends SqsBatcher<DeadLetterBatcher.DeadLetter> {
+    public static final String FAILURE_REASON_ATTRIBUTE = "failure.reason";
+    public static final String FAILURE_TYPE_ATTRIBUTE = "failure.type";
+    public static final String FAILURE_TIMESTAMP_ATTRIBUTE = "failure.timestamp";
+    public static final String FAILURE_SOURCE_QUEUE_ATTRIBUTE = "failure.source-queue";
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterBatcher.class);
+    private static final int MAX_MESSAGE_ATTRIBUTES = 10;
+    private static final int MAX_REASON_LENGTH = 1024;
+    private static final int MAX_REQUEST_BYTES = 262_144;
+    // Dropped last to first when a copy is too large, after every original attribute
+    private static final List<String> FAILURE_ATTRIBUTES = List.of(FAILURE_REASON_ATTRIBUTE, FAILURE_TYPE_ATTRIBUTE,
+            FAILURE_TIMESTAMP_ATTRIBUTE, FAILURE_SOURCE_QUEUE_ATTRIBUTE);
+    private final SqsClient sqsClient;
+    private final String dlqUrl;
+    private final String sourceQueueUrl;
+
+    public DeadLetterBatcher(SqsClient sqsClient, String dlqUrl, String sourceQueueUrl,
+                             int batchSize, long lingerMs, int maxAttempts) {
+        this("sqs-dlq-batcher", sqsClient, dlqUrl, sourceQueueUrl, batchSize, lingerMs, maxAttempts, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * @param name names the flusher thread and log lines, e.g. after the queue when there are several
+     */
+    public DeadLetterBatcher(String name, SqsClient sqsClient, String dlqUrl, String sourceQueueUrl,
+                             int batchSize, long lingerMs, int maxAttempts, IntToLongFunction retryDelayMs) {
+        super(name, batchSize, lingerMs, maxAttempts, retryDelayMs);
+        this.sqsClient = sqsClient;
+        this.dlqUrl = dlqUrl;
+        this.sourceQueueUrl = sourceQueueUrl;
+    }
+
+    @Override
+    protected List<BatchResultErrorEntry> sendBatch(List<DeadLetter> deadLetters) {
+        List<BatchResultErrorEntry> failed = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> request = new ArrayList<>(deadLetters.size());
+        int requestBytes = 0;
+        for (int i = 0; i < deadLetters.size(); i++) {
+            DeadLetter deadLetter = deadLetters.get(i);
+            String body = deadLetter.message().body();
+            Map<String, MessageAttributeValue> attributes = fitToLimit(deadLetter, body, withFailureAttributes(deadLetter));
+            int entryBytes = sizeOf(body, attributes);
+            if (!request.isEmpty() && requestBytes + entryBytes > MAX_REQUEST_BYTES) {
+                send(request, failed);
+                request = new ArrayList<>(deadLetters.size() - i);
+                requestBytes = 0;
+            }
+            // Ids stay the index in the whole flush, whichever request the entry goes in
+            request.add(SendMessageBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .messageBody(body)
+                    .messageAttributes(attributes)
+                    .build());
+            requestBytes += entryBytes;
+        }
+        send(request, failed);
+
+        logger.debug("Sent {} of {} messages to DLQ", deadLetters.size() - failed.size(), deadLetters.size());
+        return failed;
+    }
+
+    private void send(List<SendMessageBatchRequestEntry> request, List<BatchResultErrorEntry> failed) {
+        try {
+            SendMessageBatchResponse response = sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(dlqUrl)
+                    .entries(request)
+                    .build());
+            failed.addAll(response.failed());
+        } catch (Exception e) {
+            // Only this request's entries are retried; the other requests of the flush went through
+            logger.warn("DLQ request of {} messages failed: {}", request.size(), e.getMessage());
+            for (SendMessageBatchRequestEntry entry : request) {
+                failed.add(BatchResultErrorEntry.builder()
+                        .id(entry.id())
+                        .code(e.getClass().getSimpleName())
+                        .message(e.getMessage())
+                        .senderFault(false)
+                        .build());
+            }
+        }
+    }
+
+    private static Map<String, MessageAttributeValue> fitToLimit(DeadLetter deadLetter, String body,
+                                                                 Map<String, MessageAttributeValue> attributes) {
+        if (sizeOf(body, attributes) <= MAX_REQUEST_BYTES) {
+            return attributes;
+        }
+        List<String> dropOrder = new ArrayList<>();
+        for (String name : attributes.keySet()) {
+            if (!FAILURE_ATTRIBUTES.contains(name)) {
+                dropOrder.add(name);
+            }
+        }
+        for (int i = FAILURE_ATTRIBUTES.size() - 1; i >= 0; i--) {
+            dropOrder.add(FAILURE_ATTRIBUTES.get(i));
+        }
+        List<String> dropped = new ArrayList<>();
+        for (String name : dropOrder) {
+            if (attributes.remove(name) != null) {
+                dropped.add(name);
+                if (sizeOf(body, attributes) <= MAX_REQUEST_BYTES) {
+                    break;
+                }
+            }
+        }
+        logger.warn("Message {} is too large for the DLQ with its attributes, dropped {}",
+                   deadLetter.message().messageId(), dropped);
+        return attributes;
+    }
+
+    // Counted as SQS does: body plus each attribute's name, data type and value, in bytes
+    private static int sizeOf(String body, Map<String, MessageAttributeValue> attributes) {
+        int bytes = utf8Length(body);
+        for (Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+            MessageAttributeValue value = attribute.getValue();
+            bytes += utf8Length(attribute.getKey()) + utf8Length(value.dataType()) + utf8Length(value.stringValue());
+            if (value.binaryValue() != null) {
+                bytes += value.binaryValue().asByteArrayUnsafe().length;
+            }
+        }
+        return bytes;
+    }
+
+    private static int utf8Length(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private Map<String, MessageAttributeValue> withFailureAttributes(DeadLetter deadLetter) {
+        Map<String, MessageAttributeValue> attributes = new LinkedHashMap<>(deadLetter.message().messageAttributes());
+        Throwable failure = deadLetter.failure();
+
+        String reason = failure.getMessage();
+        if (reason == null || reason.isBlank()) {
+            reason = failure.getClass().getName();
+        }
+        if (reason.length() > MAX_REASON_LENGTH) {
+            reason = reason.substring(0, MAX_REASON_LENGTH);
+        }
+
+        // Most important first, so they survive when the original already carries many attributes
+        putIfRoom(attributes, FAILURE_REASON_ATTRIBUTE, stringAttribute(reason));
+        putIfRoom(attributes, FAILURE_TYPE_ATTRIBUTE, stringAttribute(failure.getClass().getName()));
+        putIfRoom(attributes, FAILURE_TIMESTAMP_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("Number")
+                .stringValue(Long.toString(deadLetter.failedAt()))
+                .build());
+        putIfRoom(attributes, FAILURE_SOURCE_QUEUE_ATTRIBUTE, stringAttribute(sourceQueueUrl));
+        return attributes;
+    }
+
+    private static void putIfRoom(Map<String, MessageAttributeValue> attributes, String name,
+                                  MessageAttributeValue value) {
+        if (attributes.size() < MAX_MESSAGE_ATTRIBUTES || attributes.containsKey(name)) {
+            attributes.put(name, value);
+        } else {
+            logger.debug("No room left for DLQ attribute {}", name);
+        }
+    }
+
+    private static MessageAttributeValue stringAttribute(String value) {
+        return MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue(value)
+                .build();
+    }
+
+    public record DeadLetter(Message message, Throwable failure, long failedAt) {
+        public DeadLetter(Message message, Throwable failure) {
+            this(message, failure, System.currentTimeMillis());
+        }
+    }
+}
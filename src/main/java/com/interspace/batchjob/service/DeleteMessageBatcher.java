@@ -0,0 +1,56 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Acknowledges processed messages with DeleteMessageBatch instead of one DeleteMessage per message.
+ */
+public class DeleteMessageBatcher extends SqsBatcher<Message> {
+    private static final Logger logger = LoggerFactory.getLogger(DeleteMessageBatcher.class);
+    private final SqsClient sqsClient;
+    private final String queueUrl;
+
+    public DeleteMessageBatcher(SqsClient sqsClient, String queueUrl, int batchSize, long lingerMs, int maxAttempts) {
+        this("sqs-delete-batcher", sqsClient, queueUrl, batchSize, lingerMs, maxAttempts, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * @param name names the flusher thread and log lines, e.g. after the queue when there are several
+     */
+    public DeleteMessageBatcher(String name, SqsClient sqsClient, String queueUrl, int batchSize, long lingerMs,
+                                int maxAttempts, IntToLongFunction retryDelayMs) {
+        super(name, batchSize, lingerMs, maxAttempts, retryDelayMs);
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    protected List<BatchResultErrorEntry> sendBatch(List<Message> messages) {
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(DeleteMessageBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .receiptHandle(messages.get(i).receiptHandle())
+                    .build());
+        }
+
+        DeleteMessageBatchResponse response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                .queueUrl(queueUrl)
+                .entries(entries)
+                .build());
+
+        logger.debug("Deleted {} of {} messages from SQS", response.successful().size(), messages.size());
+        return response.failed();
+    }
+}
@@ -0,0 +1,38 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.config.AppConfig;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the messages whose JSON field has one of the given values and drops the rest; with
+ * {@code exclude} it drops the matching ones instead. A body that is not a JSON object, or lacks
+ * the field, does not match.
+ */
+public class FilterStage implements MessageHandler {
+    private final String[] path;
+    private final Set<String> values;
+    private final boolean exclude;
+
+    public FilterStage(String field, Set<String> values, boolean exclude) {
+        if (field.isEmpty()) {
+            throw new IllegalArgumentException("The filter stage needs app.handler.filter.field");
+        }
+        this.path = JsonFields.path(field);
+        this.values = Set.copyOf(values);
+        this.exclude = exclude;
+    }
+
+    public static FilterStage fromAppConfig() {
+        return new FilterStage(AppConfig.getHandlerFilterField(), Set.copyOf(AppConfig.getHandlerFilterValues()),
+                AppConfig.isHandlerFilterExclude());
+    }
+
+    @Override
+    public List<HandledMessage> handle(HandledMessage message) {
+        String value = JsonFields.find(message.body(), path);
+        boolean matches = value != null && values.contains(value);
+        return matches != exclude ? List.of(message) : List.of();
+    }
+}
@@ -0,0 +1,44 @@
+package com.interspace.batchjob.service;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+
+/**
+ * A message on its way through the handler pipeline.
+ *
+ * @param id        object name; split parts get {@code -<n>} appended so each stays unique
+ * @param body      payload to store
+ * @param keyPrefix sub-prefix below the queue's key prefix chosen by routing, empty when not routed
+ * @param source    the SQS message it came from, for its ID and attributes
+ */
+public record HandledMessage(String id, String body, String keyPrefix, Message source) {
+
+    public static HandledMessage of(Message message) {
+        return new HandledMessage(message.messageId(), message.body(), "", message);
+    }
+
+    public HandledMessage withBody(String body) {
+        return new HandledMessage(id, body, keyPrefix, source);
+    }
+
+    public HandledMessage withKeyPrefix(String keyPrefix) {
+        return new HandledMessage(id, body, keyPrefix, source);
+    }
+
+    public HandledMessage withId(String id) {
+        return new HandledMessage(id, body, keyPrefix, source);
+    }
+
+    boolean isRouted() {
+        return !keyPrefix.isEmpty();
+    }
+
+    /**
+     * The source message carrying this ID and body, for code that works on SQS messages.
+     */
+    Message toMessage() {
+        if (id.equals(source.messageId()) && body.equals(source.body())) {
+            return source;
+        }
+        return source.toBuilder().messageId(id).body(body).build();
+    }
+}
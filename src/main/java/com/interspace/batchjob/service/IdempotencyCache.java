@@ -0,0 +1,279 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the IDs of recently completed messages so that a redelivered message can be deleted
+ * without storing it again.
+ *
+ * <p>SQS message IDs are UUIDs, so each ID is kept as two longs in an open-addressing hash table
+ * rather than as a String. Entries are held in two generations: new IDs go into the current one,
+ * and every ttlMs / 2 (or sooner, once it holds maxEntries / 2 IDs) the older generation is dropped
+ * and a fresh one started. An ID is therefore remembered for between ttlMs / 2 and ttlMs, and the
+ * cache never holds more than maxEntries IDs.
+ *
+ * <p>If a file is given, the cache is loaded from it on startup and written back periodically and
+ * on close. IDs recorded after the last write are lost on a crash, which only costs a re-upload.
+ */
+public class IdempotencyCache implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyCache.class);
+    private static final int FILE_VERSION = 1;
+    private final int generationCapacity;
+    private final long generationMs;
+    private final Path file;
+    private final ScheduledExecutorService persister;
+    private Generation current;
+    private Generation previous;
+
+    public IdempotencyCache(int maxEntries, long ttlMs, Path file, long persistIntervalMs) {
+        this.generationCapacity = Math.max(1, maxEntries / 2);
+        this.generationMs = Math.max(1, ttlMs / 2);
+        this.file = file;
+        this.current = new Generation(generationCapacity, System.currentTimeMillis());
+        this.previous = new Generation(generationCapacity, 0);
+
+        if (file != null) {
+            load();
+            this.persister = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "idempotency-cache-persister");
+                thread.setDaemon(true);
+                return thread;
+            });
+            persister.scheduleWithFixedDelay(this::persistQuietly, persistIntervalMs, persistIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.persister = null;
+        }
+    }
+
+    public boolean contains(String messageId) {
+        UUID key = toUuid(messageId);
+        synchronized (this) {
+            rotateIfDue(System.currentTimeMillis());
+            return current.contains(key.getMostSignificantBits(), key.getLeastSignificantBits())
+                    || previous.contains(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        }
+    }
+
+    public void record(String messageId) {
+        UUID key = toUuid(messageId);
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            rotateIfDue(now);
+            if (current.size >= generationCapacity) {
+                rotate(now);
+            }
+            current.add(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        }
+    }
+
+    public synchronized int size() {
+        return current.size + previous.size;
+    }
+
+    /**
+     * Writes the cache to its file, replacing the previous copy atomically. Does nothing without a file.
+     */
+    public void persist() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        synchronized (this) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                previous.writeTo(out);
+                current.writeTo(out);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() {
+        if (persister != null) {
+            persister.shutdown();
+        }
+        persistQuietly();
+    }
+
+    private void persistQuietly() {
+        try {
+            persist();
+        } catch (Exception e) {
+            logger.warn("Could not write idempotency cache to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                logger.warn("Ignoring idempotency cache {} written by another version", file);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            Generation[] loaded = new Generation[2];
+            for (int i = 0; i < loaded.length; i++) {
+                long startedAt = in.readLong();
+                int count = in.readInt();
+                Generation generation = new Generation(generationCapacity, startedAt);
+                for (int j = 0; j < count; j++) {
+                    long high = in.readLong();
+                    long low = in.readLong();
+                    // The file may come from a run with a larger max-entries
+                    if (generation.size < generationCapacity) {
+                        generation.add(high, low);
+                    }
+                }
+                loaded[i] = generation;
+            }
+            synchronized (this) {
+                previous = loaded[0];
+                current = loaded[1];
+                rotateIfDue(now);
+            }
+            logger.info("Loaded {} message IDs from idempotency cache {}", size(), file);
+        } catch (NoSuchFileException e) {
+            logger.debug("No idempotency cache at {} yet", file);
+        } catch (IOException e) {
+            logger.warn("Could not read idempotency cache {}, starting empty: {}", file, e.getMessage());
+        }
+    }
+
+    private void rotateIfDue(long now) {
+        long age = now - current.startedAt;
+        if (age >= 2 * generationMs) {
+            // Idle for longer than a full TTL, so both generations have expired
+            previous.clear(now);
+            current.clear(now);
+        } else if (age >= generationMs) {
+            rotate(now);
+        }
+    }
+
+    private void rotate(long now) {
+        // Reuse the dropped generation's table instead of allocating a new one
+        Generation recycled = previous;
+        recycled.clear(now);
+        previous = current;
+        current = recycled;
+    }
+
+    private static UUID toUuid(String messageId) {
+        try {
+            return UUID.fromString(messageId);
+        } catch (IllegalArgumentException e) {
+            // Not a UUID (e.g. a local test double); hash it down to 128 bits instead
+            return UUID.nameUUIDFromBytes(messageId.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * An insert-only open-addressing set of 128-bit keys stored as pairs in one long[]. The table
+     * is at most half full, so linear probing stays short. (0, 0) marks an empty slot; the one key
+     * that collides with it is tracked separately.
+     */
+    private static final class Generation {
+        private final long[] table;
+        private final int mask;
+        private long startedAt;
+        private int size = 0;
+        private boolean containsZero = false;
+
+        private Generation(int capacity, long startedAt) {
+            int slots = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+            this.table = new long[slots * 2];
+            this.mask = slots - 1;
+            this.startedAt = startedAt;
+        }
+
+        private boolean contains(long high, long low) {
+            if (high == 0 && low == 0) {
+                return containsZero;
+            }
+            for (int slot = slot(high, low); ; slot = (slot + 1) & mask) {
+                long slotHigh = table[slot * 2];
+                long slotLow = table[slot * 2 + 1];
+                if (slotHigh == 0 && slotLow == 0) {
+                    return false;
+                }
+                if (slotHigh == high && slotLow == low) {
+                    return true;
+                }
+            }
+        }
+
+        private void add(long high, long low) {
+            if (high == 0 && low == 0) {
+                if (!containsZero) {
+                    containsZero = true;
+                    size++;
+                }
+                return;
+            }
+            for (int slot = slot(high, low); ; slot = (slot + 1) & mask) {
+                long slotHigh = table[slot * 2];
+                long slotLow = table[slot * 2 + 1];
+                if (slotHigh == high && slotLow == low) {
+                    return;
+                }
+                if (slotHigh == 0 && slotLow == 0) {
+                    table[slot * 2] = high;
+                    table[slot * 2 + 1] = low;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        private void clear(long startedAt) {
+            Arrays.fill(table, 0);
+            this.startedAt = startedAt;
+            this.size = 0;
+            this.containsZero = false;
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(startedAt);
+            out.writeInt(size);
+            if (containsZero) {
+                out.writeLong(0);
+                out.writeLong(0);
+            }
+            for (int slot = 0; slot <= mask; slot++) {
+                long high = table[slot * 2];
+                long low = table[slot * 2 + 1];
+                if (high != 0 || low != 0) {
+                    out.writeLong(high);
+                    out.writeLong(low);
+                }
+            }
+        }
+
+        private int slot(long high, long low) {
+            long hash = high * 0x9E3779B97F4A7C15L ^ low;
+            hash ^= hash >>> 32;
+            return (int) hash & mask;
+        }
+    }
+}
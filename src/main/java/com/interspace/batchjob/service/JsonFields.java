@@ -0,0 +1,55 @@
+package com.interspace.batchjob.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Streaming lookups on JSON bodies. Nothing is parsed into a tree: the parser skips the
+ * structures that are not on the path and stops as soon as the field is found.
+ */
+final class JsonFields {
+    // Thread-safe once configured; parsers and generators are created per call
+    static final JsonFactory FACTORY = new JsonFactory();
+
+    private JsonFields() {
+    }
+
+    /**
+     * Splits a dotted field path such as {@code order.status} into its names.
+     */
+    static String[] path(String field) {
+        return field.split("\\.");
+    }
+
+    /**
+     * Returns the text of the scalar at the path in a JSON object, or null if the body is not a
+     * JSON object or the field is missing, null or not a scalar.
+     */
+    static String find(String json, String[] path) {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            int depth = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!name.equals(path[depth])) {
+                    parser.skipChildren();
+                } else if (depth == path.length - 1) {
+                    return value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getText() : null;
+                } else if (value == JsonToken.START_OBJECT) {
+                    depth++;
+                } else {
+                    return null;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.config.AppConfig;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out S3 object keys from a template, compiled once ({@code app.s3.key.layout}). Placeholders:
+ * <ul>
+ *   <li>{@code {prefix}}: the queue's key prefix, plus the route's sub-prefix</li>
+ *   <li>{@code {id}}: the object name (message ID, split part or batch name)</li>
+ *   <li>{@code {shard}}: {@code app.s3.key.shard-chars} hex digits of a hash of the name</li>
+ *   <li>{@code {yyyy} {MM} {dd} {HH} {mm}}: UTC time the message was sent to SQS, or the batch was opened</li>
+ *   <li>{@code {attr:NAME}}: a message attribute, {@code unknown} when missing</li>
+ * </ul>
+ * Every template must contain {@code {id}}, so object names stay unique whatever else is in the key.
+ * The time comes from the message rather than the clock, so a retry writes the same key.
+ */
+public final class KeyStrategy {
+    public static final String FLAT = "{prefix}{id}";
+    // S3 scales request rates per prefix, so spreading keys over shards raises the PUT ceiling
+    public static final String HASHED = "{prefix}{shard}/{id}";
+    // Hive-style partitions let readers list or query one hour without scanning the whole prefix
+    public static final String TIME_PARTITIONED = "{prefix}dt={yyyy}-{MM}-{dd}/hour={HH}/{id}";
+    private static final String MISSING_ATTRIBUTE = "unknown";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String template;
+    private final List<Part> parts;
+    private final int shardChars;
+    private final boolean usesTime;
+
+    public KeyStrategy(String template, int shardChars) {
+        if (!template.contains("{id}")) {
+            throw new IllegalArgumentException("Key template must contain {id} to keep object names unique: " + template);
+        }
+        this.template = template;
+        this.shardChars = Math.max(1, Math.min(8, shardChars));
+        this.parts = compile(template);
+        this.usesTime = parts.stream().anyMatch(part -> part instanceof TimePart);
+    }
+
+    public static KeyStrategy fromAppConfig() {
+        String layout = AppConfig.getS3KeyLayout();
+        String template;
+        switch (layout.toLowerCase()) {
+            case "flat":
+                template = FLAT;
+                break;
+            case "hashed":
+                template = HASHED;
+                break;
+            case "time":
+                template = TIME_PARTITIONED;
+                break;
+            case "template":
+                template = AppConfig.getS3KeyTemplate();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown key layout: " + layout);
+        }
+        return new KeyStrategy(template, AppConfig.getS3KeyShardChars());
+    }
+
+    /**
+     * Key for an object stored from a message, timed by its SQS SentTimestamp.
+     */
+    public String key(String prefix, String id, Message source) {
+        long timestampMillis = 0;
+        if (usesTime) {
+            long sentAt = PollerMetrics.sentTimestamp(source);
+            timestampMillis = sentAt >= 0 ? sentAt : System.currentTimeMillis();
+        }
+        return build(prefix, id, timestampMillis, source);
+    }
+
+    /**
+     * Key for an object that is not one message, such as a batch. Attributes resolve to {@code unknown}.
+     */
+    public String key(String prefix, String id, long timestampMillis) {
+        return build(prefix, id, timestampMillis, null);
+    }
+
+    public String template() {
+        return template;
+    }
+
+    private String build(String prefix, String id, long timestampMillis, Message source) {
+        LocalDateTime time = usesTime
+                ? LocalDateTime.ofEpochSecond(Math.floorDiv(timestampMillis, 1000), 0, ZoneOffset.UTC)
+                : null;
+        StringBuilder key = new StringBuilder(prefix.length() + id.length() + 32);
+        for (Part part : parts) {
+            part.append(key, prefix, id, time, source);
+        }
+        return key.toString();
+    }
+
+    private List<Part> compile(String template) {
+        List<Part> compiled = new ArrayList<>();
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf('{', position);
+            if (open < 0) {
+                compiled.add(literal(template.substring(position)));
+                break;
+            }
+            if (open > position) {
+                compiled.add(literal(template.substring(position, open)));
+            }
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in key template: " + template);
+            }
+            compiled.add(placeholder(template.substring(open + 1, close)));
+            position = close + 1;
+        }
+        return compiled;
+    }
+
+    private Part placeholder(String name) {
+        switch (name) {
+            case "prefix":
+                return (key, prefix, id, time, source) -> key.append(prefix);
+            case "id":
+                return (key, prefix, id, time, source) -> key.append(id);
+            case "shard":
+                return (key, prefix, id, time, source) -> appendShard(key, id);
+            case "yyyy":
+                return (TimePart) (key, time) -> pad(key, time.getYear(), 4);
+            case "MM":
+                return (TimePart) (key, time) -> pad(key, time.getMonthValue(), 2);
+            case "dd":
+                return (TimePart) (key, time) -> pad(key, time.getDayOfMonth(), 2);
+            case "HH":
+                return (TimePart) (key, time) -> pad(key, time.getHour(), 2);
+            case "mm":
+                return (TimePart) (key, time) -> pad(key, time.getMinute(), 2);
+            default:
+                if (name.startsWith("attr:") && name.length() > 5) {
+                    String attribute = name.substring(5);
+                    return (key, prefix, id, time, source) -> appendAttribute(key, attribute, source);
+                }
+                throw new IllegalArgumentException("Unknown placeholder in key template: {" + name + "}");
+        }
+    }
+
+    private static Part literal(String text) {
+        return (key, prefix, id, time, source) -> key.append(text);
+    }
+
+    private void appendShard(StringBuilder key, String id) {
+        int hash = mix(id.hashCode());
+        for (int i = shardChars - 1; i >= 0; i--) {
+            key.append(HEX[(hash >>> (i * 4)) & 0xf]);
+        }
+    }
+
+    // Attribute values become one path segment: anything but letters, digits and ._=- is replaced
+    private static void appendAttribute(StringBuilder key, String attribute, Message source) {
+        MessageAttributeValue value = source != null ? source.messageAttributes().get(attribute) : null;
+        String text = value != null ? value.stringValue() : null;
+        if (text == null || text.isEmpty()) {
+            key.append(MISSING_ATTRIBUTE);
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '_' || c == '=' || c == '-';
+            key.append(safe ? c : '_');
+        }
+    }
+
+    private static void pad(StringBuilder key, int value, int width) {
+        for (int digits = Integer.toString(value).length(); digits < width; digits++) {
+            key.append('0');
+        }
+        key.append(value);
+    }
+
+    // Murmur3 finalizer: message IDs that differ only at the end still land in different shards
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    @FunctionalInterface
+    private interface Part {
+        void append(StringBuilder key, String prefix, String id, LocalDateTime time, Message source);
+    }
+
+    @FunctionalInterface
+    private interface TimePart extends Part {
+        void append(StringBuilder key, LocalDateTime time);
+
+        @Override
+        default void append(StringBuilder key, String prefix, String id, LocalDateTime time, Message source) {
+            append(key, time);
+        }
+    }
+}
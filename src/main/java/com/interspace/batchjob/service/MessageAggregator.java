@@ -0,0 +1,205 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.telemetry.TelemetryConfig;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs many message bodies into one NDJSON object per batch instead of one S3 object per message.
+ * A batch is written once it reaches maxBytes or maxCount, or once its first message is maxAgeMs old.
+ * The future returned by {@link #add} completes only after the batch holding the message is in S3,
+ * so callers can safely delete the source message at that point.
+ */
+public class MessageAggregator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MessageAggregator.class);
+    private static final DateTimeFormatter BATCH_TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'").withZone(ZoneOffset.UTC);
+    private final S3Uploader s3Uploader;
+    private final RetryService retryService;
+    private final Executor retryExecutor;
+    private final Tracer tracer;
+    private final String bucketName;
+    private final String keyPrefix;
+    private final KeyStrategy keyStrategy;
+    private final ScheduledExecutorService ageChecker;
+    private long maxBytes;
+    private int maxCount;
+    private long maxAgeMs;
+    private ScheduledFuture<?> ageCheck;
+    private Batch openBatch;
+
+    public MessageAggregator(S3Uploader s3Uploader, RetryService retryService, Executor retryExecutor,
+                             String bucketName, String keyPrefix, long maxBytes, int maxCount, long maxAgeMs) {
+        this(s3Uploader, retryService, retryExecutor, bucketName, keyPrefix, KeyStrategy.fromAppConfig(),
+                maxBytes, maxCount, maxAgeMs);
+    }
+
+    public MessageAggregator(S3Uploader s3Uploader, RetryService retryService, Executor retryExecutor,
+                             String bucketName, String keyPrefix, KeyStrategy keyStrategy,
+                             long maxBytes, int maxCount, long maxAgeMs) {
+        this.s3Uploader = s3Uploader;
+        this.retryService = retryService;
+        this.retryExecutor = retryExecutor;
+        this.tracer = TelemetryConfig.getTracer();
+        this.bucketName = bucketName;
+        this.keyPrefix = keyPrefix;
+        this.keyStrategy = keyStrategy;
+        this.ageChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        setLimits(maxBytes, maxCount, maxAgeMs);
+    }
+
+    /**
+     * Changes the batch limits. The open batch is checked against them on the next add or age check.
+     */
+    public synchronized void setLimits(long maxBytes, int maxCount, long maxAgeMs) {
+        this.maxBytes = maxBytes;
+        this.maxCount = maxCount;
+        if (ageCheck == null || maxAgeMs != this.maxAgeMs) {
+            if (ageCheck != null) {
+                ageCheck.cancel(false);
+            }
+            this.maxAgeMs = maxAgeMs;
+            if (!ageChecker.isShutdown()) {
+                long checkIntervalMs = Math.max(10, maxAgeMs / 4);
+                ageCheck = ageChecker.scheduleWithFixedDelay(this::flushIfExpired, checkIntervalMs, checkIntervalMs,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public CompletableFuture<Void> add(Message message) {
+        String line = toNdjsonLine(message.body());
+        long lineBytes = S3Uploader.utf8Length(line);
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        List<Batch> sealed = new ArrayList<>(2);
+
+        synchronized (this) {
+            if (openBatch != null && openBatch.bytes + lineBytes > maxBytes) {
+                sealed.add(openBatch);
+                openBatch = null;
+            }
+            if (openBatch == null) {
+                openBatch = new Batch();
+            }
+            openBatch.append(line, lineBytes, message.messageId(), written);
+            if (openBatch.count >= maxCount || openBatch.bytes >= maxBytes) {
+                sealed.add(openBatch);
+                openBatch = null;
+            }
+        }
+
+        sealed.forEach(this::write);
+        return written;
+    }
+
+    /**
+     * Writes the open batch now, regardless of its size or age.
+     */
+    public void flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = openBatch;
+            openBatch = null;
+        }
+        if (batch != null) {
+            write(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        ageChecker.shutdown();
+        flush();
+    }
+
+    private void flushIfExpired() {
+        Batch batch;
+        synchronized (this) {
+            if (openBatch == null || System.currentTimeMillis() - openBatch.createdAt < maxAgeMs) {
+                return;
+            }
+            batch = openBatch;
+            openBatch = null;
+        }
+        write(batch);
+    }
+
+    private void write(Batch batch) {
+        String batchName = BATCH_TIMESTAMP.format(Instant.ofEpochMilli(batch.createdAt)) + "-" + UUID.randomUUID();
+        String objectKey = keyStrategy.key(keyPrefix, batchName, batch.createdAt) + ".ndjson";
+        String content = batch.content.toString();
+        Span span = tracer.spanBuilder("s3.write_batch")
+                .setAttribute("s3.object.key", objectKey)
+                .setAttribute("batch.message_count", batch.count)
+                .setAttribute("batch.size_bytes", batch.bytes)
+                .startSpan();
+
+        logger.info("Writing batch of {} messages ({} bytes) to S3: key={}", batch.count, batch.bytes, objectKey);
+
+        try (var scope = span.makeCurrent()) {
+            retryService.executeWithRetryAsync(
+                    () -> s3Uploader.uploadToS3Async(bucketName, objectKey, content, S3Uploader.NDJSON_CONTENT_TYPE),
+                    retryExecutor)
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            span.setStatus(StatusCode.ERROR, e.getMessage());
+                            logger.error("Failed to write batch {} with messages {}", objectKey, batch.messageIds, e);
+                            batch.written.forEach(future -> future.completeExceptionally(e));
+                        } else {
+                            span.setStatus(StatusCode.OK);
+                            batch.written.forEach(future -> future.complete(null));
+                        }
+                        span.end();
+                    });
+        }
+    }
+
+    /**
+     * JSON never needs raw line breaks (inside strings they must be escaped), so replacing them
+     * with spaces keeps a JSON body equivalent while making it a single NDJSON line.
+     */
+    static String toNdjsonLine(String body) {
+        if (body.indexOf('\n') < 0 && body.indexOf('\r') < 0) {
+            return body;
+        }
+        return body.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    private static final class Batch {
+        private final long createdAt = System.currentTimeMillis();
+        private final StringBuilder content = new StringBuilder();
+        private final List<String> messageIds = new ArrayList<>();
+        private final List<CompletableFuture<Void>> written = new ArrayList<>();
+        private long bytes = 0;
+        private int count = 0;
+
+        private void append(String line, long lineBytes, String messageId, CompletableFuture<Void> future) {
+            content.append(line).append('\n');
+            bytes += lineBytes + 1;
+            count++;
+            messageIds.add(messageId);
+            written.add(future);
+        }
+    }
+}
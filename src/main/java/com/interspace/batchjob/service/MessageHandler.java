@@ -0,0 +1,19 @@
+package com.interspace.batchjob.service;
+
+import java.util.List;
+
+/**
+ * One stage of the handler pipeline that runs on each message before it is stored
+ * ({@code app.handler.stages}). A stage returns what to pass on: an empty list drops the message,
+ * the message itself or a changed copy keeps it, several messages split it. Dropped messages are
+ * deleted from SQS without any upload.
+ * <p>
+ * Stages run concurrently on the worker threads and must be thread-safe. An exception fails the
+ * message the same way a failed upload does. A custom stage is listed by its class name and needs
+ * a public no-argument constructor.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    List<HandledMessage> handle(HandledMessage message) throws Exception;
+}
@@ -0,0 +1,73 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.config.AppConfig;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the handler stages in order. Each stage sees every message the previous one passed on;
+ * once all messages are dropped the remaining stages are skipped.
+ */
+public final class MessageHandlerPipeline {
+    private final List<MessageHandler> stages;
+
+    public MessageHandlerPipeline(List<MessageHandler> stages) {
+        this.stages = List.copyOf(stages);
+    }
+
+    /**
+     * Builds the stages listed in {@code app.handler.stages}, or returns null when none are, in
+     * which case messages are stored as received.
+     */
+    public static MessageHandlerPipeline fromAppConfig() {
+        List<String> names = AppConfig.getHandlerStages();
+        if (names.isEmpty()) {
+            return null;
+        }
+        List<MessageHandler> stages = new ArrayList<>();
+        for (String name : names) {
+            stages.add(createStage(name));
+        }
+        return new MessageHandlerPipeline(stages);
+    }
+
+    public List<HandledMessage> handle(Message message) throws Exception {
+        List<HandledMessage> current = List.of(HandledMessage.of(message));
+        for (MessageHandler stage : stages) {
+            if (current.isEmpty()) {
+                break;
+            }
+            if (current.size() == 1) {
+                current = stage.handle(current.get(0));
+            } else {
+                List<HandledMessage> next = new ArrayList<>();
+                for (HandledMessage part : current) {
+                    next.addAll(stage.handle(part));
+                }
+                current = next;
+            }
+        }
+        return current;
+    }
+
+    static MessageHandler createStage(String name) {
+        switch (name) {
+            case "filter":
+                return FilterStage.fromAppConfig();
+            case "transform":
+                return TransformStage.fromAppConfig();
+            case "route":
+                return RouteStage.fromAppConfig();
+            case "split":
+                return new SplitStage();
+            default:
+                try {
+                    return Class.forName(name).asSubclass(MessageHandler.class).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown handler stage: " + name, e);
+                }
+        }
+    }
+}
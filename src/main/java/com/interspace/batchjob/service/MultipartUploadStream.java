@@ -0,0 +1,253 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An OutputStream that uploads what is written to it as an S3 object without holding the whole
+ * object in memory. Data is cut into parts of partSize bytes that are uploaded in parallel, with at
+ * most {@code parallelism} parts (and so part buffers) outstanding. If the stream is closed before
+ * the first part fills up, the data goes out as a single PutObject instead.
+ *
+ * <p>{@link #close()} completes the upload; call {@link #abort()} instead if writing failed,
+ * otherwise the partially written data would be committed.
+ */
+public class MultipartUploadStream extends OutputStream {
+    private static final Logger logger = LoggerFactory.getLogger(MultipartUploadStream.class);
+    private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final Executor partExecutor;
+    private final PutObjectRequest target;
+    private final int partSize;
+    private final Semaphore partPermits;
+    private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+    private byte[] buffer;
+    private int position = 0;
+    private String uploadId;
+    private long bytesWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Parts are sent through the async client when one is given; otherwise they are uploaded with
+     * the blocking client on partExecutor.
+     */
+    public MultipartUploadStream(S3Client s3Client, S3AsyncClient s3AsyncClient, Executor partExecutor,
+                                 PutObjectRequest target, int partSize, int parallelism) {
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.partExecutor = partExecutor;
+        this.target = target;
+        this.partSize = partSize;
+        this.partPermits = new Semaphore(Math.max(1, parallelism));
+        this.buffer = new byte[partSize];
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    public boolean isMultipart() {
+        return uploadId != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[position++] = (byte) b;
+        bytesWritten++;
+        if (position == partSize) {
+            sendPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            int chunk = Math.min(length, partSize - position);
+            System.arraycopy(bytes, offset, buffer, position, chunk);
+            position += chunk;
+            offset += chunk;
+            length -= chunk;
+            bytesWritten += chunk;
+            if (position == partSize) {
+                sendPart();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (uploadId == null) {
+                putSingleObject();
+                return;
+            }
+            if (position > 0) {
+                sendPart();
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+
+            CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                    .bucket(target.bucket())
+                    .key(target.key())
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build();
+            if (s3AsyncClient != null) {
+                s3AsyncClient.completeMultipartUpload(request).join();
+            } else {
+                s3Client.completeMultipartUpload(request);
+            }
+            logger.debug("Completed multipart upload of {} parts to {}", completedParts.size(), target.key());
+        } catch (Exception e) {
+            abort();
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Failed to upload " + target.key(), cause);
+        } finally {
+            buffer = null;
+        }
+    }
+
+    /**
+     * Abandons the upload and discards any parts already sent.
+     */
+    public void abort() {
+        closed = true;
+        buffer = null;
+        if (uploadId == null) {
+            return;
+        }
+
+        AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                .bucket(target.bucket())
+                .key(target.key())
+                .uploadId(uploadId)
+                .build();
+        try {
+            if (s3AsyncClient != null) {
+                s3AsyncClient.abortMultipartUpload(request).join();
+            } else {
+                s3Client.abortMultipartUpload(request);
+            }
+            logger.warn("Aborted multipart upload {} for {}", uploadId, target.key());
+        } catch (Exception e) {
+            logger.error("Failed to abort multipart upload {} for {}", uploadId, target.key(), e);
+        }
+        uploadId = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void putSingleObject() {
+        byte[] data = position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        if (s3AsyncClient != null) {
+            s3AsyncClient.putObject(target, AsyncRequestBody.fromBytes(data)).join();
+        } else {
+            s3Client.putObject(target, RequestBody.fromBytes(data));
+        }
+    }
+
+    private void sendPart() throws IOException {
+        if (uploadId == null) {
+            createUpload();
+        }
+        failFastOnPartError();
+
+        try {
+            // Bounds memory: at most `parallelism` part buffers are in flight at once
+            partPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a part upload slot", e);
+        }
+
+        int partNumber = parts.size() + 1;
+        byte[] partData = position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        UploadPartRequest request = UploadPartRequest.builder()
+                .bucket(target.bucket())
+                .key(target.key())
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) partData.length)
+                .build();
+
+        CompletableFuture<CompletedPart> part;
+        if (s3AsyncClient != null) {
+            part = s3AsyncClient.uploadPart(request, AsyncRequestBody.fromBytes(partData))
+                    .thenApply(response -> CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(response.eTag())
+                            .build());
+        } else {
+            part = CompletableFuture.supplyAsync(() -> {
+                String eTag = s3Client.uploadPart(request, RequestBody.fromBytes(partData)).eTag();
+                return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+            }, partExecutor);
+        }
+        part.whenComplete((ignored, e) -> partPermits.release());
+        parts.add(part);
+
+        buffer = new byte[partSize];
+        position = 0;
+    }
+
+    private void createUpload() {
+        CreateMultipartUploadRequest request = CreateMultipartUploadRequest.builder()
+                .bucket(target.bucket())
+                .key(target.key())
+                .contentType(target.contentType())
+                .contentEncoding(target.contentEncoding())
+                .build();
+        uploadId = s3AsyncClient != null
+                ? s3AsyncClient.createMultipartUpload(request).join().uploadId()
+                : s3Client.createMultipartUpload(request).uploadId();
+        logger.debug("Started multipart upload {} for {}", uploadId, target.key());
+    }
+
+    private void failFastOnPartError() throws IOException {
+        for (CompletableFuture<CompletedPart> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                try {
+                    part.join();
+                } catch (CompletionException e) {
+                    throw new IOException("Part upload failed for " + target.key(), e.getCause());
+                }
+            }
+        }
+    }
+}
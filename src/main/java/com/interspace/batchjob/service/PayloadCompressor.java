@@ -0,0 +1,99 @@
+package com.interspace.batchjob.service;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.interspace.batchjob.config.AppConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses payloads before upload. The payload is streamed through the codec's encoder in chunks,
+ * so no uncompressed byte[] copy is made. Payloads below minBytes are left alone, since compressing
+ * them costs more CPU than it saves.
+ */
+public class PayloadCompressor {
+    private static final int CHUNK_CHARS = 8192;
+    private final Codec codec;
+    private final long minBytes;
+
+    public PayloadCompressor(Codec codec, long minBytes) {
+        this.codec = codec;
+        this.minBytes = minBytes;
+    }
+
+    public static PayloadCompressor fromConfig() {
+        return new PayloadCompressor(Codec.fromName(AppConfig.getS3CompressionCodec()),
+                AppConfig.getS3CompressionMinBytes());
+    }
+
+    public static PayloadCompressor disabled() {
+        return new PayloadCompressor(Codec.NONE, 0);
+    }
+
+    public Codec codec() {
+        return codec;
+    }
+
+    /**
+     * Returns the compressed payload, or null when it should be uploaded uncompressed.
+     */
+    public byte[] compress(String data) {
+        if (codec == Codec.NONE || S3Uploader.utf8Length(data) < minBytes) {
+            return null;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length() / 4));
+        try (Writer writer = new OutputStreamWriter(codec.wrap(compressed), StandardCharsets.UTF_8)) {
+            for (int offset = 0; offset < data.length(); offset += CHUNK_CHARS) {
+                writer.write(data, offset, Math.min(CHUNK_CHARS, data.length() - offset));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compress payload with " + codec, e);
+        }
+        return compressed.toByteArray();
+    }
+
+    public enum Codec {
+        NONE(null, ""),
+        GZIP("gzip", ".gz"),
+        ZSTD("zstd", ".zst");
+
+        private final String contentEncoding;
+        private final String keySuffix;
+
+        Codec(String contentEncoding, String keySuffix) {
+            this.contentEncoding = contentEncoding;
+            this.keySuffix = keySuffix;
+        }
+
+        public String contentEncoding() {
+            return contentEncoding;
+        }
+
+        public String keySuffix() {
+            return keySuffix;
+        }
+
+        public OutputStream wrap(OutputStream out) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(out, CHUNK_CHARS);
+                case ZSTD:
+                    return new ZstdOutputStream(out);
+                default:
+                    return out;
+            }
+        }
+
+        public static Codec fromName(String name) {
+            return Codec.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.interspace.batchjob.service;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics recorded by {@link SqsPoller}. Attribute sets are built once up front so that
+ * recording a measurement does not allocate.
+ */
+final class PollerMetrics implements AutoCloseable {
+    static final String STORED = "stored";
+    static final String DUPLICATE = "duplicate";
+    static final String FILTERED = "filtered";
+    static final String RETRY_LATER = "retry_later";
+    static final String REJECTED = "rejected";
+    static final String FAILED = "failed";
+
+    private static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("outcome");
+    private static final Map<String, Attributes> OUTCOMES = Map.of(
+            STORED, Attributes.of(OUTCOME, STORED),
+            DUPLICATE, Attributes.of(OUTCOME, DUPLICATE),
+            FILTERED, Attributes.of(OUTCOME, FILTERED),
+            RETRY_LATER, Attributes.of(OUTCOME, RETRY_LATER),
+            REJECTED, Attributes.of(OUTCOME, REJECTED),
+            FAILED, Attributes.of(OUTCOME, FAILED));
+
+    private final LongCounter receivedCounter;
+    private final LongCounter processedCounter;
+    private final LongCounter deadLetteredCounter;
+    private final LongCounter releasedCounter;
+    private final DoubleHistogram receiveDuration;
+    private final DoubleHistogram processingDuration;
+    private final DoubleHistogram deleteDuration;
+    private final LongHistogram queueTime;
+    private final LongHistogram endToEndLag;
+    private final List<ObservableLongGauge> gauges;
+
+    PollerMetrics(Meter meter, LongSupplier inFlightMessages, LongSupplier activeReceivers,
+                  LongSupplier visibilityTracked) {
+        this.receivedCounter = meter.counterBuilder("sqs.messages.received")
+                .setDescription("Messages received from SQS")
+                .build();
+        this.processedCounter = meter.counterBuilder("sqs.messages.processed")
+                .setDescription("Messages whose processing finished, by outcome")
+                .build();
+        this.deadLetteredCounter = meter.counterBuilder("sqs.messages.dead_lettered")
+                .setDescription("Messages accepted by the dead-letter queue")
+                .build();
+        this.releasedCounter = meter.counterBuilder("sqs.messages.released")
+                .setDescription("Messages handed back to SQS unprocessed during shutdown")
+                .build();
+        this.receiveDuration = meter.histogramBuilder("sqs.receive.duration")
+                .setDescription("Duration of ReceiveMessage calls, including long polling")
+                .setUnit("ms")
+                .build();
+        this.processingDuration = meter.histogramBuilder("sqs.message.processing.duration")
+                .setDescription("Time from handing a message to a worker until it was stored or given up on")
+                .setUnit("ms")
+                .build();
+        this.deleteDuration = meter.histogramBuilder("sqs.delete.duration")
+                .setDescription("Time from submitting a delete until SQS confirmed it, including batching")
+                .setUnit("ms")
+                .build();
+        this.queueTime = meter.histogramBuilder("sqs.message.queue_time")
+                .setDescription("Time between a message being sent and it being received (backlog age)")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+        this.endToEndLag = meter.histogramBuilder("sqs.message.end_to_end_lag")
+                .setDescription("Time between a message being sent and it being stored and deleted")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+        this.gauges = List.of(
+                meter.gaugeBuilder("sqs.messages.in_flight")
+                        .setDescription("Messages received but not yet fully processed")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> measurement.record(inFlightMessages.getAsLong())),
+                meter.gaugeBuilder("sqs.receivers.active")
+                        .setDescription("Receive loops currently polling")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> measurement.record(activeReceivers.getAsLong())),
+                meter.gaugeBuilder("sqs.visibility.tracked")
+                        .setDescription("Messages whose visibility timeout is being extended")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> measurement.record(visibilityTracked.getAsLong())));
+    }
+
+    void received(Message message, long deliveredAt) {
+        receivedCounter.add(1);
+        long sentAt = sentTimestamp(message);
+        if (sentAt > 0) {
+            // Only clock skew between SQS and this host can make this negative
+            queueTime.record(Math.max(0, deliveredAt - sentAt));
+        }
+    }
+
+    void receiveCompleted(long startNanos) {
+        receiveDuration.record(millisSince(startNanos));
+    }
+
+    void processed(String outcome, long startNanos) {
+        Attributes attributes = OUTCOMES.get(outcome);
+        processedCounter.add(1, attributes);
+        processingDuration.record(millisSince(startNanos), attributes);
+    }
+
+    void deleted(Message message, long submittedNanos) {
+        deleteDuration.record(millisSince(submittedNanos));
+        long sentAt = sentTimestamp(message);
+        if (sentAt > 0) {
+            endToEndLag.record(Math.max(0, System.currentTimeMillis() - sentAt));
+        }
+    }
+
+    void deadLettered() {
+        deadLetteredCounter.add(1);
+    }
+
+    void released() {
+        releasedCounter.add(1);
+    }
+
+    @Override
+    public void close() {
+        gauges.forEach(ObservableLongGauge::close);
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+
+    static long sentTimestamp(Message message) {
+        String sentTimestamp = message.attributes().get(MessageSystemAttributeName.SENT_TIMESTAMP);
+        if (sentTimestamp == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(sentTimestamp);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
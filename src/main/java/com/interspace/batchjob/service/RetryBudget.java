@@ -0,0 +1,55 @@
+package com.interspace.batchjob.service;
+
+/**
+ * Caps retries as a fraction of traffic so that a degraded dependency does not get hit by
+ * maxAttempts times the normal request rate. Every first attempt deposits {@code ratio} tokens
+ * and every retry withdraws one; minRetriesPerSecond tokens are added over time regardless of
+ * traffic, so a quiet service can still retry. The balance never exceeds capacity.
+ */
+public class RetryBudget {
+    private final double ratio;
+    private final double minRetriesPerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    public RetryBudget(double ratio, double minRetriesPerSecond, int capacity) {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+    }
+
+    /**
+     * A budget that allows every retry.
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(1.0, Double.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    public synchronized void recordRequest() {
+        refill();
+        tokens = Math.min(capacity, tokens + ratio);
+    }
+
+    public synchronized boolean tryAcquireRetry() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    public synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+        lastRefillNanos = now;
+        tokens = Math.min(capacity, tokens + elapsedSeconds * minRetriesPerSecond);
+    }
+}
@@ -0,0 +1,12 @@
+package com.interspace.batchjob.service;
+
+/**
+ * Thrown when {@link RetryService} gives up on an operation without it having run out of attempts,
+ * because the circuit breaker is open or the retry budget is spent. The cause, if any, is the
+ * failure of the last attempt that did run.
+ */
+public class RetryRejectedException extends RuntimeException {
+    public RetryRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,75 +1,280 @@
 package com.interspace.batchjob.service;
 
 import com.interspace.batchjob.config.AppConfig;
+import com.interspace.batchjob.config.TuningConfig;
 import com.interspace.batchjob.telemetry.TelemetryConfig;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class RetryService {
     private static final Logger logger = LoggerFactory.getLogger(RetryService.class);
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retry-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AttributeKey<String> REASON = AttributeKey.stringKey("reason");
+    private static final Attributes CIRCUIT_OPEN = Attributes.of(REASON, "circuit_open");
+    private static final Attributes BUDGET_EXHAUSTED = Attributes.of(REASON, "budget_exhausted");
     private final Tracer tracer;
-    private final int maxAttempts;
-    private final long initialDelayMs;
-    private final long maxDelayMs;
+    private final LongCounter retryCounter;
+    private final LongCounter rejectionCounter;
+    private final LongCounter exhaustedCounter;
+    private volatile TuningConfig tuning;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
 
     public RetryService() {
-        this.tracer = TelemetryConfig.getTracer();
-        this.maxAttempts = AppConfig.getMaxRetryAttempts();
-        this.initialDelayMs = AppConfig.getInitialDelayMs();
-        this.maxDelayMs = AppConfig.getMaxDelayMs();
+        this(CircuitBreaker.fromAppConfig(),
+             AppConfig.isRetryBudgetEnabled()
+                     ? new RetryBudget(AppConfig.getRetryBudgetRatio(), AppConfig.getRetryBudgetMinRetriesPerSecond(),
+                             AppConfig.getRetryBudgetCapacity())
+                     : RetryBudget.unlimited());
+    }
+
+    public RetryService(CircuitBreaker circuitBreaker, RetryBudget retryBudget) {
+        this.tracer = TelemetryConfig.getDetailTracer();
+        this.tuning = TuningConfig.fromAppConfig();
+        this.circuitBreaker = circuitBreaker;
+        this.retryBudget = retryBudget;
+
+        Meter meter = TelemetryConfig.getMeter();
+        this.retryCounter = meter.counterBuilder("retry.retries")
+                .setDescription("Retries scheduled after a failed attempt")
+                .build();
+        this.rejectionCounter = meter.counterBuilder("retry.rejections")
+                .setDescription("Operations stopped by the circuit breaker or the retry budget")
+                .build();
+        this.exhaustedCounter = meter.counterBuilder("retry.exhausted")
+                .setDescription("Operations that failed on every attempt")
+                .build();
+        meter.gaugeBuilder("retry.circuit_breaker.state")
+                .setDescription("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(switch (circuitBreaker.getState()) {
+                    case CLOSED -> 0;
+                    case HALF_OPEN -> 1;
+                    case OPEN -> 2;
+                }));
+    }
+
+    /**
+     * Replaces the attempt limit and backoff delays; operations already retrying keep their attempt limit.
+     */
+    public void applyTuning(TuningConfig tuning) {
+        this.tuning = tuning;
+    }
+
+    /**
+     * True while the shared circuit breaker rejects every call; callers should stop taking on new work.
+     */
+    public boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * The shared circuit breaker's state. While half-open only a few trial calls get through, so
+     * callers should take on just enough work to probe the dependency.
+     */
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Whether a failure may succeed on a later attempt: server errors, throttling, timeouts and I/O or
+     * other client-side failures. Requests the service rejected as invalid (other 4xx responses) will
+     * fail the same way again; they are not retried and do not count towards the circuit breaker.
+     */
+    public static boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkServiceException serviceException) {
+                int status = serviceException.statusCode();
+                return status < 400 || status >= 500 || status == 408 || status == 429
+                        || serviceException.isThrottlingException();
+            }
+        }
+        return true;
     }
 
     public <T> T executeWithRetry(Callable<T> operation) throws Exception {
-        Exception lastException = null;
-        
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            Span span = tracer.spanBuilder("retry.attempt")
-                    .setAttribute("retry.attempt_number", attempt)
-                    .setAttribute("retry.max_attempts", maxAttempts)
-                    .startSpan();
-
-            try (var scope = span.makeCurrent()) {
-                T result = operation.call();
+        // Retries are handed back to the calling thread, which blocks until the operation settles
+        BlockingQueue<Runnable> callerTasks = new LinkedBlockingQueue<>();
+        CompletableFuture<T> result = executeWithRetryAsync(() -> {
+            try {
+                return CompletableFuture.completedFuture(operation.call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }, callerTasks::add);
+
+        try {
+            while (!result.isDone()) {
+                callerTasks.take().run();
+            }
+            return result.join();
+        } catch (InterruptedException ie) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Retry interrupted", ie);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an asynchronous operation, retrying failures with exponential backoff. Retries wait on a
+     * shared timer rather than blocking a thread, then run on the common fork-join pool, so a slow
+     * supplier never holds up the timer and the other retries it schedules. Fails with
+     * {@link RetryRejectedException} if the circuit breaker or the retry budget stops the operation
+     * before it ran out of attempts.
+     */
+    public <T> CompletableFuture<T> executeWithRetryAsync(Supplier<CompletableFuture<T>> operation) {
+        return executeWithRetryAsync(operation, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Like {@link #executeWithRetryAsync(Supplier)}, but runs each retry attempt on the given executor
+     * once its backoff delay has elapsed.
+     */
+    public <T> CompletableFuture<T> executeWithRetryAsync(Supplier<CompletableFuture<T>> operation,
+                                                          Executor retryExecutor) {
+        return executeWithRetryAsync(operation, retryExecutor, tuning.maxRetryAttempts());
+    }
+
+    /**
+     * Like {@link #executeWithRetryAsync(Supplier, Executor)}, but with its own attempt limit. With
+     * maxAttempts 1 the operation runs once, still guarded by the circuit breaker.
+     */
+    public <T> CompletableFuture<T> executeWithRetryAsync(Supplier<CompletableFuture<T>> operation,
+                                                          Executor retryExecutor, int maxAttempts) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        retryBudget.recordRequest();
+        attempt(operation, retryExecutor, Context.current(), 1, Math.max(1, maxAttempts), null, result);
+        return result;
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> operation, Executor retryExecutor,
+                             Context parentContext, int attempt, int maxAttempts, Throwable previousFailure,
+                             CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return; // cancelled by the caller
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            logger.debug("Circuit breaker open, rejecting attempt {}", attempt);
+            rejectionCounter.add(1, CIRCUIT_OPEN);
+            result.completeExceptionally(new RetryRejectedException("Circuit breaker is open", previousFailure));
+            return;
+        }
+
+        Span span = tracer.spanBuilder("retry.attempt")
+                .setParent(parentContext)
+                .setAttribute("retry.attempt_number", attempt)
+                .setAttribute("retry.max_attempts", maxAttempts)
+                .startSpan();
+
+        CompletableFuture<T> attemptFuture;
+        try (var scope = span.makeCurrent()) {
+            attemptFuture = operation.get();
+        } catch (Exception e) {
+            attemptFuture = CompletableFuture.failedFuture(e);
+        }
+
+        attemptFuture.whenComplete((value, error) -> {
+            if (error == null) {
+                circuitBreaker.onSuccess();
                 span.setStatus(StatusCode.OK);
+                span.end();
                 logger.debug("Operation succeeded on attempt {}", attempt);
-                return result;
-                
-            } catch (Exception e) {
-                lastException = e;
-                span.setStatus(StatusCode.ERROR, e.getMessage());
-                span.setAttribute("error.type", e.getClass().getSimpleName());
-                
-                logger.warn("Operation failed on attempt {} of {}: {}", 
-                           attempt, maxAttempts, e.getMessage());
-                
-                if (attempt < maxAttempts) {
-                    long delayMs = calculateDelay(attempt);
-                    span.setAttribute("retry.delay_ms", delayMs);
-                    
-                    try {
-                        Thread.sleep(delayMs);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Retry interrupted", ie);
-                    }
-                }
-            } finally {
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            boolean retryable = isRetryable(cause);
+            if (retryable) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onNeutral();
+            }
+            span.setStatus(StatusCode.ERROR, cause.getMessage());
+            span.setAttribute("error.type", cause.getClass().getSimpleName());
+
+            logger.warn("Operation failed on attempt {} of {}: {}",
+                       attempt, maxAttempts, cause.getMessage());
+
+            if (!retryable) {
+                span.setAttribute("retry.retryable", false);
+                span.end();
+                logger.warn("Not retrying a failure that would recur: {}", cause.getMessage());
+                result.completeExceptionally(cause);
+            } else if (attempt < maxAttempts && !retryBudget.tryAcquireRetry()) {
+                span.setAttribute("retry.budget_exhausted", true);
+                span.end();
+                logger.warn("Retry budget exhausted, not retrying after attempt {}", attempt);
+                rejectionCounter.add(1, BUDGET_EXHAUSTED);
+                result.completeExceptionally(new RetryRejectedException("Retry budget exhausted", cause));
+            } else if (attempt < maxAttempts) {
+                long delayMs = calculateDelay(attempt);
+                span.setAttribute("retry.delay_ms", delayMs);
                 span.end();
+                retryCounter.add(1);
+                scheduleRetry(() -> attempt(operation, retryExecutor, parentContext, attempt + 1, maxAttempts,
+                                            cause, result),
+                              retryExecutor, delayMs, result);
+            } else {
+                span.end();
+                logger.error("Operation failed after {} attempts", maxAttempts);
+                exhaustedCounter.add(1);
+                result.completeExceptionally(cause);
             }
-        }
-        
-        logger.error("Operation failed after {} attempts", maxAttempts);
-        throw lastException;
+        });
+    }
+
+    private static void scheduleRetry(Runnable retry, Executor retryExecutor, long delayMs,
+                                      CompletableFuture<?> result) {
+        RETRY_SCHEDULER.schedule(() -> {
+            try {
+                retryExecutor.execute(retry);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
     }
 
-    private long calculateDelay(int attempt) {
+    /**
+     * The backoff before the given retry: exponential from the initial delay, capped at the max
+     * delay, with ±25% jitter.
+     */
+    public long calculateDelay(int attempt) {
         // Exponential backoff with jitter
-        long delay = Math.min(initialDelayMs * (1L << (attempt - 1)), maxDelayMs);
+        TuningConfig tuning = this.tuning;
+        long delay = Math.min(tuning.initialDelayMs() * (1L << (attempt - 1)), tuning.maxDelayMs());
         
         // Add jitter (±25%)
         double jitter = 0.25 * (2.0 * Math.random() - 1.0);
@@ -0,0 +1,44 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.config.AppConfig;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses a key sub-prefix from the value of a JSON field, e.g. {@code type} = {@code order}
+ * to {@code orders/}. The prefix goes below the queue's key prefix. Values without a mapping, and
+ * bodies without the field, get the default prefix (empty by default: not routed).
+ * <p>
+ * Routed messages are always stored one object per message, also when aggregation is on.
+ */
+public class RouteStage implements MessageHandler {
+    private final String[] path;
+    private final Map<String, String> prefixes;
+    private final String defaultPrefix;
+
+    public RouteStage(String field, Map<String, String> prefixes, String defaultPrefix) {
+        if (field.isEmpty()) {
+            throw new IllegalArgumentException("The route stage needs app.handler.route.field");
+        }
+        this.path = JsonFields.path(field);
+        this.prefixes = Map.copyOf(prefixes);
+        this.defaultPrefix = defaultPrefix;
+    }
+
+    public static RouteStage fromAppConfig() {
+        return new RouteStage(AppConfig.getHandlerRouteField(), AppConfig.getHandlerRoutePrefixes(),
+                AppConfig.getHandlerRouteDefaultPrefix());
+    }
+
+    @Override
+    public List<HandledMessage> handle(HandledMessage message) {
+        String value = JsonFields.find(message.body(), path);
+        String prefix = value != null ? prefixes.getOrDefault(value, defaultPrefix) : defaultPrefix;
+        if (prefix.isEmpty()) {
+            return List.of(message);
+        }
+        // Appended, so a later route stage can add a further level
+        return List.of(message.withKeyPrefix(message.keyPrefix() + prefix));
+    }
+}
@@ -1,51 +1,173 @@
 package com.interspace.batchjob.service;
 
+import com.interspace.batchjob.config.AppConfig;
 import com.interspace.batchjob.telemetry.TelemetryConfig;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class S3Uploader {
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
     private static final Logger logger = LoggerFactory.getLogger(S3Uploader.class);
+    // CopyObject is limited to 5 GiB; larger objects are copied part by part
+    private static final long MAX_SINGLE_COPY_BYTES = 5L * 1024 * 1024 * 1024;
+    private static final long COPY_PART_SIZE_BYTES = 512L * 1024 * 1024;
+    private static final int MAX_COPY_PARTS = 10_000;
+    private static final int STRING_CHUNK_CHARS = 8192;
+    private static final AttributeKey<String> OPERATION = AttributeKey.stringKey("s3.operation");
+    private static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("outcome");
+    private static final AtomicInteger partThreadCount = new AtomicInteger();
+    private static final ExecutorService PART_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "s3-part-upload-" + partThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
     private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final UploadSlots uploadSlots;
+    // Runs the writes that have to block, so the async methods never do: every upload and copy
+    // without an async client, multipart uploads of large payloads, and multipart copies
+    private final ThreadPoolExecutor blockingExecutor;
+    private final PayloadCompressor compressor;
+    private final long multipartThresholdBytes;
+    private final int multipartPartSizeBytes;
+    private final int multipartParallelism;
     private final Tracer tracer;
+    private final LongCounter uploadCounter;
+    private final LongCounter uploadBytes;
+    private final DoubleHistogram uploadDuration;
 
     public S3Uploader(S3Client s3Client) {
+        this(s3Client, null);
+    }
+
+    public S3Uploader(S3Client s3Client, S3AsyncClient s3AsyncClient) {
+        this(s3Client, s3AsyncClient, AppConfig.getS3MaxConcurrentUploads());
+    }
+
+    public S3Uploader(S3Client s3Client, S3AsyncClient s3AsyncClient, int maxConcurrentUploads) {
+        this(s3Client, s3AsyncClient, maxConcurrentUploads, PayloadCompressor.fromConfig());
+    }
+
+    public S3Uploader(S3Client s3Client, S3AsyncClient s3AsyncClient, int maxConcurrentUploads,
+                      PayloadCompressor compressor) {
         this.s3Client = s3Client;
-        this.tracer = TelemetryConfig.getTracer();
+        this.s3AsyncClient = s3AsyncClient;
+        AtomicInteger blockingThreadCount = new AtomicInteger();
+        this.blockingExecutor = new ThreadPoolExecutor(maxConcurrentUploads, maxConcurrentUploads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "s3-blocking-" + blockingThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.blockingExecutor.allowCoreThreadTimeOut(true);
+        this.uploadSlots = new UploadSlots(maxConcurrentUploads, blockingExecutor);
+        this.compressor = compressor;
+        this.multipartThresholdBytes = AppConfig.getS3MultipartThresholdBytes();
+        this.multipartPartSizeBytes = AppConfig.getS3MultipartPartSizeBytes();
+        this.multipartParallelism = Math.max(1, AppConfig.getS3MultipartParallelism());
+        this.tracer = TelemetryConfig.getDetailTracer();
+
+        Meter meter = TelemetryConfig.getMeter();
+        this.uploadCounter = meter.counterBuilder("s3.uploads")
+                .setDescription("S3 writes by operation (put, stream, copy) and outcome")
+                .build();
+        this.uploadBytes = meter.counterBuilder("s3.upload.bytes")
+                .setDescription("Bytes written to S3, after compression")
+                .setUnit("By")
+                .build();
+        this.uploadDuration = meter.histogramBuilder("s3.upload.duration")
+                .setDescription("Duration of S3 writes")
+                .setUnit("ms")
+                .build();
+        meter.gaugeBuilder("s3.uploads.in_flight")
+                .setDescription("Asynchronous PUTs currently outstanding")
+                .ofLongs()
+                .buildWithCallback(measurement ->
+                        measurement.record(uploadSlots.inUse()));
     }
 
     public void uploadToS3(String bucketName, String objectKey, String data) {
+        uploadToS3(bucketName, objectKey, data, JSON_CONTENT_TYPE);
+    }
+
+    public void uploadToS3(String bucketName, String objectKey, String data, String contentType) {
+        if (utf8Length(data) >= multipartThresholdBytes) {
+            uploadLargeString(bucketName, objectKey, data, contentType);
+            return;
+        }
+
         Span span = tracer.spanBuilder("s3.upload")
                 .setAttribute("s3.bucket.name", bucketName)
                 .setAttribute("s3.object.key", objectKey)
                 .setAttribute("s3.object.size", data.length())
                 .startSpan();
 
+        long startNanos = System.nanoTime();
         try (var scope = span.makeCurrent()) {
-            logger.info("Uploading data to S3: bucket={}, key={}", bucketName, objectKey);
-
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(objectKey)
-                    .contentType("application/json")
-                    .build();
+            byte[] compressed = compressor.compress(data);
+            PutObjectRequest putObjectRequest = putObjectRequest(bucketName, objectKey, contentType, compressed, span);
+            logger.info("Uploading data to S3: bucket={}, key={}", bucketName, putObjectRequest.key());
 
-            PutObjectResponse response = s3Client.putObject(putObjectRequest, RequestBody.fromString(data));
+            RequestBody requestBody = compressed != null
+                    ? RequestBody.fromBytes(compressed) : RequestBody.fromString(data);
+            PutObjectResponse response = s3Client.putObject(putObjectRequest, requestBody);
             
             span.setAttribute("s3.etag", response.eTag());
             span.setStatus(StatusCode.OK);
+            recordUpload("put", startNanos, requestBody.optionalContentLength().orElse(0L), true);
             
             logger.info("Successfully uploaded to S3: bucket={}, key={}, etag={}", 
-                       bucketName, objectKey, response.eTag());
+                       bucketName, putObjectRequest.key(), response.eTag());
 
         } catch (Exception e) {
+            recordUpload("put", startNanos, 0, false);
             span.setStatus(StatusCode.ERROR, e.getMessage());
             logger.error("Failed to upload to S3: bucket={}, key={}", bucketName, objectKey, e);
             throw new RuntimeException("Failed to upload to S3", e);
@@ -53,4 +175,414 @@ public class S3Uploader {
             span.end();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Uploads without holding a thread for the duration of the PUT, and without blocking the caller.
+     * At most maxConcurrentUploads PUTs and copies are outstanding; once all are, later PUTs are
+     * queued and started as earlier ones finish. Payloads at or above the multipart threshold, and
+     * all uploads without an async client, run {@link #uploadToS3} on the blocking pool.
+     */
+    public CompletableFuture<Void> uploadToS3Async(String bucketName, String objectKey, String data) {
+        return uploadToS3Async(bucketName, objectKey, data, JSON_CONTENT_TYPE);
+    }
+
+    public CompletableFuture<Void> uploadToS3Async(String bucketName, String objectKey, String data,
+                                                   String contentType) {
+        if (s3AsyncClient == null || utf8Length(data) >= multipartThresholdBytes) {
+            return CompletableFuture.runAsync(Context.current().wrap(
+                    () -> uploadToS3(bucketName, objectKey, data, contentType)), blockingExecutor);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        uploadSlots.start(Context.current().wrap(() -> put(bucketName, objectKey, data, contentType, result)));
+        return result;
+    }
+
+    // Runs once an upload slot is held, and hands it back when the PUT completes
+    private void put(String bucketName, String objectKey, String data, String contentType,
+                     CompletableFuture<Void> result) {
+        Span span = tracer.spanBuilder("s3.upload")
+                .setAttribute("s3.bucket.name", bucketName)
+                .setAttribute("s3.object.key", objectKey)
+                .setAttribute("s3.object.size", data.length())
+                .startSpan();
+
+        long startNanos = System.nanoTime();
+        long bodyBytes = 0;
+        CompletableFuture<PutObjectResponse> putFuture;
+        try (var scope = span.makeCurrent()) {
+            byte[] compressed = compressor.compress(data);
+            PutObjectRequest putObjectRequest = putObjectRequest(bucketName, objectKey, contentType, compressed, span);
+            logger.info("Uploading data to S3: bucket={}, key={}", bucketName, putObjectRequest.key());
+
+            AsyncRequestBody requestBody = compressed != null
+                    ? AsyncRequestBody.fromBytes(compressed) : AsyncRequestBody.fromString(data);
+            bodyBytes = requestBody.contentLength().orElse(0L);
+            putFuture = s3AsyncClient.putObject(putObjectRequest, requestBody);
+        } catch (Exception e) {
+            putFuture = CompletableFuture.failedFuture(e);
+        }
+
+        long sentBytes = bodyBytes;
+        putFuture.whenComplete((response, e) -> {
+            uploadSlots.release();
+            recordUpload("put", startNanos, sentBytes, e == null);
+            if (e != null) {
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                span.end();
+                logger.error("Failed to upload to S3: bucket={}, key={}", bucketName, objectKey, e);
+                result.completeExceptionally(new RuntimeException("Failed to upload to S3", e));
+                return;
+            }
+
+            span.setAttribute("s3.etag", response.eTag());
+            span.setStatus(StatusCode.OK);
+            span.end();
+            logger.info("Successfully uploaded to S3: bucket={}, key={}, etag={}",
+                       bucketName, objectKey, response.eTag());
+            result.complete(null);
+        });
+    }
+
+    /**
+     * Uploads a stream of unknown length without buffering it all in memory. The data is compressed
+     * with the configured codec, if any, and sent as a parallel multipart upload once it outgrows a
+     * single part.
+     */
+    public void uploadStream(String bucketName, String objectKey, InputStream data, String contentType) {
+        writeStreaming(bucketName, objectKey, contentType, data::transferTo);
+    }
+
+    /**
+     * Copies a payload that already lives in S3 (e.g. a claim-checked message) without it passing
+     * through this process.
+     */
+    public void copyToS3(String sourceBucket, String sourceKey, String bucketName, String objectKey) {
+        Span span = tracer.spanBuilder("s3.copy")
+                .setAttribute("s3.source.bucket", sourceBucket)
+                .setAttribute("s3.source.key", sourceKey)
+                .setAttribute("s3.bucket.name", bucketName)
+                .setAttribute("s3.object.key", objectKey)
+                .startSpan();
+
+        long startNanos = System.nanoTime();
+        try (var scope = span.makeCurrent()) {
+            HeadObjectResponse source = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(sourceBucket)
+                    .key(sourceKey)
+                    .build());
+            span.setAttribute("s3.object.size", source.contentLength());
+            logger.info("Copying S3 object: {}/{} -> {}/{} ({} bytes)",
+                       sourceBucket, sourceKey, bucketName, objectKey, source.contentLength());
+
+            if (source.contentLength() > MAX_SINGLE_COPY_BYTES) {
+                multipartCopy(sourceBucket, sourceKey, bucketName, objectKey, source);
+            } else {
+                s3Client.copyObject(copyObjectRequest(sourceBucket, sourceKey, bucketName, objectKey));
+            }
+            span.setStatus(StatusCode.OK);
+            // Copies move no bytes through this process, so they do not count towards s3.upload.bytes
+            recordUpload("copy", startNanos, 0, true);
+        } catch (Exception e) {
+            recordUpload("copy", startNanos, 0, false);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            logger.error("Failed to copy S3 object: {}/{} -> {}/{}", sourceBucket, sourceKey, bucketName, objectKey, e);
+            throw new RuntimeException("Failed to copy S3 object", e);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Copies without holding the calling thread. With an async client the HEAD and CopyObject do not
+     * block and share the maxConcurrentUploads slots with PUTs, queued like them; objects too large
+     * for CopyObject, and all copies without an async client, run on the blocking pool.
+     */
+    public CompletableFuture<Void> copyToS3Async(String sourceBucket, String sourceKey,
+                                                 String bucketName, String objectKey) {
+        if (s3AsyncClient == null) {
+            return CompletableFuture.runAsync(Context.current().wrap(
+                    () -> copyToS3(sourceBucket, sourceKey, bucketName, objectKey)), blockingExecutor);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        uploadSlots.start(Context.current().wrap(
+                () -> copy(sourceBucket, sourceKey, bucketName, objectKey, result)));
+        return result;
+    }
+
+    // Runs once an upload slot is held, and hands it back when the copy completes
+    private void copy(String sourceBucket, String sourceKey, String bucketName, String objectKey,
+                      CompletableFuture<Void> result) {
+        Span span = tracer.spanBuilder("s3.copy")
+                .setAttribute("s3.source.bucket", sourceBucket)
+                .setAttribute("s3.source.key", sourceKey)
+                .setAttribute("s3.bucket.name", bucketName)
+                .setAttribute("s3.object.key", objectKey)
+                .startSpan();
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<Void> copyFuture;
+        try (var scope = span.makeCurrent()) {
+            copyFuture = s3AsyncClient.headObject(HeadObjectRequest.builder()
+                    .bucket(sourceBucket)
+                    .key(sourceKey)
+                    .build()).thenCompose(source -> {
+                        span.setAttribute("s3.object.size", source.contentLength());
+                        logger.info("Copying S3 object: {}/{} -> {}/{} ({} bytes)",
+                                   sourceBucket, sourceKey, bucketName, objectKey, source.contentLength());
+                        if (source.contentLength() > MAX_SINGLE_COPY_BYTES) {
+                            return CompletableFuture.runAsync(
+                                    () -> multipartCopy(sourceBucket, sourceKey, bucketName, objectKey, source),
+                                    blockingExecutor);
+                        }
+                        return s3AsyncClient.copyObject(copyObjectRequest(sourceBucket, sourceKey, bucketName, objectKey))
+                                .thenApply(response -> null);
+                    });
+        } catch (Exception e) {
+            copyFuture = CompletableFuture.failedFuture(e);
+        }
+
+        copyFuture.whenComplete((ignored, e) -> {
+            uploadSlots.release();
+            recordUpload("copy", startNanos, 0, e == null);
+            if (e != null) {
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                span.end();
+                logger.error("Failed to copy S3 object: {}/{} -> {}/{}", sourceBucket, sourceKey, bucketName, objectKey, e);
+                result.completeExceptionally(new RuntimeException("Failed to copy S3 object", e));
+                return;
+            }
+            span.setStatus(StatusCode.OK);
+            span.end();
+            result.complete(null);
+        });
+    }
+
+    private void uploadLargeString(String bucketName, String objectKey, String data, String contentType) {
+        writeStreaming(bucketName, objectKey, contentType, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (int offset = 0; offset < data.length(); offset += STRING_CHUNK_CHARS) {
+                writer.write(data, offset, Math.min(STRING_CHUNK_CHARS, data.length() - offset));
+            }
+            writer.flush();
+        });
+    }
+
+    private void writeStreaming(String bucketName, String objectKey, String contentType, PayloadWriter payload) {
+        PayloadCompressor.Codec codec = compressor.codec();
+        String key = objectKey + codec.keySuffix();
+        Span span = tracer.spanBuilder("s3.upload_stream")
+                .setAttribute("s3.bucket.name", bucketName)
+                .setAttribute("s3.object.key", key)
+                .startSpan();
+
+        PutObjectRequest target = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentEncoding(codec.contentEncoding())
+                .build();
+        MultipartUploadStream upload = new MultipartUploadStream(s3Client, s3AsyncClient, PART_EXECUTOR,
+                target, multipartPartSizeBytes, multipartParallelism);
+
+        long startNanos = System.nanoTime();
+        try (var scope = span.makeCurrent()) {
+            logger.info("Streaming upload to S3: bucket={}, key={}", bucketName, key);
+
+            OutputStream encoded = codec.wrap(upload);
+            payload.writeTo(encoded);
+            encoded.close();
+
+            span.setAttribute("s3.object.size", upload.bytesWritten());
+            span.setAttribute("s3.multipart", upload.isMultipart());
+            span.setStatus(StatusCode.OK);
+            recordUpload("stream", startNanos, upload.bytesWritten(), true);
+            logger.info("Successfully uploaded to S3: bucket={}, key={}, bytes={}",
+                       bucketName, key, upload.bytesWritten());
+        } catch (Exception e) {
+            upload.abort();
+            recordUpload("stream", startNanos, 0, false);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            logger.error("Failed to upload to S3: bucket={}, key={}", bucketName, key, e);
+            throw new RuntimeException("Failed to upload to S3", e);
+        } finally {
+            span.end();
+        }
+    }
+
+    private void multipartCopy(String sourceBucket, String sourceKey, String bucketName, String objectKey,
+                               HeadObjectResponse source) {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .contentType(source.contentType())
+                .contentEncoding(source.contentEncoding())
+                .build()).uploadId();
+
+        long size = source.contentLength();
+        // S3 allows at most 10,000 parts, so objects over ~5 TB of 512 MiB parts get larger parts
+        long partSize = Math.max(COPY_PART_SIZE_BYTES, (size + MAX_COPY_PARTS - 1) / MAX_COPY_PARTS);
+        // Like MultipartUploadStream, at most `parallelism` parts are outstanding; results are collected in part order
+        Deque<Future<CompletedPart>> inFlight = new ArrayDeque<>();
+        try {
+            List<CompletedPart> completedParts = new ArrayList<>();
+            int partNumber = 0;
+            for (long offset = 0; offset < size; offset += partSize) {
+                if (inFlight.size() >= multipartParallelism) {
+                    completedParts.add(awaitPart(inFlight.poll()));
+                }
+                int number = ++partNumber;
+                String range = "bytes=" + offset + "-" + (Math.min(offset + partSize, size) - 1);
+                UploadPartCopyRequest request = UploadPartCopyRequest.builder()
+                        .sourceBucket(sourceBucket)
+                        .sourceKey(sourceKey)
+                        .destinationBucket(bucketName)
+                        .destinationKey(objectKey)
+                        .uploadId(uploadId)
+                        .partNumber(number)
+                        .copySourceRange(range)
+                        .build();
+                inFlight.add(PART_EXECUTOR.submit(() -> CompletedPart.builder()
+                        .partNumber(number)
+                        .eTag(s3Client.uploadPartCopy(request).copyPartResult().eTag())
+                        .build()));
+            }
+            while (!inFlight.isEmpty()) {
+                completedParts.add(awaitPart(inFlight.poll()));
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            // Stop the remaining parts first so none is written after the upload has been aborted
+            for (Future<CompletedPart> part : inFlight) {
+                part.cancel(true);
+            }
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .build());
+            throw e;
+        }
+    }
+
+    private static CompletedPart awaitPart(Future<CompletedPart> part) {
+        try {
+            return part.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for a part copy", e);
+        }
+    }
+
+    private static CopyObjectRequest copyObjectRequest(String sourceBucket, String sourceKey,
+                                                       String bucketName, String objectKey) {
+        return CopyObjectRequest.builder()
+                .sourceBucket(sourceBucket)
+                .sourceKey(sourceKey)
+                .destinationBucket(bucketName)
+                .destinationKey(objectKey)
+                .build();
+    }
+
+    private PutObjectRequest putObjectRequest(String bucketName, String objectKey, String contentType,
+                                              byte[] compressed, Span span) {
+        PutObjectRequest.Builder request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(objectKey)
+                .contentType(contentType);
+
+        if (compressed != null) {
+            PayloadCompressor.Codec codec = compressor.codec();
+            String compressedKey = objectKey + codec.keySuffix();
+            request.key(compressedKey).contentEncoding(codec.contentEncoding());
+            span.setAttribute("s3.object.key", compressedKey);
+            span.setAttribute("s3.content_encoding", codec.contentEncoding());
+            span.setAttribute("s3.object.compressed_size", compressed.length);
+        }
+        return request.build();
+    }
+
+    private void recordUpload(String operation, long startNanos, long bytes, boolean success) {
+        Attributes attributes = Attributes.of(OPERATION, operation, OUTCOME, success ? "success" : "failure");
+        uploadCounter.add(1, attributes);
+        uploadDuration.record((System.nanoTime() - startNanos) / 1_000_000.0, attributes);
+        if (bytes > 0) {
+            uploadBytes.add(bytes, Attributes.of(OPERATION, operation));
+        }
+    }
+
+    static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Counts outstanding async PUTs and copies without parking threads. A start that finds every slot
+     * taken is queued, and the next release hands its slot straight to the oldest queued start,
+     * which then runs on the executor rather than the thread completing the previous request.
+     */
+    private static final class UploadSlots {
+        private final int slots;
+        private final Executor executor;
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int inUse = 0;
+
+        private UploadSlots(int slots, Executor executor) {
+            this.slots = Math.max(1, slots);
+            this.executor = executor;
+        }
+
+        void start(Runnable task) {
+            synchronized (this) {
+                if (inUse >= slots) {
+                    waiting.addLast(task);
+                    return;
+                }
+                inUse++;
+            }
+            task.run();
+        }
+
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.pollFirst();
+                if (next == null) {
+                    inUse--;
+                    return;
+                }
+            }
+            executor.execute(next);
+        }
+
+        synchronized int inUse() {
+            return inUse;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
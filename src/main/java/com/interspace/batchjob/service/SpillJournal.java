@@ -0,0 +1,664 @@
+package com.interspace.batchjob.service;
+
+import com.interspace.batchjob.telemetry.TelemetryConfig;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable local buffer between SQS and S3: a message can be deleted from SQS as soon as its
+ * payload is on local disk, and is uploaded to S3 in the background, so S3 latency no longer
+ * holds up the processing loop.
+ *
+ * <p>Records are appended to memory-mapped segment files of segmentBytes each. Appends are made
+ * durable in groups: every fsyncIntervalMs the active segment is forced to disk and only then are
+ * the futures of the records it covered completed, so one fsync acknowledges many messages. A
+ * segment is sealed once full or maxSegmentAgeMs old, and a drainer thread uploads its records and
+ * recycles the file for a later segment. Segments left on disk by a previous run are drained first.
+ *
+ * <p>A drain pass only uploads the records of a segment that are not in S3 yet. After a failed pass
+ * the segment waits, doubling from drainBackoffMs, while later segments are drained. A record that
+ * has failed maxDrainAttempts passes is moved to {@code quarantine-<sequence>.log}, in the segment
+ * format, so it no longer holds its segment; renaming that file to {@code segment-<sequence>.log}
+ * replays it on the next start. Drains have their own circuit breaker, so replaying a backlog into
+ * a failing S3 neither trips nor is held back by the one guarding message processing.
+ *
+ * <p>Record layout: int payload length, int CRC32C of the segment sequence number and payload, then
+ * the payload (bucket, key and body). A recycled file still holds the records of its previous
+ * segment; their checksums were computed with another sequence number, so a scan stops there.
+ */
+public class SpillJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SpillJournal.class);
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_FREE_SEGMENTS = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String FREE_PREFIX = "free-";
+    private static final String QUARANTINE_PREFIX = "quarantine-";
+    private static final String SUFFIX = ".log";
+    private static final long DRAIN_POLL_MS = 100;
+    private static final long MAX_DRAIN_BACKOFF_MS = 60_000;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long maxSegmentAgeMs;
+    private final int drainConcurrency;
+    private final int maxDrainAttempts;
+    private final long drainBackoffMs;
+    private final S3Uploader s3Uploader;
+    private final CircuitBreaker drainBreaker;
+    private final Tracer tracer;
+    private final ScheduledExecutorService flusher;
+    private final Thread drainer;
+    // Ordered by when a segment may next be drained, then by sequence
+    private final DelayQueue<Segment> sealed = new DelayQueue<>();
+    private final Deque<Path> free = new ArrayDeque<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicInteger stuckSegments = new AtomicInteger();
+    private final LongCounter quarantinedCounter;
+    private final List<ObservableLongGauge> gauges;
+    private Segment active;
+    private long nextSequence = 0;
+    // Active, sealed and draining segments; bounded by maxSegments
+    private int segmentsInUse = 0;
+    private boolean closed = false;
+    private boolean full = false;
+    private volatile boolean running = true;
+
+    public SpillJournal(Path directory, int segmentBytes, int maxSegments, long fsyncIntervalMs, long maxSegmentAgeMs,
+                        int drainConcurrency, int maxDrainAttempts, long drainBackoffMs, S3Uploader s3Uploader,
+                        CircuitBreaker drainBreaker) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.maxSegmentAgeMs = maxSegmentAgeMs;
+        this.drainConcurrency = Math.max(1, drainConcurrency);
+        this.maxDrainAttempts = Math.max(1, maxDrainAttempts);
+        this.drainBackoffMs = Math.max(1, drainBackoffMs);
+        this.s3Uploader = s3Uploader;
+        this.drainBreaker = drainBreaker;
+        this.tracer = TelemetryConfig.getTracer();
+
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open spill journal in " + directory, e);
+        }
+
+        Meter meter = TelemetryConfig.getMeter();
+        this.quarantinedCounter = meter.counterBuilder("spill.records.quarantined")
+                .setDescription("Spilled records moved to a quarantine file after failing every drain attempt")
+                .build();
+        this.gauges = List.of(
+                meter.gaugeBuilder("spill.segments.pending")
+                        .setDescription("Spill segments written but not yet uploaded to S3")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> measurement.record(pendingSegments())),
+                meter.gaugeBuilder("spill.bytes.pending")
+                        .setDescription("Bytes of spilled records not yet uploaded to S3")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> measurement.record(pendingBytes.get())),
+                meter.gaugeBuilder("spill.segments.stuck")
+                        .setDescription("Spill segments whose last drain left records that could not be uploaded")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> measurement.record(stuckSegments.get())));
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spill-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        this.drainer = new Thread(this::drainLoop, "spill-journal-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Appends the payload destined for the given object. The future completes once the record is
+     * on disk; the upload happens later. Returns null if the journal is full or closed, or the
+     * payload does not fit in a segment, in which case the caller should upload directly.
+     */
+    public CompletableFuture<Void> append(String bucketName, String objectKey, String body) {
+        byte[] bucket = bucketName.getBytes(StandardCharsets.UTF_8);
+        byte[] key = objectKey.getBytes(StandardCharsets.UTF_8);
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = 2 + bucket.length + 2 + key.length + 4 + data.length;
+        if (HEADER_BYTES + payloadBytes > segmentBytes) {
+            return null;
+        }
+
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        Segment toSeal = null;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            if (active != null && active.remaining() < HEADER_BYTES + payloadBytes) {
+                toSeal = active;
+                active = null;
+            }
+            if (active == null && !openSegment()) {
+                durable = null;
+            } else {
+                active.write(bucket, key, data, payloadBytes);
+                active.waiters.add(durable);
+                pendingBytes.addAndGet(HEADER_BYTES + payloadBytes);
+            }
+        }
+        if (toSeal != null) {
+            seal(toSeal);
+        }
+        return durable;
+    }
+
+    public synchronized int pendingSegments() {
+        return segmentsInUse;
+    }
+
+    public int stuckSegments() {
+        return stuckSegments.get();
+    }
+
+    @Override
+    public void close() {
+        close(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting records and waits up to the timeout for the pending segments to be uploaded.
+     * Whatever is left stays on disk and is uploaded on the next start.
+     */
+    public void close(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Segment last;
+        synchronized (this) {
+            closed = true;
+            last = active;
+            active = null;
+        }
+        if (last != null) {
+            if (last.records == 0) {
+                recycle(last);
+            } else {
+                seal(last);
+            }
+        }
+
+        int left;
+        synchronized (this) {
+            try {
+                long remainingMs;
+                while (segmentsInUse > 0
+                        && (remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                    wait(remainingMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            left = segmentsInUse;
+        }
+
+        running = false;
+        drainer.interrupt();
+        flusher.shutdownNow();
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        gauges.forEach(ObservableLongGauge::close);
+        if (left > 0) {
+            logger.warn("{} spill segments ({} bytes) are not in S3 yet; they will be uploaded on the next start",
+                       left, pendingBytes.get());
+        }
+    }
+
+    // Segments found on disk are sealed and drained before any new ones. New segments are numbered
+    // after every file on disk, recycled and quarantined ones included: a recycled file still holds
+    // records whose checksums are valid for its old sequence, so that sequence must not come back.
+    private void recover() throws IOException {
+        List<Path> segmentFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                long sequence = sequenceOf(file);
+                if (sequence < 0) {
+                    continue;
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX)) {
+                    segmentFiles.add(file);
+                } else if (name.startsWith(FREE_PREFIX)) {
+                    free.add(file);
+                }
+            }
+        }
+        segmentFiles.sort(Comparator.comparingLong(SpillJournal::sequenceOf));
+
+        int records = 0;
+        for (Path file : segmentFiles) {
+            long sequence = sequenceOf(file);
+            Segment segment = Segment.open(file, sequence, (int) Files.size(file));
+            segment.scan();
+            if (segment.records == 0) {
+                segmentsInUse++;
+                recycle(segment);
+                continue;
+            }
+            segmentsInUse++;
+            pendingBytes.addAndGet(segment.position);
+            records += segment.records;
+            sealed.add(segment);
+        }
+        if (!sealed.isEmpty()) {
+            logger.info("Replaying {} spilled records in {} segments from {}", records, sealed.size(), directory);
+        }
+    }
+
+    // Called with the lock held
+    private boolean openSegment() {
+        if (segmentsInUse >= maxSegments) {
+            if (!full) {
+                full = true;
+                logger.warn("Spill journal is full ({} segments), uploading directly until it drains", maxSegments);
+            }
+            return false;
+        }
+        long sequence = nextSequence++;
+        Path path = directory.resolve(SEGMENT_PREFIX + sequence + SUFFIX);
+        try {
+            Path recycled = free.poll();
+            if (recycled != null) {
+                Files.move(recycled, path);
+            }
+            active = Segment.open(path, sequence, segmentBytes);
+            syncDirectory();
+        } catch (IOException e) {
+            logger.error("Could not open spill segment {}", path, e);
+            return false;
+        }
+        segmentsInUse++;
+        full = false;
+        return true;
+    }
+
+    // Group commit: one force covers every record appended since the last one
+    private void flush() {
+        Segment segment;
+        boolean expired;
+        synchronized (this) {
+            segment = active;
+            if (segment == null) {
+                return;
+            }
+            expired = segment.records > 0 && System.currentTimeMillis() - segment.createdAt >= maxSegmentAgeMs;
+            if (expired) {
+                active = null;
+            }
+        }
+        if (expired) {
+            seal(segment);
+        } else {
+            sync(segment);
+        }
+    }
+
+    private void seal(Segment segment) {
+        sync(segment);
+        sealed.add(segment);
+    }
+
+    private void sync(Segment segment) {
+        List<CompletableFuture<Void>> waiters;
+        synchronized (this) {
+            if (segment.waiters.isEmpty()) {
+                return;
+            }
+            waiters = segment.waiters;
+            segment.waiters = new ArrayList<>();
+        }
+        try {
+            segment.buffer.force();
+            waiters.forEach(waiter -> waiter.complete(null));
+        } catch (UncheckedIOException e) {
+            // The records may still reach S3, but their messages must not be deleted on that basis
+            logger.error("Could not sync spill segment {}", segment.path, e);
+            waiters.forEach(waiter -> waiter.completeExceptionally(e));
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            Segment segment;
+            try {
+                segment = sealed.poll(DRAIN_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (segment == null) {
+                continue;
+            }
+            if (drain(segment)) {
+                recycle(segment);
+                continue;
+            }
+            if (!running) {
+                return; // left on disk for the next start
+            }
+            if (segment.failedDrains++ == 0) {
+                stuckSegments.incrementAndGet();
+            }
+            long backoffMs = Math.min(drainBackoffMs << Math.min(segment.failedDrains - 1, 20), MAX_DRAIN_BACKOFF_MS);
+            segment.retryAt = System.currentTimeMillis() + backoffMs;
+            sealed.add(segment);
+            logger.warn("{} of {} records of spill segment {} are not in S3 yet, retrying in {} ms",
+                       segment.records - segment.uploaded.cardinality(), segment.records, segment.sequence, backoffMs);
+        }
+    }
+
+    /**
+     * Uploads the records of the segment not yet in S3 and returns whether none is left. Records
+     * that have now failed maxDrainAttempts passes are quarantined rather than left.
+     */
+    private boolean drain(Segment segment) {
+        Span span = tracer.spanBuilder("spill.drain_segment")
+                .setAttribute("spill.segment", segment.sequence)
+                .setAttribute("spill.records", segment.records)
+                .setAttribute("spill.failed_drains", segment.failedDrains)
+                .startSpan();
+        try (var scope = span.makeCurrent()) {
+            if (segment.uploaded == null) {
+                segment.uploaded = new BitSet(segment.records);
+                segment.attempts = new int[segment.records];
+            }
+            // Keeps a window of uploads open rather than one per record of the segment at once
+            Semaphore window = new Semaphore(drainConcurrency);
+            List<Integer> indexes = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            List<CompletableFuture<Void>> uploads = new ArrayList<>();
+            int position = 0;
+            for (int i = 0; i < segment.records; i++) {
+                int recordPosition = position;
+                position += HEADER_BYTES + segment.buffer.getInt(recordPosition);
+                if (segment.uploaded.get(i)) {
+                    continue;
+                }
+                window.acquire();
+                if (!drainBreaker.tryAcquire()) {
+                    // S3 keeps failing; the records not tried in this pass do not use up an attempt
+                    window.release();
+                    break;
+                }
+                Record record = segment.read(recordPosition);
+                CompletableFuture<Void> upload;
+                try {
+                    upload = s3Uploader.uploadToS3Async(record.bucketName(), record.objectKey(), record.body());
+                } catch (Exception e) {
+                    upload = CompletableFuture.failedFuture(e);
+                }
+                upload.whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        drainBreaker.onSuccess();
+                    } else if (RetryService.isRetryable(e)) {
+                        drainBreaker.onFailure();
+                    } else {
+                        drainBreaker.onNeutral();
+                    }
+                    window.release();
+                });
+                indexes.add(i);
+                positions.add(recordPosition);
+                uploads.add(upload);
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0]));
+            while (!awaitQuietly(all)) {
+                if (!running) {
+                    return false;
+                }
+            }
+
+            List<Integer> exhausted = new ArrayList<>();
+            for (int k = 0; k < uploads.size(); k++) {
+                int index = indexes.get(k);
+                if (!uploads.get(k).isCompletedExceptionally()) {
+                    segment.uploaded.set(index);
+                } else if (++segment.attempts[index] >= maxDrainAttempts) {
+                    exhausted.add(k);
+                }
+            }
+            if (!exhausted.isEmpty() && quarantine(segment, exhausted.stream().map(positions::get).toList())) {
+                exhausted.forEach(k -> segment.uploaded.set(indexes.get(k)));
+            }
+
+            int left = segment.records - segment.uploaded.cardinality();
+            span.setAttribute("spill.records.left", left);
+            span.setStatus(left == 0 ? StatusCode.OK : StatusCode.ERROR);
+            logger.debug("Drained spill segment {}: {} of {} records left", segment.sequence, left, segment.records);
+            return left == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            span.end();
+        }
+    }
+
+    // Appends the records, as they are, to the segment's quarantine file; their checksums stay valid
+    private boolean quarantine(Segment segment, List<Integer> recordPositions) {
+        Path path = directory.resolve(QUARANTINE_PREFIX + segment.sequence + SUFFIX);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            for (int recordPosition : recordPositions) {
+                int length = HEADER_BYTES + segment.buffer.getInt(recordPosition);
+                ByteBuffer record = segment.buffer.slice(recordPosition, length);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            logger.error("Could not quarantine {} spilled records of segment {}, keeping them",
+                        recordPositions.size(), segment.sequence, e);
+            return false;
+        }
+        syncDirectory();
+        quarantinedCounter.add(recordPositions.size());
+        logger.error("Moved {} spilled records of segment {} that failed {} drain attempts to {}",
+                    recordPositions.size(), segment.sequence, maxDrainAttempts, path);
+        return true;
+    }
+
+    // Waits a poll interval at most, so a shutdown is not held up by slow uploads
+    private static boolean awaitQuietly(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(DRAIN_POLL_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // Reported by join
+        }
+        return true;
+    }
+
+    // The file is kept for reuse, which saves allocating and mapping fresh disk blocks
+    private synchronized void recycle(Segment segment) {
+        segmentsInUse--;
+        if (segment.failedDrains > 0) {
+            stuckSegments.decrementAndGet();
+        }
+        pendingBytes.addAndGet(-segment.position);
+        try {
+            if (free.size() < MAX_FREE_SEGMENTS) {
+                Path target = directory.resolve(FREE_PREFIX + segment.sequence + SUFFIX);
+                Files.move(segment.path, target);
+                free.add(target);
+            } else {
+                Files.delete(segment.path);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not recycle spill segment {}: {}", segment.path, e.getMessage());
+        }
+        notifyAll();
+    }
+
+    // Makes the new segment's directory entry durable, not just its contents
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync spill directory {}", directory, e);
+        }
+    }
+
+    // Sequence in a segment, free or quarantine file name, or -1 for any other file
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        for (String prefix : List.of(SEGMENT_PREFIX, FREE_PREFIX, QUARANTINE_PREFIX)) {
+            if (name.startsWith(prefix) && name.endsWith(SUFFIX)) {
+                try {
+                    return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private record Record(String bucketName, String objectKey, String body) {
+    }
+
+    private static final class Segment implements Delayed {
+        private final long sequence;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final long createdAt = System.currentTimeMillis();
+        private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        private int position = 0;
+        private int records = 0;
+        // Drain progress, kept by the drainer and lost on restart, when every record is uploaded again
+        private BitSet uploaded;
+        private int[] attempts;
+        private int failedDrains = 0;
+        private long retryAt = 0;
+
+        private Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long sequence, int size) throws IOException {
+            // The mapping stays valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Segment segment = (Segment) other;
+            int byRetry = Long.compare(retryAt, segment.retryAt);
+            return byRetry != 0 ? byRetry : Long.compare(sequence, segment.sequence);
+        }
+
+        void write(byte[] bucket, byte[] key, byte[] data, int payloadBytes) {
+            int offset = position + HEADER_BYTES;
+            buffer.putShort(offset, (short) bucket.length);
+            buffer.put(offset + 2, bucket);
+            offset += 2 + bucket.length;
+            buffer.putShort(offset, (short) key.length);
+            buffer.put(offset + 2, key);
+            offset += 2 + key.length;
+            buffer.putInt(offset, data.length);
+            buffer.put(offset + 4, data);
+            buffer.putInt(position + 4, checksum(position + HEADER_BYTES, payloadBytes));
+            buffer.putInt(position, payloadBytes);
+            position += HEADER_BYTES + payloadBytes;
+            records++;
+        }
+
+        Record read(int recordPosition) {
+            int offset = recordPosition + HEADER_BYTES;
+            String bucket = readString(offset + 2, buffer.getShort(offset) & 0xffff);
+            offset += 2 + (buffer.getShort(offset) & 0xffff);
+            String key = readString(offset + 2, buffer.getShort(offset) & 0xffff);
+            offset += 2 + (buffer.getShort(offset) & 0xffff);
+            String body = readString(offset + 4, buffer.getInt(offset));
+            return new Record(bucket, key, body);
+        }
+
+        // Finds the valid records after a restart; stops at the first empty, torn or stale one
+        void scan() {
+            while (position + HEADER_BYTES <= buffer.capacity()) {
+                int payloadBytes = buffer.getInt(position);
+                if (payloadBytes <= 0 || payloadBytes > buffer.capacity() - position - HEADER_BYTES
+                        || buffer.getInt(position + 4) != checksum(position + HEADER_BYTES, payloadBytes)) {
+                    break;
+                }
+                position += HEADER_BYTES + payloadBytes;
+                records++;
+            }
+        }
+
+        private String readString(int offset, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int checksum(int offset, int length) {
+            CRC32C crc = new CRC32C();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                crc.update((int) (sequence >>> shift));
+            }
+            crc.update(buffer.slice(offset, length));
+            return (int) crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.interspace.batchjob.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a body that is a JSON array into one message per element, named
+ * {@code <id>-<index>}; an empty array drops the message. Other bodies pass unchanged.
+ * Each element is copied token by token, so the array is never held as a tree.
+ */
+public class SplitStage implements MessageHandler {
+
+    @Override
+    public List<HandledMessage> handle(HandledMessage message) throws IOException {
+        try (JsonParser parser = JsonFields.FACTORY.createParser(message.body())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return List.of(message);
+            }
+            List<HandledMessage> parts = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                StringWriter element = new StringWriter();
+                try (JsonGenerator generator = JsonFields.FACTORY.createGenerator(element)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                parts.add(message.withId(message.id() + "-" + parts.size()).withBody(element.toString()));
+            }
+            return parts;
+        }
+    }
+}
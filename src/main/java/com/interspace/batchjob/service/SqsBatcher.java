@@ -0,0 +1,240 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Collects entries for one of the SQS *Batch APIs and sends them in groups of up to ten.
+ * A batch goes out as soon as it is full, or once its oldest entry has waited {@code lingerMs}.
+ * Entries that fail with a server-side error (including throttling) are retried up to
+ * {@code maxAttempts} times, each after the backoff given by {@code retryDelayMs} for its attempt,
+ * so a throttled queue is not hit again straight away. The future returned by {@link #submit}
+ * completes once the entry has been accepted by SQS.
+ */
+public abstract class SqsBatcher<T> implements AutoCloseable {
+    public static final int MAX_BATCH_SIZE = 10;
+    // Used when no RetryService backoff is given: 100 ms doubling up to 5 s
+    public static final IntToLongFunction DEFAULT_RETRY_DELAY = attempt -> Math.min(100L << Math.min(attempt - 1, 6), 5000);
+
+    private static final Logger logger = LoggerFactory.getLogger(SqsBatcher.class);
+    private final String name;
+    private volatile int batchSize;
+    private volatile long lingerMs;
+    private final int maxAttempts;
+    private final IntToLongFunction retryDelayMs;
+    private final Deque<PendingEntry<T>> pending = new ArrayDeque<>();
+    private final ScheduledExecutorService flusher;
+    private ScheduledFuture<?> flushTask;
+    private boolean closed = false;
+
+    protected SqsBatcher(String name, int batchSize, long lingerMs, int maxAttempts) {
+        this(name, batchSize, lingerMs, maxAttempts, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * @param retryDelayMs delay before resending an entry, given the number of attempts made so far
+     */
+    protected SqsBatcher(String name, int batchSize, long lingerMs, int maxAttempts, IntToLongFunction retryDelayMs) {
+        this.name = name;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = retryDelayMs;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        setLimits(batchSize, lingerMs);
+    }
+
+    /**
+     * Changes the batch size and linger time; entries already pending are sent under the new limits.
+     */
+    public synchronized void setLimits(int batchSize, long lingerMs) {
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        long newLingerMs = Math.max(1, lingerMs);
+        if (closed) {
+            return;
+        }
+        if (flushTask == null || newLingerMs != this.lingerMs) {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+            this.lingerMs = newLingerMs;
+            flushTask = flusher.scheduleWithFixedDelay(this::flushExpired, newLingerMs, newLingerMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the given entries in a single batch call. Entry ids are their index in the list
+     * ("0".."9"); the returned list holds the entries SQS reported as failed.
+     */
+    protected abstract List<BatchResultErrorEntry> sendBatch(List<T> entries);
+
+    public CompletableFuture<Void> submit(T entry) {
+        PendingEntry<T> pendingEntry = new PendingEntry<>(entry);
+        List<PendingEntry<T>> fullBatch = null;
+
+        synchronized (this) {
+            if (closed) {
+                pendingEntry.future.completeExceptionally(new IllegalStateException(name + " is closed"));
+                return pendingEntry.future;
+            }
+            pending.addLast(pendingEntry);
+            if (pending.size() >= batchSize) {
+                fullBatch = takeBatch();
+            }
+        }
+
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        return pendingEntry.future;
+    }
+
+    public void flush() {
+        List<PendingEntry<T>> batch;
+        while (!(batch = takeBatchSynchronized()).isEmpty()) {
+            send(batch);
+        }
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        flusher.shutdown();
+        logger.debug("{} closed", name);
+    }
+
+    private void flushExpired() {
+        try {
+            while (true) {
+                List<PendingEntry<T>> batch;
+                synchronized (this) {
+                    PendingEntry<T> oldest = pending.peekFirst();
+                    if (oldest == null || (pending.size() < batchSize
+                            && System.currentTimeMillis() - oldest.enqueuedAt < lingerMs)) {
+                        return;
+                    }
+                    batch = takeBatch();
+                }
+                send(batch);
+            }
+        } catch (Exception e) {
+            // Never let an exception cancel the scheduled flush
+            logger.error("{} failed to flush pending entries", name, e);
+        }
+    }
+
+    private synchronized List<PendingEntry<T>> takeBatchSynchronized() {
+        return takeBatch();
+    }
+
+    private List<PendingEntry<T>> takeBatch() {
+        List<PendingEntry<T>> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && !pending.isEmpty()) {
+            batch.add(pending.pollFirst());
+        }
+        return batch;
+    }
+
+    private void send(List<PendingEntry<T>> batch) {
+        List<T> entries = new ArrayList<>(batch.size());
+        for (PendingEntry<T> pendingEntry : batch) {
+            pendingEntry.attempts++;
+            entries.add(pendingEntry.entry);
+        }
+
+        List<BatchResultErrorEntry> failures;
+        try {
+            failures = sendBatch(entries);
+        } catch (Exception e) {
+            logger.warn("{} batch of {} entries failed: {}", name, batch.size(), e.getMessage());
+            for (PendingEntry<T> pendingEntry : batch) {
+                retryOrFail(pendingEntry, e.getMessage());
+            }
+            return;
+        }
+
+        boolean[] failed = new boolean[batch.size()];
+        for (BatchResultErrorEntry failure : failures) {
+            int index = Integer.parseInt(failure.id());
+            failed[index] = true;
+            PendingEntry<T> pendingEntry = batch.get(index);
+            String reason = failure.code() + ": " + failure.message();
+            if (Boolean.TRUE.equals(failure.senderFault())) {
+                // Sender faults (e.g. an expired receipt handle) will not succeed on retry
+                pendingEntry.future.completeExceptionally(new RuntimeException(name + " entry rejected: " + reason));
+            } else {
+                retryOrFail(pendingEntry, reason);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (!failed[i]) {
+                batch.get(i).future.complete(null);
+            }
+        }
+    }
+
+    private void retryOrFail(PendingEntry<T> pendingEntry, String reason) {
+        if (pendingEntry.attempts >= maxAttempts) {
+            pendingEntry.future.completeExceptionally(new RuntimeException(
+                    name + " entry failed after " + pendingEntry.attempts + " attempts: " + reason));
+            return;
+        }
+        long delayMs = retryDelayMs.applyAsLong(pendingEntry.attempts);
+        try {
+            flusher.schedule(() -> requeue(pendingEntry), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed and its last retries already ran
+            pendingEntry.future.completeExceptionally(new RuntimeException(
+                    name + " entry failed after " + pendingEntry.attempts + " attempts: " + reason));
+        }
+    }
+
+    // Runs on the flusher once the backoff has passed: the entry is sent at once, with whatever else is pending
+    private void requeue(PendingEntry<T> pendingEntry) {
+        List<PendingEntry<T>> batch;
+        synchronized (this) {
+            pending.addFirst(pendingEntry);
+            batch = takeBatch();
+        }
+        try {
+            send(batch);
+        } catch (Exception e) {
+            logger.error("{} failed to resend pending entries", name, e);
+        }
+    }
+
+    private static final class PendingEntry<T> {
+        private final T entry;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private int attempts = 0;
+
+        private PendingEntry(T entry) {
+            this.entry = entry;
+        }
+    }
+}
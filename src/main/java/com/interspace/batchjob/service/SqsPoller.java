@@ -1,167 +1,836 @@
 package com.interspace.batchjob.service;
 
 import com.interspace.batchjob.config.AppConfig;
+import com.interspace.batchjob.config.QueueConfig;
+import com.interspace.batchjob.config.TuningConfig;
 import com.interspace.batchjob.telemetry.TelemetryConfig;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.*;
 
-import java.time.Duration;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * Receives messages from one or more queues and hands them to a shared worker pool. Each queue
+ * has its own receive loops, SQS batchers and aggregator; worker slots are split between the
+ * queues by weight with a {@link WeightedFairScheduler}, so a surge on one queue cannot starve
+ * another.
+ */
 public class SqsPoller {
     private static final Logger logger = LoggerFactory.getLogger(SqsPoller.class);
+    private static final int MAX_RECEIVE_BATCH = 10;
+    private static final int LONG_POLL_SECONDS = 20;
+    private static final double SATURATED_UTILISATION = 0.9;
+    private static final long CIRCUIT_OPEN_PAUSE_MS = 1000;
+    private static final int MAX_VISIBILITY_TIMEOUT_SECONDS = 43_200;
     private final SqsClient sqsClient;
     private final S3Uploader s3Uploader;
     private final RetryService retryService;
     private final Tracer tracer;
+    private final ExecutorService workerPool;
+    private final IdempotencyCache idempotencyCache;
+    private final SpillJournal spillJournal;
+    private final MessageHandlerPipeline pipeline;
+    private final KeyStrategy keyStrategy;
+    private final List<QueueLane> lanes;
+    private final WeightedFairScheduler scheduler;
+    private final int visibilityTimeoutSeconds;
+    private final boolean visibilityRetry;
+    private final long receiverScalingIntervalMs;
+    private final long errorBackoffInitialMs;
+    private final long errorBackoffMaxMs;
+    private final long shutdownTimeoutMs;
+    private final Object receiverMonitor = new Object();
+    private volatile TuningConfig tuning;
     private volatile boolean running = false;
+    private volatile boolean draining = false;
+    // While the circuit breaker is half-open, one receiver across all queues polls to feed its trial calls
+    private final AtomicBoolean trialReceiver = new AtomicBoolean();
+    private ScheduledExecutorService receiverScaler;
+    private final PollerMetrics metrics;
 
     public SqsPoller(SqsClient sqsClient, S3Uploader s3Uploader, RetryService retryService) {
+        this(sqsClient, s3Uploader, retryService,
+             createWorkerPool(AppConfig.getWorkerPoolSize()), AppConfig.getMaxInFlightMessages());
+    }
+
+    public SqsPoller(SqsClient sqsClient, S3Uploader s3Uploader, RetryService retryService,
+                     ExecutorService workerPool, int maxInFlightMessages) {
+        this(sqsClient, s3Uploader, retryService, workerPool, maxInFlightMessages, QueueConfig.fromAppConfig());
+    }
+
+    public SqsPoller(SqsClient sqsClient, S3Uploader s3Uploader, RetryService retryService,
+                     ExecutorService workerPool, int maxInFlightMessages, List<QueueConfig> queues) {
         this.sqsClient = sqsClient;
         this.s3Uploader = s3Uploader;
         this.retryService = retryService;
         this.tracer = TelemetryConfig.getTracer();
+        this.workerPool = workerPool;
+        this.tuning = TuningConfig.fromAppConfig();
+        this.visibilityTimeoutSeconds = AppConfig.getSqsVisibilityTimeoutSeconds();
+        this.idempotencyCache = AppConfig.isIdempotencyEnabled()
+                ? new IdempotencyCache(AppConfig.getIdempotencyMaxEntries(), AppConfig.getIdempotencyTtlMs(),
+                        AppConfig.getIdempotencyFile().isBlank() ? null : Path.of(AppConfig.getIdempotencyFile()),
+                        AppConfig.getIdempotencyPersistIntervalMs())
+                : null;
+        this.spillJournal = AppConfig.isSpillEnabled()
+                ? new SpillJournal(Path.of(AppConfig.getSpillDirectory()), AppConfig.getSpillSegmentBytes(),
+                        AppConfig.getSpillMaxSegments(), AppConfig.getSpillFsyncIntervalMs(),
+                        AppConfig.getSpillMaxSegmentAgeMs(), AppConfig.getSpillDrainConcurrency(),
+                        AppConfig.getSpillDrainMaxAttempts(), AppConfig.getSpillDrainBackoffMs(),
+                        s3Uploader, CircuitBreaker.fromAppConfig())
+                : null;
+        this.pipeline = MessageHandlerPipeline.fromAppConfig();
+        this.keyStrategy = KeyStrategy.fromAppConfig();
+        this.visibilityRetry = "visibility".equalsIgnoreCase(AppConfig.getRetryMode());
+        this.receiverScalingIntervalMs = AppConfig.getSqsReceiverScalingIntervalMs();
+        this.errorBackoffInitialMs = AppConfig.getSqsErrorBackoffInitialMs();
+        this.errorBackoffMaxMs = AppConfig.getSqsErrorBackoffMaxMs();
+        this.shutdownTimeoutMs = AppConfig.getShutdownTimeoutMs();
+        this.scheduler = new WeightedFairScheduler(maxInFlightMessages,
+                queues.stream().mapToInt(QueueConfig::weight).toArray());
+        List<QueueLane> lanes = new ArrayList<>();
+        for (QueueConfig queue : queues) {
+            lanes.add(new QueueLane(lanes.size(), queue, queues.size() > 1));
+        }
+        this.lanes = List.copyOf(lanes);
+        this.metrics = new PollerMetrics(TelemetryConfig.getMeter(),
+                scheduler::inFlight,
+                () -> this.lanes.stream().mapToInt(lane -> lane.activeReceivers).sum(),
+                () -> this.lanes.stream().mapToInt(QueueLane::trackedCount).sum());
     }
 
     public void startPolling() {
         running = true;
-        logger.info("Starting SQS polling for queue: {}", AppConfig.getSqsQueueUrl());
+        TuningConfig tuning = this.tuning;
+        for (QueueLane lane : lanes) {
+            logger.info("Starting SQS polling for queue: {} (receivers={}-{}, worker slots={} of {})",
+                       lane.queue.queueUrl(), tuning.minReceivers(), tuning.maxReceivers(),
+                       scheduler.share(lane.index), scheduler.capacity());
+        }
+        if (AppConfig.isAggregationEnabled() && scheduler.capacity() < tuning.aggregationMaxCount()) {
+            logger.warn("app.worker.max-in-flight ({}) is below app.aggregation.max-count ({}), "
+                      + "batches will only be written when they reach their max age",
+                       scheduler.capacity(), tuning.aggregationMaxCount());
+        }
         
-        while (running) {
+        receiverScaler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqs-receiver-scaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        receiverScaler.scheduleWithFixedDelay(this::scaleReceivers,
+                receiverScalingIntervalMs, receiverScalingIntervalMs, TimeUnit.MILLISECONDS);
+
+        // The calling thread acts as the first receiver of the first queue; the rest get their own
+        // threads and stay parked until the scaler activates them
+        synchronized (receiverMonitor) {
+            for (QueueLane lane : lanes) {
+                lane.startReceivers(tuning.maxReceivers());
+            }
+        }
+        lanes.get(0).receiveLoop(0);
+    }
+
+    /**
+     * Applies reloaded tuning settings: receiver limits, SQS batch limits and aggregation limits.
+     * Raising the receiver limit starts more receiver threads; lowering it parks the surplus ones.
+     */
+    public void applyTuning(TuningConfig tuning) {
+        this.tuning = tuning;
+        synchronized (receiverMonitor) {
+            for (QueueLane lane : lanes) {
+                lane.applyTuning(tuning);
+            }
+            receiverMonitor.notifyAll();
+        }
+    }
+
+    private void pauseWhileCircuitOpen() {
+        try {
+            Thread.sleep(CIRCUIT_OPEN_PAUSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitActivation() {
+        synchronized (receiverMonitor) {
             try {
-                pollMessages();
-                Thread.sleep(1000); // Short delay between polling cycles
+                receiverMonitor.wait(receiverScalingIntervalMs);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                break;
+            }
+        }
+    }
+
+    private void scaleReceivers() {
+        for (QueueLane lane : lanes) {
+            try {
+                GetQueueAttributesResponse response = sqsClient.getQueueAttributes(GetQueueAttributesRequest.builder()
+                        .queueUrl(lane.queue.queueUrl())
+                        .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)
+                        .build());
+                String depth = response.attributes().get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES);
+                lane.adjustReceivers(depth != null ? Integer.parseInt(depth) : 0);
             } catch (Exception e) {
-                logger.error("Error during polling cycle", e);
-                try {
-                    Thread.sleep(5000); // Longer delay on error
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+                // Never let an exception cancel the scheduled scaling
+                logger.warn("Could not sample depth of queue {}: {}", lane.queue.name(), e.getMessage());
             }
         }
     }
 
+    void adjustReceivers(int queueDepth) {
+        lanes.get(0).adjustReceivers(queueDepth);
+    }
+
+    int getActiveReceivers() {
+        return lanes.get(0).activeReceivers;
+    }
+
+    /**
+     * Drains the poller within app.shutdown.timeout-ms: stops receiving, lets messages already being
+     * processed finish, hands every message that has not started (or did not finish in time) back
+     * to SQS with a visibility timeout of 0 so another node can take it at once, and flushes the
+     * pending deletes. The SQS and S3 clients must stay open until this returns.
+     */
     public void stopPolling() {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        draining = true;
         running = false;
-        logger.info("Stopping SQS polling");
+        logger.info("Stopping SQS polling, draining for up to {} ms", shutdownTimeoutMs);
+        if (receiverScaler != null) {
+            receiverScaler.shutdownNow();
+        }
+        synchronized (receiverMonitor) {
+            receiverMonitor.notifyAll();
+        }
+        try {
+            // Receives already in flight still return messages; those are released, not processed
+            awaitReceives(deadline);
+            // Write partially filled batches now rather than when they reach their max age
+            for (QueueLane lane : lanes) {
+                if (lane.aggregator != null) {
+                    lane.aggregator.flush();
+                }
+            }
+            // Uploads complete asynchronously, so wait for every worker slot rather than the workers
+            if (!scheduler.awaitIdle(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                logger.warn("{} messages still in flight at the shutdown deadline, releasing them",
+                           scheduler.inFlight());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (QueueLane lane : lanes) {
+            if (lane.aggregator != null) {
+                lane.aggregator.close();
+            }
+        }
+        if (spillJournal != null) {
+            // Spilled messages are already deleted from SQS; what is not uploaded by the deadline stays on disk
+            spillJournal.close(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        // Tasks still queued at this point belong to messages that are released below
+        workerPool.shutdownNow();
+        int released = 0;
+        for (QueueLane lane : lanes) {
+            lane.releaseUnfinished();
+            released += lane.releasedCount.get();
+            lane.close();
+        }
+        if (idempotencyCache != null) {
+            idempotencyCache.close();
+        }
+        metrics.close();
+        logger.info("SQS polling stopped after {} ms, {} messages handed back to SQS",
+                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), released);
+    }
+
+    private void awaitReceives(long deadline) throws InterruptedException {
+        synchronized (receiverMonitor) {
+            while (lanes.stream().anyMatch(lane -> lane.receiving.get() > 0)) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    logger.warn("Receive calls still running at the shutdown deadline");
+                    return;
+                }
+                receiverMonitor.wait(remainingMs);
+            }
+        }
     }
 
     public void pollMessages() {
-        Span span = tracer.spanBuilder("sqs.poll_messages")
-                .setAttribute("sqs.queue.url", AppConfig.getSqsQueueUrl())
-                .startSpan();
-
-        try (var scope = span.makeCurrent()) {
-            ReceiveMessageRequest receiveRequest = ReceiveMessageRequest.builder()
-                    .queueUrl(AppConfig.getSqsQueueUrl())
-                    .maxNumberOfMessages(10)
-                    .waitTimeSeconds(20) // Long polling
-                    .messageAttributeNames("All")
-                    .build();
-
-            ReceiveMessageResponse response = sqsClient.receiveMessage(receiveRequest);
-            List<Message> messages = response.messages();
-            
-            span.setAttribute("sqs.messages.received", messages.size());
-            logger.info("Received {} messages from SQS", messages.size());
-
-            for (Message message : messages) {
-                processMessage(message);
-            }
-            
-            span.setStatus(StatusCode.OK);
-        } catch (Exception e) {
-            span.setStatus(StatusCode.ERROR, e.getMessage());
-            logger.error("Error polling messages from SQS", e);
-            throw e;
-        } finally {
-            span.end();
-        }
-    }
-
-    private void processMessage(Message message) {
-        String messageId = message.messageId();
-        Span span = tracer.spanBuilder("sqs.process_message")
-                .setAttribute("sqs.message.id", messageId)
-                .setAttribute("sqs.queue.url", AppConfig.getSqsQueueUrl())
-                .startSpan();
-
-        try (var scope = span.makeCurrent()) {
-            logger.info("Processing message: {}", messageId);
-            
-            // Process message with retry logic
-            retryService.executeWithRetry(() -> {
-                // Upload message content to S3
-                String objectKey = "messages/" + messageId + ".json";
-                s3Uploader.uploadToS3(AppConfig.getS3BucketName(), objectKey, message.body());
+        pollMessages(LONG_POLL_SECONDS);
+    }
+
+    /**
+     * Receives one batch from the first queue and hands it to the workers. Returns the number of
+     * messages received.
+     */
+    int pollMessages(int waitTimeSeconds) {
+        return lanes.get(0).pollMessages(waitTimeSeconds);
+    }
+
+    private static ExecutorService createWorkerPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize,
+                runnable -> new Thread(runnable, "sqs-worker-" + threadCount.incrementAndGet()));
+    }
+
+    private static int receiveCount(Message message) {
+        String count = message.attributes().get(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT);
+        return count != null ? Integer.parseInt(count) : 1;
+    }
+
+    private static Exception unwrap(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+        return cause instanceof Exception exception ? exception : new RuntimeException(cause);
+    }
+
+    /**
+     * Everything that belongs to one queue: its receive loops, the SQS batchers bound to its URL,
+     * its visibility heartbeat and its aggregator.
+     */
+    private final class QueueLane {
+        private final int index;
+        private final QueueConfig queue;
+        private final String threadPrefix;
+        private final DeleteMessageBatcher deleteBatcher;
+        private final DeadLetterBatcher deadLetterBatcher;
+        private final ChangeVisibilityBatcher visibilityBatcher;
+        private final VisibilityHeartbeat visibilityHeartbeat;
+        private final MessageAggregator aggregator;
+        // Messages received and not yet finished, so they can be released on shutdown
+        private final Map<String, Message> unfinished = new ConcurrentHashMap<>();
+        private final AtomicInteger receiving = new AtomicInteger();
+        private final AtomicInteger releasedCount = new AtomicInteger();
+        private volatile int activeReceivers;
+        private int startedReceivers = 0;
+
+        QueueLane(int index, QueueConfig queue, boolean named) {
+            this.index = index;
+            this.queue = queue;
+            // With several queues every thread of a lane carries the queue name, e.g. sqs-delete-batcher-orders
+            String suffix = named ? "-" + queue.name() : "";
+            this.threadPrefix = "sqs-receiver" + suffix + "-";
+            this.deleteBatcher = new DeleteMessageBatcher("sqs-delete-batcher" + suffix, sqsClient, queue.queueUrl(),
+                    tuning.sqsBatchSize(), tuning.sqsBatchLingerMs(), AppConfig.getSqsBatchMaxAttempts(),
+                    retryService::calculateDelay);
+            this.deadLetterBatcher = new DeadLetterBatcher("sqs-dlq-batcher" + suffix, sqsClient, queue.dlqUrl(),
+                    queue.queueUrl(), tuning.sqsBatchSize(), tuning.sqsBatchLingerMs(),
+                    AppConfig.getSqsBatchMaxAttempts(), retryService::calculateDelay);
+            this.visibilityBatcher = new ChangeVisibilityBatcher("sqs-visibility-batcher" + suffix, sqsClient,
+                    queue.queueUrl(), tuning.sqsBatchSize(), tuning.sqsBatchLingerMs(),
+                    AppConfig.getSqsBatchMaxAttempts(), retryService::calculateDelay);
+            this.visibilityHeartbeat = AppConfig.isVisibilityHeartbeatEnabled()
+                    ? new VisibilityHeartbeat(visibilityBatcher, visibilityTimeoutSeconds,
+                            AppConfig.getVisibilityMaxExtensionSeconds(), "sqs-visibility-heartbeat" + suffix)
+                    : null;
+            this.aggregator = AppConfig.isAggregationEnabled()
+                    ? new MessageAggregator(s3Uploader, retryService, workerPool, queue.bucketName(),
+                            queue.batchKeyPrefix(), keyStrategy, tuning.aggregationMaxBytes(),
+                            tuning.aggregationMaxCount(), tuning.aggregationMaxAgeMs())
+                    : null;
+            this.activeReceivers = tuning.minReceivers();
+        }
+
+        // Called with receiverMonitor held
+        void startReceivers(int count) {
+            // Receiver 0 of the first queue is run by the thread that calls startPolling
+            for (int i = Math.max(startedReceivers, index == 0 ? 1 : 0); i < count; i++) {
+                int receiverIndex = i;
+                Thread receiver = new Thread(() -> receiveLoop(receiverIndex), threadPrefix + i);
+                receiver.start();
+            }
+            startedReceivers = Math.max(startedReceivers, count);
+        }
+
+        // Called with receiverMonitor held
+        void applyTuning(TuningConfig tuning) {
+            deleteBatcher.setLimits(tuning.sqsBatchSize(), tuning.sqsBatchLingerMs());
+            deadLetterBatcher.setLimits(tuning.sqsBatchSize(), tuning.sqsBatchLingerMs());
+            visibilityBatcher.setLimits(tuning.sqsBatchSize(), tuning.sqsBatchLingerMs());
+            if (aggregator != null) {
+                aggregator.setLimits(tuning.aggregationMaxBytes(), tuning.aggregationMaxCount(),
+                        tuning.aggregationMaxAgeMs());
+            }
+            if (running) {
+                startReceivers(tuning.maxReceivers());
+            }
+            activeReceivers = Math.max(tuning.minReceivers(), Math.min(tuning.maxReceivers(), activeReceivers));
+        }
+
+        void receiveLoop(int receiverIndex) {
+            boolean backlog = false;
+            long errorBackoffMs = 0;
+
+            while (running && !Thread.currentThread().isInterrupted()) {
+                if (receiverIndex >= activeReceivers) {
+                    awaitActivation();
+                    continue;
+                }
+                CircuitBreaker.State circuit = retryService.getCircuitState();
+                boolean trial = circuit == CircuitBreaker.State.HALF_OPEN && trialReceiver.compareAndSet(false, true);
+                if (circuit == CircuitBreaker.State.OPEN || (circuit == CircuitBreaker.State.HALF_OPEN && !trial)) {
+                    // Messages received now would only be rejected; leave them on the queue until S3 recovers
+                    logger.debug("Circuit breaker {}, pausing receive", circuit);
+                    pauseWhileCircuitOpen();
+                    continue;
+                }
+
+                try {
+                    // Re-poll straight away while receives come back with every message they asked for (fewer
+                    // than 10 when worker slots are short); long poll only once the queue looks idle
+                    backlog = receive(backlog ? 0 : LONG_POLL_SECONDS).filledRequest();
+                    errorBackoffMs = 0;
+                } catch (Exception e) {
+                    errorBackoffMs = errorBackoffMs == 0
+                            ? errorBackoffInitialMs : Math.min(errorBackoffMs * 2, errorBackoffMaxMs);
+                    logger.error("Error during polling cycle, retrying in {} ms", errorBackoffMs, e);
+                    try {
+                        Thread.sleep(errorBackoffMs);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                } finally {
+                    if (trial) {
+                        trialReceiver.set(false);
+                    }
+                }
+            }
+        }
+
+        void adjustReceivers(int queueDepth) {
+            TuningConfig tuning = SqsPoller.this.tuning;
+            double utilisation = (double) scheduler.inFlight() / scheduler.capacity();
+            int current = activeReceivers;
+            int target = current;
+
+            if (utilisation >= SATURATED_UTILISATION) {
+                // Workers are the bottleneck; extra receivers would only wait for free slots
+                target = current - 1;
+            } else if (queueDepth > current * MAX_RECEIVE_BATCH) {
+                target = current + 1;
+            } else if (queueDepth == 0) {
+                target = tuning.minReceivers();
+            }
+            target = Math.max(tuning.minReceivers(), Math.min(tuning.maxReceivers(), target));
+
+            if (target != current) {
+                activeReceivers = target;
+                logger.info("Adjusted active receivers for queue {} {} -> {} (queue depth={}, worker utilisation={}%)",
+                           queue.name(), current, target, queueDepth, Math.round(utilisation * 100));
+                if (target > current) {
+                    synchronized (receiverMonitor) {
+                        receiverMonitor.notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Receives one batch and hands it to the workers. Returns the number of messages received.
+         */
+        int pollMessages(int waitTimeSeconds) {
+            return receive(waitTimeSeconds).received();
+        }
+
+        private ReceiveResult receive(int waitTimeSeconds) {
+            // Backpressure: only receive as many messages as this queue may have worker slots
+            int permits = acquireReceivePermits();
+            if (permits == 0) {
+                return ReceiveResult.NONE;
+            }
+            receiving.incrementAndGet();
+            if (draining) {
+                // stopPolling may already have stopped waiting for receives; do not start another
+                scheduler.release(index, permits);
+                receiveFinished();
+                return ReceiveResult.NONE;
+            }
+            int requested = permits;
+
+            Span span = tracer.spanBuilder("sqs.poll_messages")
+                    .setAttribute("sqs.queue.url", queue.queueUrl())
+                    .setAttribute("sqs.wait_time_seconds", waitTimeSeconds)
+                    .startSpan();
+
+            try (var scope = span.makeCurrent()) {
+                ReceiveMessageRequest receiveRequest = ReceiveMessageRequest.builder()
+                        .queueUrl(queue.queueUrl())
+                        .maxNumberOfMessages(permits)
+                        .waitTimeSeconds(waitTimeSeconds)
+                        .visibilityTimeout(visibilityTimeoutSeconds)
+                        .attributeNamesWithStrings(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT.toString(),
+                                                   MessageSystemAttributeName.SENT_TIMESTAMP.toString())
+                        .messageAttributeNames("All")
+                        .build();
+
+                // The visibility timeout may start as soon as the request is sent, so the heartbeat counts
+                // its deadline from here; a long poll can wait up to 20 s before the messages arrive
+                long receivedAt = System.currentTimeMillis();
+                long receiveStartNanos = System.nanoTime();
+                ReceiveMessageResponse response = sqsClient.receiveMessage(receiveRequest);
+                List<Message> messages = response.messages();
+                long deliveredAt = System.currentTimeMillis();
+                metrics.receiveCompleted(receiveStartNanos);
+                
+                span.setAttribute("sqs.messages.received", messages.size());
+                logger.info("Received {} messages from queue {}", messages.size(), queue.name());
+
+                scheduler.release(index, permits - messages.size());
+                permits = 0;
+                for (Message message : messages) {
+                    metrics.received(message, deliveredAt);
+                    if (visibilityHeartbeat != null) {
+                        visibilityHeartbeat.track(message, receivedAt);
+                    }
+                    dispatch(message);
+                }
                 
-                // Delete message from SQS after successful processing
-                deleteMessage(message);
-                return null;
+                span.setStatus(StatusCode.OK);
+                return new ReceiveResult(requested, messages.size());
+            } catch (Exception e) {
+                scheduler.release(index, permits);
+                span.setStatus(StatusCode.ERROR, e.getMessage());
+                logger.error("Error polling messages from SQS", e);
+                throw e;
+            } finally {
+                span.end();
+                receiveFinished();
+            }
+        }
+
+        private void receiveFinished() {
+            if (receiving.decrementAndGet() == 0 && draining) {
+                synchronized (receiverMonitor) {
+                    receiverMonitor.notifyAll();
+                }
+            }
+        }
+
+        private int acquireReceivePermits() {
+            try {
+                int permits;
+                while ((permits = scheduler.acquire(index, MAX_RECEIVE_BATCH, 1, TimeUnit.SECONDS)) == 0) {
+                    logger.debug("No worker slots free for queue {}, pausing receive", queue.name());
+                    if (!running) {
+                        return 0;
+                    }
+                }
+                return permits;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+
+        private void dispatch(Message message) {
+            unfinished.put(message.messageId(), message);
+            // The slot is held until the message is fully handled, not just until the worker returns
+            Runnable task = Context.current().wrap(() -> {
+                if (draining) {
+                    // Not started before shutdown began: let another node have it straight away
+                    release(message);
+                    scheduler.release(index, 1);
+                    return;
+                }
+                try {
+                    processMessage(message).whenComplete((ignored, e) -> {
+                        unfinished.remove(message.messageId());
+                        scheduler.release(index, 1);
+                    });
+                } catch (Exception e) {
+                    unfinished.remove(message.messageId());
+                    scheduler.release(index, 1);
+                    stopTracking(message);
+                    logger.error("Unexpected error processing message: {}", message.messageId(), e);
+                }
             });
-            
-            span.setStatus(StatusCode.OK);
-            logger.info("Successfully processed message: {}", messageId);
-            
-        } catch (Exception e) {
-            span.setStatus(StatusCode.ERROR, e.getMessage());
-            logger.error("Failed to process message: {}", messageId, e);
-            
-            // Send to DLQ after max retries
-            sendToDlq(message, e.getMessage());
-        } finally {
-            span.end();
-        }
-    }
-
-    private void deleteMessage(Message message) {
-        DeleteMessageRequest deleteRequest = DeleteMessageRequest.builder()
-                .queueUrl(AppConfig.getSqsQueueUrl())
-                .receiptHandle(message.receiptHandle())
-                .build();
-        
-        sqsClient.deleteMessage(deleteRequest);
-        logger.debug("Deleted message from SQS: {}", message.messageId());
-    }
-
-    private void sendToDlq(Message message, String errorMessage) {
-        Span span = tracer.spanBuilder("sqs.send_to_dlq")
-                .setAttribute("sqs.message.id", message.messageId())
-                .setAttribute("sqs.dlq.url", AppConfig.getSqsDlqUrl())
-                .setAttribute("error.message", errorMessage)
-                .startSpan();
-
-        try (var scope = span.makeCurrent()) {
-            SendMessageRequest dlqRequest = SendMessageRequest.builder()
-                    .queueUrl(AppConfig.getSqsDlqUrl())
-                    .messageBody(message.body())
-                    .messageAttributes(message.messageAttributes())
-                    .build();
-
-            sqsClient.sendMessage(dlqRequest);
-            
-            // Delete original message after sending to DLQ
-            deleteMessage(message);
-            
-            span.setStatus(StatusCode.OK);
-            logger.warn("Sent message to DLQ: {}", message.messageId());
-            
-        } catch (Exception e) {
-            span.setStatus(StatusCode.ERROR, e.getMessage());
-            logger.error("Failed to send message to DLQ: {}", message.messageId(), e);
-        } finally {
-            span.end();
-        }
-    }
-}
\ No newline at end of file
+
+            try {
+                workerPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.warn("Worker pool rejected message {}, handing it back to SQS", message.messageId());
+                release(message);
+                scheduler.release(index, 1);
+            }
+        }
+
+        /**
+         * Makes an unfinished message visible again at once with a visibility timeout of 0.
+         */
+        private void release(Message message) {
+            if (unfinished.remove(message.messageId()) == null) {
+                return;
+            }
+            stopTracking(message);
+            releasedCount.incrementAndGet();
+            metrics.released();
+            visibilityBatcher.submit(new ChangeVisibilityBatcher.VisibilityChange(message.receiptHandle(), 0))
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            logger.warn("Could not release message {}, it will be redelivered after its visibility "
+                                      + "timeout: {}", message.messageId(), e.getMessage());
+                        }
+                    });
+        }
+
+        void releaseUnfinished() {
+            for (Message message : List.copyOf(unfinished.values())) {
+                release(message);
+            }
+        }
+
+        private CompletableFuture<Void> processMessage(Message message) {
+            String messageId = message.messageId();
+            Span span = tracer.spanBuilder("sqs.process_message")
+                    .setAttribute("sqs.message.id", messageId)
+                    .setAttribute("sqs.queue.url", queue.queueUrl())
+                    .startSpan();
+
+            long startNanos = System.nanoTime();
+            try (var scope = span.makeCurrent()) {
+                logger.info("Processing message: {}", messageId);
+
+                boolean duplicate = idempotencyCache != null && idempotencyCache.contains(messageId);
+                boolean filtered = false;
+                CompletableFuture<Void> stored;
+                if (duplicate) {
+                    // A redelivery of a message that was stored but not deleted; only the delete is left to do
+                    span.setAttribute("message.duplicate", true);
+                    logger.info("Message {} was already stored, deleting redelivery", messageId);
+                    stored = CompletableFuture.completedFuture(null);
+                } else if (pipeline != null && ClaimCheck.from(message) == null) {
+                    // Claim-checked payloads are not in the body, so they skip the stages and are copied as they are
+                    try {
+                        List<HandledMessage> outputs = pipeline.handle(message);
+                        span.setAttribute("message.outputs", outputs.size());
+                        filtered = outputs.isEmpty();
+                        if (filtered) {
+                            logger.info("Message {} dropped by the handler stages", messageId);
+                        }
+                        stored = store(outputs);
+                    } catch (Exception e) {
+                        // Fails the message like a failed upload would
+                        stored = CompletableFuture.failedFuture(e);
+                    }
+                } else {
+                    stored = store(message);
+                }
+                String outcome = duplicate ? PollerMetrics.DUPLICATE
+                        : filtered ? PollerMetrics.FILTERED : PollerMetrics.STORED;
+
+                return stored.handle((ignored, e) -> {
+                            try (var callbackScope = span.makeCurrent()) {
+                                if (e == null) {
+                                    if (idempotencyCache != null) {
+                                        idempotencyCache.record(messageId);
+                                    }
+                                    // Delete message from SQS after successful processing
+                                    deleteMessage(message);
+                                    metrics.processed(outcome, startNanos);
+                                    span.setStatus(StatusCode.OK);
+                                    logger.info("Successfully processed message: {}", messageId);
+                                } else if (unwrap(e) instanceof RetryRejectedException rejected) {
+                                    // Not the message's fault: let it become visible again instead of dead-lettering it
+                                    span.setStatus(StatusCode.ERROR, rejected.getMessage());
+                                    logger.warn("Leaving message {} on the queue: {}", messageId, rejected.getMessage());
+                                    stopTracking(message);
+                                    metrics.processed(PollerMetrics.REJECTED, startNanos);
+                                } else if (visibilityRetry && receiveCount(message) < maxAttempts()) {
+                                    Exception failure = unwrap(e);
+                                    span.setStatus(StatusCode.ERROR, failure.getMessage());
+                                    logger.warn("Failed to process message {} on receive {}: {}",
+                                               messageId, receiveCount(message), failure.getMessage());
+                                    retryLater(message);
+                                    metrics.processed(PollerMetrics.RETRY_LATER, startNanos);
+                                } else {
+                                    Exception failure = unwrap(e);
+                                    span.setStatus(StatusCode.ERROR, failure.getMessage());
+                                    logger.error("Failed to process message: {}", messageId, failure);
+
+                                    // Send to DLQ after max retries
+                                    sendToDlq(message, failure);
+                                    metrics.processed(PollerMetrics.FAILED, startNanos);
+                                }
+                            } finally {
+                                span.end();
+                            }
+                            return null;
+                        });
+            }
+        }
+
+        private CompletableFuture<Void> store(Message message) {
+            String objectKey = keyStrategy.key(queue.keyPrefix(), message.messageId(), message) + ".json";
+            ClaimCheck claimCheck = ClaimCheck.from(message);
+            if (claimCheck != null) {
+                // The payload already lives in S3; copy it there instead of pulling it into the heap
+                return withRetry(() -> s3Uploader.copyToS3Async(claimCheck.bucketName(), claimCheck.objectKey(),
+                        queue.bucketName(), objectKey));
+            }
+
+            if (aggregator != null) {
+                // Completes once the batch holding this message has been written
+                return aggregator.add(message);
+            }
+
+            return upload(objectKey, message.body());
+        }
+
+        private CompletableFuture<Void> store(List<HandledMessage> outputs) {
+            if (outputs.isEmpty()) {
+                // Dropped: nothing to upload, the message is only deleted
+                return CompletableFuture.completedFuture(null);
+            }
+            if (outputs.size() == 1) {
+                return store(outputs.get(0));
+            }
+            return CompletableFuture.allOf(outputs.stream().map(this::store).toArray(CompletableFuture[]::new));
+        }
+
+        private CompletableFuture<Void> store(HandledMessage output) {
+            if (aggregator != null && !output.isRouted()) {
+                return aggregator.add(output.toMessage());
+            }
+            String objectKey = keyStrategy.key(queue.keyPrefix() + output.keyPrefix(), output.id(), output.source())
+                    + ".json";
+            return upload(objectKey, output.body());
+        }
+
+        private CompletableFuture<Void> upload(String objectKey, String body) {
+            if (spillJournal != null) {
+                CompletableFuture<Void> spilled = spillJournal.append(queue.bucketName(), objectKey, body);
+                if (spilled != null) {
+                    // Completes once the record is on local disk; the journal uploads it after the delete
+                    return spilled;
+                }
+            }
+            // Upload message content to S3 with retry logic; retries run on the worker pool
+            return withRetry(() -> s3Uploader.uploadToS3Async(queue.bucketName(), objectKey, body));
+        }
+
+        private <T> CompletableFuture<T> withRetry(Supplier<CompletableFuture<T>> operation) {
+            if (visibilityRetry) {
+                // One attempt per receive; SQS redelivers the message for the next one
+                return retryService.executeWithRetryAsync(operation, workerPool, 1);
+            }
+            if (queue.maxRetryAttempts() > 0) {
+                return retryService.executeWithRetryAsync(operation, workerPool, queue.maxRetryAttempts());
+            }
+            return retryService.executeWithRetryAsync(operation, workerPool);
+        }
+
+        private int maxAttempts() {
+            return queue.maxRetryAttempts() > 0 ? queue.maxRetryAttempts() : tuning.maxRetryAttempts();
+        }
+
+        /**
+         * Hands a failed message back to SQS, visible again once the backoff for its receive count
+         * has passed. Nothing is held locally while it waits.
+         */
+        private void retryLater(Message message) {
+            stopTracking(message);
+            long delayMs = retryService.calculateDelay(receiveCount(message));
+            int delaySeconds = (int) Math.min(MAX_VISIBILITY_TIMEOUT_SECONDS, TimeUnit.MILLISECONDS.toSeconds(delayMs + 999));
+            visibilityBatcher.submit(new ChangeVisibilityBatcher.VisibilityChange(message.receiptHandle(), delaySeconds))
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            logger.warn("Could not delay retry of message {}, it will be retried after its visibility "
+                                      + "timeout: {}", message.messageId(), e.getMessage());
+                        } else {
+                            logger.info("Message {} will be retried in {}s", message.messageId(), delaySeconds);
+                        }
+                    });
+        }
+
+        private void stopTracking(Message message) {
+            if (visibilityHeartbeat != null) {
+                visibilityHeartbeat.untrack(message);
+            }
+        }
+
+        private int trackedCount() {
+            return visibilityHeartbeat != null ? visibilityHeartbeat.trackedCount() : 0;
+        }
+
+        private void deleteMessage(Message message) {
+            long submittedNanos = System.nanoTime();
+            deleteBatcher.submit(message).whenComplete((ignored, e) -> {
+                stopTracking(message);
+                if (e != null) {
+                    logger.error("Failed to delete message from SQS: {}", message.messageId(), e);
+                } else {
+                    metrics.deleted(message, submittedNanos);
+                    logger.debug("Deleted message from SQS: {}", message.messageId());
+                }
+            });
+        }
+
+        private void sendToDlq(Message message, Exception failure) {
+            Span span = tracer.spanBuilder("sqs.send_to_dlq")
+                    .setAttribute("sqs.message.id", message.messageId())
+                    .setAttribute("sqs.dlq.url", queue.dlqUrl())
+                    .setAttribute("error.message", String.valueOf(failure.getMessage()))
+                    .startSpan();
+
+            // The original is only deleted once the DLQ has accepted its copy
+            deadLetterBatcher.submit(new DeadLetterBatcher.DeadLetter(message, failure))
+                    .thenCompose(ignored -> deleteBatcher.submit(message))
+                    .whenComplete((ignored, e) -> {
+                        // If the DLQ rejected the copy the original reappears after its timeout and is retried
+                        stopTracking(message);
+                        if (e != null) {
+                            span.setStatus(StatusCode.ERROR, e.getMessage());
+                            logger.error("Failed to send message to DLQ: {}", message.messageId(), e);
+                        } else {
+                            span.setStatus(StatusCode.OK);
+                            metrics.deadLettered();
+                            logger.warn("Sent message to DLQ: {}", message.messageId());
+                        }
+                        span.end();
+                    });
+        }
+
+        void close() {
+            // DLQ sends queue up deletes of the originals, so they have to be flushed first
+            deadLetterBatcher.close();
+            deleteBatcher.close();
+            if (visibilityHeartbeat != null) {
+                visibilityHeartbeat.close();
+            }
+            visibilityBatcher.close();
+        }
+    }
+
+    private record ReceiveResult(int requested, int received) {
+        static final ReceiveResult NONE = new ReceiveResult(0, 0);
+
+        boolean filledRequest() {
+            return requested > 0 && received == requested;
+        }
+    }
+}
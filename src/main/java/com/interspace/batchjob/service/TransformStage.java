@@ -0,0 +1,86 @@
+package com.interspace.batchjob.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.interspace.batchjob.config.AppConfig;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the top level of a JSON object body in one streaming pass: removes fields, and adds
+ * fixed values, SQS message attributes and the SQS message ID as string fields. Added fields
+ * replace existing ones of the same name. Bodies that are not a JSON object (e.g. arrays) pass
+ * unchanged; a body that is not valid JSON fails the message.
+ */
+public class TransformStage implements MessageHandler {
+    private final Set<String> dropFields;
+    private final Map<String, String> addFields;
+    private final List<String> addAttributes;
+    private final String messageIdField;
+
+    /**
+     * @param messageIdField field to store the SQS message ID in, empty for none
+     */
+    public TransformStage(Set<String> dropFields, Map<String, String> addFields, List<String> addAttributes,
+                          String messageIdField) {
+        this.dropFields = Set.copyOf(dropFields);
+        this.addFields = Map.copyOf(addFields);
+        this.addAttributes = List.copyOf(addAttributes);
+        this.messageIdField = messageIdField;
+    }
+
+    public static TransformStage fromAppConfig() {
+        return new TransformStage(Set.copyOf(AppConfig.getHandlerTransformDropFields()),
+                AppConfig.getHandlerTransformAddFields(), AppConfig.getHandlerTransformAddAttributes(),
+                AppConfig.getHandlerTransformMessageIdField());
+    }
+
+    @Override
+    public List<HandledMessage> handle(HandledMessage message) throws IOException {
+        String body = message.body();
+        StringWriter out = new StringWriter(body.length() + 64);
+        try (JsonParser parser = JsonFields.FACTORY.createParser(body);
+             JsonGenerator generator = JsonFields.FACTORY.createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return List.of(message);
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if (isReplaced(name)) {
+                    parser.skipChildren();
+                } else {
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            for (Map.Entry<String, String> field : addFields.entrySet()) {
+                generator.writeStringField(field.getKey(), field.getValue());
+            }
+            Map<String, MessageAttributeValue> attributes = message.source().messageAttributes();
+            for (String attribute : addAttributes) {
+                MessageAttributeValue value = attributes.get(attribute);
+                if (value != null && value.stringValue() != null) {
+                    generator.writeStringField(attribute, value.stringValue());
+                }
+            }
+            if (!messageIdField.isEmpty()) {
+                generator.writeStringField(messageIdField, message.source().messageId());
+            }
+            generator.writeEndObject();
+        }
+        return List.of(message.withBody(out.toString()));
+    }
+
+    private boolean isReplaced(String name) {
+        return dropFields.contains(name) || addFields.containsKey(name) || addAttributes.contains(name)
+                || name.equals(messageIdField);
+    }
+}
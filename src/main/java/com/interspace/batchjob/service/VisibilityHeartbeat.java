@@ -0,0 +1,121 @@
+package com.interspace.batchjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps messages that are still being processed invisible to other consumers. Tracked messages
+ * whose visibility timeout is about to run out get it extended by another visibilityTimeoutSeconds,
+ * until they are untracked (deleted or dead-lettered) or have been in flight for maxExtensionSeconds.
+ *
+ * <p>The batcher is shared with other visibility changes and is not closed by the heartbeat.
+ * The heartbeat runs three times per visibility timeout and extends everything with less than
+ * half of the timeout left, so every message is seen at least once before it would expire.
+ */
+public class VisibilityHeartbeat implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(VisibilityHeartbeat.class);
+    private final ChangeVisibilityBatcher visibilityBatcher;
+    private final int visibilityTimeoutSeconds;
+    private final long maxExtensionMs;
+    private final Map<String, TrackedMessage> tracked = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public VisibilityHeartbeat(ChangeVisibilityBatcher visibilityBatcher, int visibilityTimeoutSeconds,
+                               int maxExtensionSeconds) {
+        this(visibilityBatcher, visibilityTimeoutSeconds, maxExtensionSeconds, "sqs-visibility-heartbeat");
+    }
+
+    public VisibilityHeartbeat(ChangeVisibilityBatcher visibilityBatcher, int visibilityTimeoutSeconds,
+                               int maxExtensionSeconds, String threadName) {
+        this.visibilityBatcher = visibilityBatcher;
+        this.visibilityTimeoutSeconds = Math.max(1, visibilityTimeoutSeconds);
+        this.maxExtensionMs = TimeUnit.SECONDS.toMillis(maxExtensionSeconds);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = Math.max(100, TimeUnit.SECONDS.toMillis(this.visibilityTimeoutSeconds) / 3);
+        scheduler.scheduleWithFixedDelay(this::beat, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts tracking a message. receivedAt should be taken before the ReceiveMessage call, since
+     * the visibility timeout starts counting when SQS hands the message out.
+     */
+    public void track(Message message, long receivedAt) {
+        tracked.put(message.receiptHandle(), new TrackedMessage(message.messageId(), receivedAt,
+                receivedAt + TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds)));
+    }
+
+    public void untrack(Message message) {
+        tracked.remove(message.receiptHandle());
+    }
+
+    public int trackedCount() {
+        return tracked.size();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        tracked.clear();
+    }
+
+    private void beat() {
+        try {
+            extendExpiring(System.currentTimeMillis());
+        } catch (Exception e) {
+            // Never let an exception cancel the scheduled heartbeat
+            logger.error("Visibility heartbeat failed", e);
+        }
+    }
+
+    void extendExpiring(long now) {
+        long timeoutMs = TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds);
+
+        tracked.forEach((receiptHandle, message) -> {
+            if (message.visibleAt - now > timeoutMs / 2) {
+                return;
+            }
+            if (now + timeoutMs - message.receivedAt > maxExtensionMs) {
+                tracked.remove(receiptHandle, message);
+                logger.warn("Message {} has been in flight longer than {} ms, no longer extending its visibility",
+                           message.messageId, maxExtensionMs);
+                return;
+            }
+
+            message.visibleAt = now + timeoutMs;
+            visibilityBatcher.submit(new ChangeVisibilityBatcher.VisibilityChange(receiptHandle, visibilityTimeoutSeconds))
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            // Usually the message was deleted meanwhile or its receipt handle expired
+                            tracked.remove(receiptHandle, message);
+                            logger.warn("Could not extend visibility of message {}: {}", message.messageId, e.getMessage());
+                        } else {
+                            logger.debug("Extended visibility of message {} by {}s", message.messageId,
+                                        visibilityTimeoutSeconds);
+                        }
+                    });
+        });
+    }
+
+    private static final class TrackedMessage {
+        private final String messageId;
+        private final long receivedAt;
+        private volatile long visibleAt;
+
+        private TrackedMessage(String messageId, long receivedAt, long visibleAt) {
+            this.messageId = messageId;
+            this.receivedAt = receivedAt;
+            this.visibleAt = visibleAt;
+        }
+    }
+}
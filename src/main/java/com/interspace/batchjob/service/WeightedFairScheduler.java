@@ -0,0 +1,108 @@
+package com.interspace.batchjob.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the worker slots (messages in flight) between queues in proportion to their weights.
+ * Each queue is guaranteed its share. A queue may borrow slots beyond its share while they are
+ * free, but never the unused share of another queue that is waiting for slots. A surge on one
+ * queue therefore delays another by at most the time its borrowed messages take to finish, and
+ * no slot stays idle while some queue has work.
+ */
+class WeightedFairScheduler {
+    private final int capacity;
+    private final int[] shares;
+    private final int[] inFlight;
+    private final int[] waiting;
+    private int totalInFlight;
+
+    WeightedFairScheduler(int capacity, int[] weights) {
+        this.capacity = capacity;
+        this.shares = new int[weights.length];
+        this.inFlight = new int[weights.length];
+        this.waiting = new int[weights.length];
+        long totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            shares[i] = (int) Math.max(1, capacity * weights[i] / totalWeight);
+        }
+    }
+
+    /**
+     * Takes up to {@code max} slots for the given queue, waiting up to the timeout for the first.
+     * Returns the number of slots taken, 0 if none became available in time.
+     */
+    synchronized int acquire(int queue, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiting[queue]++;
+        try {
+            int available;
+            while ((available = available(queue)) <= 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            int granted = Math.min(available, max);
+            inFlight[queue] += granted;
+            totalInFlight += granted;
+            return granted;
+        } finally {
+            waiting[queue]--;
+        }
+    }
+
+    synchronized void release(int queue, int slots) {
+        if (slots <= 0) {
+            return;
+        }
+        inFlight[queue] -= slots;
+        totalInFlight -= slots;
+        notifyAll();
+    }
+
+    /**
+     * Waits until no slots are in use. Returns false if some still were when the timeout passed.
+     */
+    synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (totalInFlight > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    synchronized int inFlight() {
+        return totalInFlight;
+    }
+
+    synchronized int inFlight(int queue) {
+        return inFlight[queue];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int share(int queue) {
+        return shares[queue];
+    }
+
+    // Free slots, less the unused shares of the other queues that are waiting
+    private int available(int queue) {
+        int reserved = 0;
+        for (int other = 0; other < shares.length; other++) {
+            if (other != queue && waiting[other] > 0) {
+                reserved += Math.max(0, shares[other] - inFlight[other]);
+            }
+        }
+        return capacity - totalInFlight - reserved;
+    }
+}
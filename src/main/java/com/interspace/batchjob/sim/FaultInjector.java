@@ -0,0 +1,62 @@
+package com.interspace.batchjob.sim;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Adds latency and random failures to the calls of an in-memory AWS client. Each call sleeps for
+ * the base latency plus a uniformly distributed jitter, then fails with a 500-class service
+ * exception with the given probability.
+ */
+public final class FaultInjector {
+    private static final FaultInjector NONE = new FaultInjector(0, 0, 0.0);
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double failureRate;
+
+    public FaultInjector(long latencyMicros, long jitterMicros, double failureRate) {
+        if (failureRate < 0.0 || failureRate > 1.0) {
+            throw new IllegalArgumentException("failureRate must be between 0 and 1: " + failureRate);
+        }
+        this.latencyNanos = Math.max(0, latencyMicros) * 1_000;
+        this.jitterNanos = Math.max(0, jitterMicros) * 1_000;
+        this.failureRate = failureRate;
+    }
+
+    public static FaultInjector none() {
+        return NONE;
+    }
+
+    /**
+     * Waits for the simulated latency and throws an exception built by exceptionFactory if this
+     * call was picked to fail.
+     */
+    void apply(String operation, Function<String, AwsServiceException.Builder> exceptionFactory) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyNanos + (jitterNanos > 0 ? random.nextLong(jitterNanos) : 0);
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            throw exceptionFactory.apply(operation)
+                    .message("Injected failure in " + operation)
+                    .statusCode(500)
+                    .awsErrorDetails(AwsErrorDetails.builder()
+                            .errorCode("InternalError")
+                            .errorMessage("Injected failure in " + operation)
+                            .build())
+                    .build();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FaultInjector{latencyMicros=" + latencyNanos / 1_000 + ", jitterMicros=" + jitterNanos / 1_000
+                + ", failureRate=" + failureRate + "}";
+    }
+}
@@ -0,0 +1,247 @@
+package com.interspace.batchjob.sim;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for S3, for benchmarks and load tests. It implements the calls the
+ * processor makes: single and multipart uploads, copies and the bucket checks at startup.
+ *
+ * <p>Request bodies are always read in full, as the real client would send them. With
+ * retainObjects off they are then discarded and only counted, so that a long load test does not
+ * fill the heap; copies need the source object and therefore need retainObjects on.
+ */
+public class InMemoryS3Client implements S3Client {
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong objectsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final FaultInjector faults;
+    private final boolean retainObjects;
+
+    public InMemoryS3Client() {
+        this(FaultInjector.none(), true);
+    }
+
+    public InMemoryS3Client(FaultInjector faults, boolean retainObjects) {
+        this.faults = faults;
+        this.retainObjects = retainObjects;
+    }
+
+    public long objectsWritten() {
+        return objectsWritten.get();
+    }
+
+    public long bytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * The stored bytes of an object, or null if it does not exist or objects are not retained.
+     */
+    public byte[] getObjectBytes(String bucket, String key) {
+        StoredObject object = objects.get(path(bucket, key));
+        return object != null ? object.data : null;
+    }
+
+    @Override
+    public HeadBucketResponse headBucket(HeadBucketRequest request) {
+        faults.apply("HeadBucket", operation -> S3Exception.builder());
+        if (!buckets.containsKey(request.bucket())) {
+            throw NoSuchBucketException.builder().message("No such bucket: " + request.bucket()).statusCode(404).build();
+        }
+        return HeadBucketResponse.builder().build();
+    }
+
+    @Override
+    public CreateBucketResponse createBucket(CreateBucketRequest request) {
+        faults.apply("CreateBucket", operation -> S3Exception.builder());
+        buckets.put(request.bucket(), Boolean.TRUE);
+        return CreateBucketResponse.builder().location("/" + request.bucket()).build();
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        faults.apply("PutObject", operation -> S3Exception.builder());
+        byte[] data = read(requestBody);
+        String eTag = store(request.bucket(), request.key(), data, request.contentType(), request.contentEncoding());
+        return PutObjectResponse.builder().eTag(eTag).build();
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        faults.apply("HeadObject", operation -> S3Exception.builder());
+        StoredObject object = existing(request.bucket(), request.key());
+        return HeadObjectResponse.builder()
+                .contentLength((long) object.data.length)
+                .contentType(object.contentType)
+                .contentEncoding(object.contentEncoding)
+                .eTag(object.eTag)
+                .build();
+    }
+
+    @Override
+    public CopyObjectResponse copyObject(CopyObjectRequest request) {
+        faults.apply("CopyObject", operation -> S3Exception.builder());
+        StoredObject source = existing(request.sourceBucket(), request.sourceKey());
+        String eTag = store(request.destinationBucket(), request.destinationKey(), source.data,
+                source.contentType, source.contentEncoding);
+        return CopyObjectResponse.builder()
+                .copyObjectResult(CopyObjectResult.builder().eTag(eTag).build())
+                .build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        faults.apply("CreateMultipartUpload", operation -> S3Exception.builder());
+        String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, new ConcurrentSkipListMap<>());
+        return CreateMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .uploadId(uploadId)
+                .build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+        faults.apply("UploadPart", operation -> S3Exception.builder());
+        byte[] data = read(requestBody);
+        parts(request.uploadId()).put(request.partNumber(), retainObjects ? data : new byte[0]);
+        bytesWritten.addAndGet(data.length);
+        return UploadPartResponse.builder().eTag(eTag(data)).build();
+    }
+
+    @Override
+    public UploadPartCopyResponse uploadPartCopy(UploadPartCopyRequest request) {
+        faults.apply("UploadPartCopy", operation -> S3Exception.builder());
+        byte[] source = existing(request.sourceBucket(), request.sourceKey()).data;
+        byte[] part = source;
+        if (request.copySourceRange() != null) {
+            // "bytes=first-last", both inclusive
+            String[] range = request.copySourceRange().substring("bytes=".length()).split("-");
+            part = Arrays.copyOfRange(source, Integer.parseInt(range[0]), Integer.parseInt(range[1]) + 1);
+        }
+        parts(request.uploadId()).put(request.partNumber(), part);
+        return UploadPartCopyResponse.builder()
+                .copyPartResult(CopyPartResult.builder().eTag(eTag(part)).build())
+                .build();
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        faults.apply("CompleteMultipartUpload", operation -> S3Exception.builder());
+        ConcurrentSkipListMap<Integer, byte[]> parts = parts(request.uploadId());
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (CompletedPart part : request.multipartUpload().parts()) {
+            byte[] data = parts.get(part.partNumber());
+            if (data == null) {
+                throw invalidPart("Missing part " + part.partNumber());
+            }
+            assembled.writeBytes(data);
+        }
+        multipartUploads.remove(request.uploadId());
+        objectsWritten.incrementAndGet();
+        String eTag = eTag(request.uploadId().getBytes(StandardCharsets.UTF_8));
+        if (retainObjects) {
+            objects.put(path(request.bucket(), request.key()),
+                    new StoredObject(assembled.toByteArray(), null, null, eTag));
+        }
+        return CompleteMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .eTag(eTag)
+                .build();
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        faults.apply("AbortMultipartUpload", operation -> S3Exception.builder());
+        multipartUploads.remove(request.uploadId());
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private String store(String bucket, String key, byte[] data, String contentType, String contentEncoding) {
+        String eTag = eTag(data);
+        objectsWritten.incrementAndGet();
+        bytesWritten.addAndGet(data.length);
+        if (retainObjects) {
+            objects.put(path(bucket, key), new StoredObject(data, contentType, contentEncoding, eTag));
+        }
+        return eTag;
+    }
+
+    private StoredObject existing(String bucket, String key) {
+        StoredObject object = objects.get(path(bucket, key));
+        if (object == null) {
+            throw NoSuchKeyException.builder().message("No such key: " + bucket + "/" + key).statusCode(404).build();
+        }
+        return object;
+    }
+
+    private ConcurrentSkipListMap<Integer, byte[]> parts(String uploadId) {
+        ConcurrentSkipListMap<Integer, byte[]> parts = multipartUploads.get(uploadId);
+        if (parts == null) {
+            throw NoSuchUploadException.builder().message("No such upload: " + uploadId).statusCode(404).build();
+        }
+        return parts;
+    }
+
+    private static S3Exception invalidPart(String message) {
+        return (S3Exception) S3Exception.builder().message(message).statusCode(400).build();
+    }
+
+    private static byte[] read(RequestBody requestBody) {
+        try (InputStream in = requestBody.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String path(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    private static String eTag(byte[] data) {
+        // Not an MD5 like S3's, but stable for identical content, which is all the processor relies on
+        return "\"" + Integer.toHexString(Arrays.hashCode(data)) + Integer.toHexString(data.length) + "\"";
+    }
+
+    private static final class StoredObject {
+        private final byte[] data;
+        private final String contentType;
+        private final String contentEncoding;
+        private final String eTag;
+
+        private StoredObject(byte[] data, String contentType, String contentEncoding, String eTag) {
+            this.data = data;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.eTag = eTag;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.interspace.batchjob.sim;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * An in-process stand-in for SQS, for benchmarks and load tests. It implements the calls the
+ * processor makes (receive with long polling, send, delete and visibility changes, singly and in
+ * batches, and the queue-depth attribute) with SQS's visibility-timeout semantics: a received
+ * message is hidden until it is deleted or its visibility timeout runs out.
+ *
+ * <p>Queues are created on first use, keyed by URL. Every call first goes through the
+ * {@link FaultInjector}. Calls the processor does not make throw UnsupportedOperationException.
+ */
+public class InMemorySqsClient implements SqsClient {
+    private static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+    private static final int MAX_RECEIVE_BATCH = 10;
+
+    private final Map<String, SimulatedQueue> queues = new ConcurrentHashMap<>();
+    private final FaultInjector faults;
+    private volatile ObjLongConsumer<String> deleteListener = (queueUrl, nanos) -> { };
+
+    public InMemorySqsClient() {
+        this(FaultInjector.none());
+    }
+
+    public InMemorySqsClient(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    /**
+     * Messages currently visible in the queue, i.e. not received or back after their visibility timeout.
+     */
+    public int visibleCount(String queueUrl) {
+        return queue(queueUrl).visibleCount();
+    }
+
+    /**
+     * Messages received and neither deleted nor visible again yet.
+     */
+    public int inFlightCount(String queueUrl) {
+        return queue(queueUrl).inFlightCount();
+    }
+
+    public long sentCount(String queueUrl) {
+        return queue(queueUrl).sent.get();
+    }
+
+    public long deletedCount(String queueUrl) {
+        return queue(queueUrl).deleted.get();
+    }
+
+    /**
+     * Called with the queue URL and the time between a message being sent and deleted, on the
+     * thread that deletes it.
+     */
+    public void setDeleteListener(ObjLongConsumer<String> deleteListener) {
+        this.deleteListener = deleteListener;
+    }
+
+    @Override
+    public GetQueueUrlResponse getQueueUrl(GetQueueUrlRequest request) {
+        faults.apply("GetQueueUrl", operation -> SqsException.builder());
+        return GetQueueUrlResponse.builder().queueUrl(urlFor(request.queueName())).build();
+    }
+
+    @Override
+    public CreateQueueResponse createQueue(CreateQueueRequest request) {
+        faults.apply("CreateQueue", operation -> SqsException.builder());
+        String queueUrl = urlFor(request.queueName());
+        queue(queueUrl);
+        return CreateQueueResponse.builder().queueUrl(queueUrl).build();
+    }
+
+    @Override
+    public SendMessageResponse sendMessage(SendMessageRequest request) {
+        faults.apply("SendMessage", operation -> SqsException.builder());
+        String messageId = queue(request.queueUrl()).send(request.messageBody(), request.messageAttributes());
+        return SendMessageResponse.builder().messageId(messageId).build();
+    }
+
+    @Override
+    public SendMessageBatchResponse sendMessageBatch(SendMessageBatchRequest request) {
+        faults.apply("SendMessageBatch", operation -> SqsException.builder());
+        SimulatedQueue queue = queue(request.queueUrl());
+        List<SendMessageBatchResultEntry> successful = new ArrayList<>(request.entries().size());
+        for (SendMessageBatchRequestEntry entry : request.entries()) {
+            String messageId = queue.send(entry.messageBody(), entry.messageAttributes());
+            successful.add(SendMessageBatchResultEntry.builder().id(entry.id()).messageId(messageId).build());
+        }
+        return SendMessageBatchResponse.builder().successful(successful).build();
+    }
+
+    @Override
+    public ReceiveMessageResponse receiveMessage(ReceiveMessageRequest request) {
+        faults.apply("ReceiveMessage", operation -> SqsException.builder());
+        int maxMessages = request.maxNumberOfMessages() != null
+                ? Math.min(request.maxNumberOfMessages(), MAX_RECEIVE_BATCH) : 1;
+        int visibilityTimeout = request.visibilityTimeout() != null
+                ? request.visibilityTimeout() : DEFAULT_VISIBILITY_TIMEOUT_SECONDS;
+        int waitSeconds = request.waitTimeSeconds() != null ? request.waitTimeSeconds() : 0;
+        List<Message> messages = queue(request.queueUrl()).receive(maxMessages, visibilityTimeout,
+                TimeUnit.SECONDS.toNanos(waitSeconds));
+        return ReceiveMessageResponse.builder().messages(messages).build();
+    }
+
+    @Override
+    public DeleteMessageResponse deleteMessage(DeleteMessageRequest request) {
+        faults.apply("DeleteMessage", operation -> SqsException.builder());
+        if (!queue(request.queueUrl()).delete(request.receiptHandle())) {
+            throw ReceiptHandleIsInvalidException.builder().message("Unknown receipt handle").build();
+        }
+        return DeleteMessageResponse.builder().build();
+    }
+
+    @Override
+    public DeleteMessageBatchResponse deleteMessageBatch(DeleteMessageBatchRequest request) {
+        faults.apply("DeleteMessageBatch", operation -> SqsException.builder());
+        SimulatedQueue queue = queue(request.queueUrl());
+        List<DeleteMessageBatchResultEntry> successful = new ArrayList<>(request.entries().size());
+        List<BatchResultErrorEntry> failed = new ArrayList<>();
+        for (DeleteMessageBatchRequestEntry entry : request.entries()) {
+            if (queue.delete(entry.receiptHandle())) {
+                successful.add(DeleteMessageBatchResultEntry.builder().id(entry.id()).build());
+            } else {
+                failed.add(invalidReceiptHandle(entry.id()));
+            }
+        }
+        return DeleteMessageBatchResponse.builder().successful(successful).failed(failed).build();
+    }
+
+    @Override
+    public ChangeMessageVisibilityBatchResponse changeMessageVisibilityBatch(
+            ChangeMessageVisibilityBatchRequest request) {
+        faults.apply("ChangeMessageVisibilityBatch", operation -> SqsException.builder());
+        SimulatedQueue queue = queue(request.queueUrl());
+        List<ChangeMessageVisibilityBatchResultEntry> successful = new ArrayList<>(request.entries().size());
+        List<BatchResultErrorEntry> failed = new ArrayList<>();
+        for (ChangeMessageVisibilityBatchRequestEntry entry : request.entries()) {
+            if (queue.changeVisibility(entry.receiptHandle(), entry.visibilityTimeout())) {
+                successful.add(ChangeMessageVisibilityBatchResultEntry.builder().id(entry.id()).build());
+            } else {
+                failed.add(invalidReceiptHandle(entry.id()));
+            }
+        }
+        return ChangeMessageVisibilityBatchResponse.builder().successful(successful).failed(failed).build();
+    }
+
+    @Override
+    public GetQueueAttributesResponse getQueueAttributes(GetQueueAttributesRequest request) {
+        faults.apply("GetQueueAttributes", operation -> SqsException.builder());
+        SimulatedQueue queue = queue(request.queueUrl());
+        return GetQueueAttributesResponse.builder()
+                .attributes(Map.of(
+                        QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES, String.valueOf(queue.visibleCount()),
+                        QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE,
+                        String.valueOf(queue.inFlightCount())))
+                .build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        queues.values().forEach(SimulatedQueue::wakeReceivers);
+    }
+
+    private SimulatedQueue queue(String queueUrl) {
+        return queues.computeIfAbsent(queueUrl, SimulatedQueue::new);
+    }
+
+    private static String urlFor(String queueName) {
+        return "http://sqs.in-memory/000000000000/" + queueName;
+    }
+
+    private static BatchResultErrorEntry invalidReceiptHandle(String id) {
+        return BatchResultErrorEntry.builder()
+                .id(id)
+                .code("ReceiptHandleIsInvalid")
+                .message("Unknown receipt handle")
+                .senderFault(true)
+                .build();
+    }
+
+    private static final class StoredMessage {
+        private final String messageId;
+        private final String body;
+        private final Map<String, MessageAttributeValue> messageAttributes;
+        private final long sentAt;
+        private final long sentNanos;
+        private int receiveCount;
+        private String receiptHandle;
+        private long visibleAtNanos;
+
+        private StoredMessage(String body, Map<String, MessageAttributeValue> messageAttributes) {
+            this.messageId = UUID.randomUUID().toString();
+            this.body = body;
+            this.messageAttributes = messageAttributes;
+            this.sentAt = System.currentTimeMillis();
+            this.sentNanos = System.nanoTime();
+        }
+
+        private Message toMessage() {
+            return Message.builder()
+                    .messageId(messageId)
+                    .receiptHandle(receiptHandle)
+                    .body(body)
+                    .messageAttributes(messageAttributes)
+                    .attributes(Map.of(
+                            MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT, String.valueOf(receiveCount),
+                            MessageSystemAttributeName.SENT_TIMESTAMP, String.valueOf(sentAt)))
+                    .build();
+        }
+    }
+
+    /**
+     * One queue. Visible messages are in FIFO order; received ones are kept by receipt handle and
+     * returned to the queue once their visibility timeout has passed, which is checked on receive.
+     */
+    private final class SimulatedQueue {
+        private final String queueUrl;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition messageAvailable = lock.newCondition();
+        private final ArrayDeque<StoredMessage> visible = new ArrayDeque<>();
+        private final Map<String, StoredMessage> inFlight = new HashMap<>();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private long nextExpiryNanos = Long.MAX_VALUE;
+
+        private SimulatedQueue(String queueUrl) {
+            this.queueUrl = queueUrl;
+        }
+
+        private String send(String body, Map<String, MessageAttributeValue> messageAttributes) {
+            StoredMessage message = new StoredMessage(body, messageAttributes);
+            lock.lock();
+            try {
+                visible.addLast(message);
+                messageAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+            sent.incrementAndGet();
+            return message.messageId;
+        }
+
+        private List<Message> receive(int maxMessages, int visibilityTimeoutSeconds, long waitNanos) {
+            long deadline = System.nanoTime() + waitNanos;
+            List<Message> received = new ArrayList<>(maxMessages);
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                returnExpired(now);
+                while (visible.isEmpty()) {
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        return received;
+                    }
+                    long untilExpiry = nextExpiryNanos == Long.MAX_VALUE ? remaining : nextExpiryNanos - now;
+                    messageAvailable.awaitNanos(Math.max(1, Math.min(remaining, untilExpiry)));
+                    now = System.nanoTime();
+                    returnExpired(now);
+                }
+                long visibleAt = now + TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+                while (received.size() < maxMessages && !visible.isEmpty()) {
+                    StoredMessage message = visible.pollFirst();
+                    message.receiveCount++;
+                    message.receiptHandle = UUID.randomUUID().toString();
+                    message.visibleAtNanos = visibleAt;
+                    inFlight.put(message.receiptHandle, message);
+                    nextExpiryNanos = Math.min(nextExpiryNanos, visibleAt);
+                    received.add(message.toMessage());
+                }
+                return received;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return received;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean delete(String receiptHandle) {
+            StoredMessage message;
+            lock.lock();
+            try {
+                message = inFlight.remove(receiptHandle);
+            } finally {
+                lock.unlock();
+            }
+            if (message == null) {
+                return false;
+            }
+            deleted.incrementAndGet();
+            deleteListener.accept(queueUrl, System.nanoTime() - message.sentNanos);
+            return true;
+        }
+
+        private boolean changeVisibility(String receiptHandle, int visibilityTimeoutSeconds) {
+            lock.lock();
+            try {
+                StoredMessage message = inFlight.get(receiptHandle);
+                if (message == null) {
+                    return false;
+                }
+                long now = System.nanoTime();
+                if (visibilityTimeoutSeconds == 0) {
+                    inFlight.remove(receiptHandle);
+                    visible.addLast(message);
+                    messageAvailable.signal();
+                } else {
+                    message.visibleAtNanos = now + TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+                    nextExpiryNanos = Math.min(nextExpiryNanos, message.visibleAtNanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int visibleCount() {
+            lock.lock();
+            try {
+                returnExpired(System.nanoTime());
+                return visible.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int inFlightCount() {
+            lock.lock();
+            try {
+                return inFlight.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void wakeReceivers() {
+            lock.lock();
+            try {
+                messageAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called with the lock held; only scans the in-flight messages once one may have expired
+        private void returnExpired(long now) {
+            if (now < nextExpiryNanos) {
+                return;
+            }
+            long next = Long.MAX_VALUE;
+            Iterator<StoredMessage> iterator = inFlight.values().iterator();
+            while (iterator.hasNext()) {
+                StoredMessage message = iterator.next();
+                if (message.visibleAtNanos <= now) {
+                    iterator.remove();
+                    visible.addLast(message);
+                } else {
+                    next = Math.min(next, message.visibleAtNanos);
+                }
+            }
+            nextExpiryNanos = next;
+            if (!visible.isEmpty()) {
+                messageAvailable.signalAll();
+            }
+        }
+    }
+}
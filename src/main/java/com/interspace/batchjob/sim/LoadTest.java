@@ -0,0 +1,287 @@
+package com.interspace.batchjob.sim;
+
+import ch.qos.logback.classic.Level;
+import com.interspace.batchjob.config.AppConfig;
+import com.interspace.batchjob.service.RetryService;
+import com.interspace.batchjob.service.S3Uploader;
+import com.interspace.batchjob.service.SqsPoller;
+import com.interspace.batchjob.telemetry.TelemetryConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the processor against in-memory SQS and S3 and feeds it messages at a configured rate,
+ * reporting throughput, latency from send to delete, heap usage and the dead-letter rate.
+ * Nothing leaves the process, so results reflect the processor itself plus whatever latency and
+ * failures are injected with the app.loadtest.* settings.
+ *
+ * <p>Arrivals are open-loop: messages are sent on schedule whether or not the processor keeps up,
+ * so an overloaded processor shows up as a growing backlog and rising latency rather than as a
+ * lower send rate. "fixed" spaces them evenly, "poisson" draws exponential gaps with the same mean.
+ */
+public class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+    private static final int SEND_BATCH = 10;
+    // Distinct bodies per size, so compression does not see the same payload over and over
+    private static final int PAYLOAD_VARIANTS = 8;
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SEND_RETRY_PAUSE_MS = 10;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final String queueUrl = AppConfig.getSqsQueueUrl();
+    private final String dlqUrl = AppConfig.getSqsDlqUrl();
+    private final long totalMessages = AppConfig.getLoadTestMessages();
+    private final double rate = AppConfig.getLoadTestRate();
+    private final boolean poisson = "poisson".equalsIgnoreCase(AppConfig.getLoadTestArrival());
+    private final long reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLoadTestReportIntervalMs());
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final SizeDistribution sizes = SizeDistribution.parse(AppConfig.getLoadTestSizeDistribution());
+
+    private InMemorySqsClient sqsClient;
+    private InMemoryS3Client s3Client;
+    private long startNanos;
+    private long peakHeapBytes;
+    private long lastReportNanos;
+    private long lastReportCompleted;
+
+    public static void main(String[] args) {
+        new LoadTest().run();
+        // Worker and scheduler threads of the processor are not all daemons
+        System.exit(0);
+    }
+
+    public void run() {
+        TelemetryConfig.initialize();
+        // Per-message INFO logging would otherwise dominate both the output and the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.interspace.batchjob.service"))
+                .setLevel(Level.WARN);
+
+        sqsClient = new InMemorySqsClient(new FaultInjector(AppConfig.getLoadTestSqsLatencyMicros(),
+                AppConfig.getLoadTestSqsLatencyMicros() / 4, AppConfig.getLoadTestSqsFailureRate()));
+        s3Client = new InMemoryS3Client(new FaultInjector(AppConfig.getLoadTestS3LatencyMicros(),
+                AppConfig.getLoadTestS3LatencyMicros() / 4, AppConfig.getLoadTestS3FailureRate()), false);
+        sqsClient.setDeleteListener((url, nanos) -> {
+            if (url.equals(queueUrl)) {
+                latency.record(nanos);
+            }
+        });
+
+        SqsPoller poller = new SqsPoller(sqsClient, new S3Uploader(s3Client), new RetryService());
+        Thread pollerThread = new Thread(poller::startPolling, "load-test-poller");
+        pollerThread.setDaemon(true);
+
+        logger.info("Load test: {} messages at {} msg/s ({} arrivals), sizes {}",
+                   totalMessages, rate > 0 ? rate : "unlimited", poisson ? "poisson" : "fixed",
+                   AppConfig.getLoadTestSizeDistribution());
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTimeMs();
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        pollerThread.start();
+
+        generate();
+        long sendEndNanos = System.nanoTime();
+        boolean drained = awaitDrain();
+        long endNanos = System.nanoTime();
+
+        poller.stopPolling();
+        report(sendEndNanos, endNanos, drained, gcCount() - gcCountBefore, gcTimeMs() - gcTimeBefore);
+    }
+
+    private void generate() {
+        String[][] payloads = sizes.payloads(PAYLOAD_VARIANTS);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(SEND_BATCH);
+        long sent = 0;
+        double nextArrivalSeconds = 0;
+
+        while (sent < totalMessages) {
+            long now = System.nanoTime();
+            double elapsedSeconds = (now - startNanos) / 1e9;
+            while (entries.size() < SEND_BATCH && sent + entries.size() < totalMessages
+                    && (rate <= 0 || nextArrivalSeconds <= elapsedSeconds)) {
+                String body = payloads[sizes.pick(random)][random.nextInt(PAYLOAD_VARIANTS)];
+                entries.add(SendMessageBatchRequestEntry.builder()
+                        .id(String.valueOf(entries.size()))
+                        .messageBody(body)
+                        .build());
+                if (rate > 0) {
+                    double gap = poisson ? -Math.log(1.0 - random.nextDouble()) / rate : 1.0 / rate;
+                    nextArrivalSeconds += gap;
+                }
+            }
+
+            boolean batchDue = entries.size() == SEND_BATCH || sent + entries.size() == totalMessages
+                    || (rate > 0 && nextArrivalSeconds > elapsedSeconds);
+            if (!entries.isEmpty() && batchDue) {
+                send(entries);
+                sent += entries.size();
+                entries.clear();
+            } else if (entries.isEmpty()) {
+                long untilNext = (long) ((nextArrivalSeconds - elapsedSeconds) * 1e9);
+                LockSupport.parkNanos(Math.min(Math.max(untilNext, 0), MAX_IDLE_PARK_NANOS));
+            }
+            reportProgressIfDue(now, sent);
+        }
+    }
+
+    private void send(List<SendMessageBatchRequestEntry> entries) {
+        SendMessageBatchRequest request = SendMessageBatchRequest.builder()
+                .queueUrl(queueUrl)
+                .entries(List.copyOf(entries))
+                .build();
+        while (true) {
+            try {
+                sqsClient.sendMessageBatch(request);
+                return;
+            } catch (SqsException e) {
+                // Injected SQS failures hit the producer too; keep the schedule by retrying promptly
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SEND_RETRY_PAUSE_MS));
+            }
+        }
+    }
+
+    private boolean awaitDrain() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AppConfig.getLoadTestDrainTimeoutMs());
+        while (sqsClient.deletedCount(queueUrl) < totalMessages) {
+            long now = System.nanoTime();
+            if (now >= deadline) {
+                return false;
+            }
+            reportProgressIfDue(now, totalMessages);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        return true;
+    }
+
+    private void reportProgressIfDue(long now, long sent) {
+        sampleHeap();
+        if (now - lastReportNanos < reportIntervalNanos) {
+            return;
+        }
+        long completed = sqsClient.deletedCount(queueUrl);
+        double intervalThroughput = (completed - lastReportCompleted) / ((now - lastReportNanos) / 1e9);
+        logger.info("Load test: sent={} completed={} backlog={} in-flight={} throughput={}/s heap={} MB",
+                   sent, completed, sqsClient.visibleCount(queueUrl), sqsClient.inFlightCount(queueUrl),
+                   Math.round(intervalThroughput), Math.round(heapUsedBytes() / BYTES_PER_MB));
+        lastReportNanos = now;
+        lastReportCompleted = completed;
+    }
+
+    private void report(long sendEndNanos, long endNanos, boolean drained, long gcCount, long gcTimeMs) {
+        long completed = sqsClient.deletedCount(queueUrl);
+        long deadLettered = sqsClient.sentCount(dlqUrl);
+        double seconds = (endNanos - startNanos) / 1e9;
+        double sendSeconds = (sendEndNanos - startNanos) / 1e9;
+
+        logger.info("Load test finished{}", drained ? "" : " (drain timed out; remaining messages not counted)");
+        logger.info("  messages:   sent={} completed={} stored={} dead-lettered={} ({}%)",
+                   totalMessages, completed, s3Client.objectsWritten(), deadLettered,
+                   String.format("%.3f", completed > 0 ? 100.0 * deadLettered / completed : 0.0));
+        logger.info("  throughput: {} msg/s sustained over {} s (offered {} msg/s over {} s), {} MB/s to S3",
+                   Math.round(completed / seconds), String.format("%.1f", seconds),
+                   Math.round(totalMessages / sendSeconds), String.format("%.1f", sendSeconds),
+                   String.format("%.1f", s3Client.bytesWritten() / BYTES_PER_MB / seconds));
+        logger.info("  latency:    p50={} ms p99={} ms p999={} ms max={} ms (send to delete)",
+                   millis(latency.percentile(50)), millis(latency.percentile(99)),
+                   millis(latency.percentile(99.9)), millis(latency.max()));
+        logger.info("  heap:       peak={} MB, {} GCs taking {} ms",
+                   Math.round(peakHeapBytes / BYTES_PER_MB), gcCount, gcTimeMs);
+    }
+
+    private void sampleHeap() {
+        peakHeapBytes = Math.max(peakHeapBytes, heapUsedBytes());
+    }
+
+    private static long heapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    /**
+     * Message sizes as weighted buckets, written as "size:weight,size:weight", e.g.
+     * "512:60,4096:30,65536:10" for 60% 512-byte messages, 30% 4 KB and 10% 64 KB.
+     */
+    static final class SizeDistribution {
+        private final int[] sizes;
+        private final double[] cumulativeWeights;
+
+        private SizeDistribution(int[] sizes, double[] cumulativeWeights) {
+            this.sizes = sizes;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+
+        static SizeDistribution parse(String spec) {
+            String[] buckets = spec.split(",");
+            int[] sizes = new int[buckets.length];
+            double[] cumulative = new double[buckets.length];
+            double total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                String[] parts = buckets[i].trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected size:weight in size distribution: " + buckets[i]);
+                }
+                sizes[i] = Integer.parseInt(parts[0].trim());
+                total += Double.parseDouble(parts[1].trim());
+                cumulative[i] = total;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("Size distribution has no weight: " + spec);
+            }
+            for (int i = 0; i < cumulative.length; i++) {
+                cumulative[i] /= total;
+            }
+            return new SizeDistribution(sizes, cumulative);
+        }
+
+        int pick(ThreadLocalRandom random) {
+            double value = random.nextDouble();
+            for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return i;
+                }
+            }
+            return cumulativeWeights.length - 1;
+        }
+
+        String[][] payloads(int variants) {
+            String[][] payloads = new String[sizes.length][variants];
+            for (int i = 0; i < sizes.length; i++) {
+                for (int j = 0; j < variants; j++) {
+                    payloads[i][j] = Payloads.json(sizes[i]);
+                }
+            }
+            return payloads;
+        }
+    }
+}
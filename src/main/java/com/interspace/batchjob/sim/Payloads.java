@@ -0,0 +1,34 @@
+package com.interspace.batchjob.sim;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Message bodies for benchmarks and load tests.
+ */
+public final class Payloads {
+    private static final String PREFIX = "{\"id\":\"";
+    private static final String FIELD = "\",\"data\":\"";
+    private static final String SUFFIX = "\"}";
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+    private Payloads() {
+    }
+
+    /**
+     * A JSON object of exactly sizeBytes ASCII characters (or the smallest possible object, if
+     * sizeBytes is smaller). The content is random so that compression behaves as for real data
+     * rather than collapsing a run of one character.
+     */
+    public static String json(int sizeBytes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = Long.toHexString(random.nextLong());
+        int dataLength = Math.max(0, sizeBytes - PREFIX.length() - id.length() - FIELD.length() - SUFFIX.length());
+        StringBuilder json = new StringBuilder(PREFIX.length() + id.length() + FIELD.length() + dataLength
+                + SUFFIX.length());
+        json.append(PREFIX).append(id).append(FIELD);
+        for (int i = 0; i < dataLength; i++) {
+            json.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return json.append(SUFFIX).toString();
+    }
+}
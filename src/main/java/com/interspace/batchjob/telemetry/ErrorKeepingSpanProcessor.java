@@ -0,0 +1,144 @@
+package com.interspace.batchjob.telemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.DelegatingSpanData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.util.Set;
+
+/**
+ * Passes sampled spans to the delegate as usual, and additionally promotes unsampled spans that
+ * ended with an error, or whose name is in alwaysKept, so they are exported too. Needs a sampler
+ * that records unsampled spans (RECORD_ONLY) instead of dropping them.
+ *
+ * <p>Only the failing spans themselves are kept, not the successful rest of their trace.
+ */
+public class ErrorKeepingSpanProcessor implements SpanProcessor {
+    private final SpanProcessor delegate;
+    private final Set<String> alwaysKept;
+
+    public ErrorKeepingSpanProcessor(SpanProcessor delegate, Set<String> alwaysKept) {
+        this.delegate = delegate;
+        this.alwaysKept = alwaysKept;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+        delegate.onStart(parentContext, span);
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return delegate.isStartRequired();
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        if (span.getSpanContext().isSampled()) {
+            delegate.onEnd(span);
+        } else if (alwaysKept.contains(span.getName())
+                || span.toSpanData().getStatus().getStatusCode() == StatusCode.ERROR) {
+            delegate.onEnd(new PromotedSpan(span));
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return delegate.forceFlush();
+    }
+
+    private static SpanContext sampled(SpanContext context) {
+        return SpanContext.create(context.getTraceId(), context.getSpanId(), TraceFlags.getSampled(),
+                context.getTraceState());
+    }
+
+    /**
+     * An ended span presented as sampled, which is what span processors check before exporting.
+     */
+    private static final class PromotedSpan implements ReadableSpan {
+        private final ReadableSpan span;
+        private final SpanContext spanContext;
+
+        private PromotedSpan(ReadableSpan span) {
+            this.span = span;
+            this.spanContext = sampled(span.getSpanContext());
+        }
+
+        @Override
+        public SpanContext getSpanContext() {
+            return spanContext;
+        }
+
+        @Override
+        public SpanContext getParentSpanContext() {
+            return span.getParentSpanContext();
+        }
+
+        @Override
+        public String getName() {
+            return span.getName();
+        }
+
+        @Override
+        public SpanData toSpanData() {
+            return new DelegatingSpanData(span.toSpanData()) {
+                @Override
+                public SpanContext getSpanContext() {
+                    return spanContext;
+                }
+            };
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public InstrumentationLibraryInfo getInstrumentationLibraryInfo() {
+            return span.getInstrumentationLibraryInfo();
+        }
+
+        @Override
+        public InstrumentationScopeInfo getInstrumentationScopeInfo() {
+            return span.getInstrumentationScopeInfo();
+        }
+
+        @Override
+        public boolean hasEnded() {
+            return span.hasEnded();
+        }
+
+        @Override
+        public long getLatencyNanos() {
+            return span.getLatencyNanos();
+        }
+
+        @Override
+        public SpanKind getKind() {
+            return span.getKind();
+        }
+
+        @Override
+        public <T> T getAttribute(AttributeKey<T> key) {
+            return span.getAttribute(key);
+        }
+    }
+}
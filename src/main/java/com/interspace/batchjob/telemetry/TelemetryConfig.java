@@ -1,56 +1,202 @@
 package com.interspace.batchjob.telemetry;
 
+import com.interspace.batchjob.config.AppConfig;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.TracerProvider;
+import io.opentelemetry.context.Context;
 import io.opentelemetry.exporter.jaeger.JaegerGrpcSpanExporter;
+import io.opentelemetry.exporter.prometheus.PrometheusHttpServer;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.OpenTelemetrySdkBuilder;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.LinkData;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 
 public class TelemetryConfig {
+    private static final Logger logger = LoggerFactory.getLogger(TelemetryConfig.class);
     private static final String SERVICE_NAME = "batch-job-processor";
     private static final String SERVICE_VERSION = "1.0.0";
-    private static final String JAEGER_ENDPOINT = "http://localhost:14250";
-    
-    private static OpenTelemetry openTelemetry;
+    // Kept by the error-keeping mode even when successful
+    private static final Set<String> ALWAYS_KEPT_SPANS = Set.of("sqs.send_to_dlq");
+
+    private static OpenTelemetrySdk openTelemetry;
     private static Tracer tracer;
-    
-    public static void initialize() {
+    private static Tracer detailTracer;
+    private static Meter meter;
+
+    public static synchronized void initialize() {
+        if (openTelemetry != null) {
+            return;
+        }
+
         Resource resource = Resource.getDefault()
                 .merge(Resource.create(Attributes.of(
                         AttributeKey.stringKey("service.name"), SERVICE_NAME,
                         AttributeKey.stringKey("service.version"), SERVICE_VERSION)));
 
+        SdkMeterProviderBuilder meterProviderBuilder = SdkMeterProvider.builder()
+                .setResource(resource);
+        if (AppConfig.isMetricsEnabled()) {
+            try {
+                // Scraped by Prometheus; metrics are aggregated in-process, so recording stays cheap
+                meterProviderBuilder.registerMetricReader(PrometheusHttpServer.builder()
+                        .setPort(AppConfig.getMetricsPrometheusPort())
+                        .build());
+            } catch (RuntimeException e) {
+                logger.warn("Could not start Prometheus metrics endpoint on port {}: {}",
+                           AppConfig.getMetricsPrometheusPort(), e.getMessage());
+            }
+        }
+        SdkMeterProvider meterProvider = meterProviderBuilder.build();
+
+        OpenTelemetrySdkBuilder sdkBuilder = OpenTelemetrySdk.builder()
+                .setMeterProvider(meterProvider);
+        boolean tracingEnabled = !"none".equalsIgnoreCase(AppConfig.getOtelTracesExporter());
+        if (tracingEnabled) {
+            sdkBuilder.setTracerProvider(createTracerProvider(resource, meterProvider));
+        }
+        openTelemetry = sdkBuilder.build();
+
+        // With tracing off the no-op tracer makes span creation practically free
+        tracer = tracingEnabled ? openTelemetry.getTracer(SERVICE_NAME) : TracerProvider.noop().get(SERVICE_NAME);
+        detailTracer = tracingEnabled && !"minimal".equalsIgnoreCase(AppConfig.getTracingSpanMode())
+                ? tracer : TracerProvider.noop().get(SERVICE_NAME);
+        meter = openTelemetry.getMeter(SERVICE_NAME);
+        logger.info("Tracing {} (sampler={}, ratio={}, span mode={})",
+                   tracingEnabled ? "enabled" : "disabled", AppConfig.getOtelTracesSampler(),
+                   AppConfig.getOtelTracesSamplerArg(), AppConfig.getTracingSpanMode());
+    }
+
+    private static SdkTracerProvider createTracerProvider(Resource resource, SdkMeterProvider meterProvider) {
         JaegerGrpcSpanExporter jaegerExporter = JaegerGrpcSpanExporter.builder()
-                .setEndpoint(JAEGER_ENDPOINT)
+                .setEndpoint(AppConfig.getOtelJaegerEndpoint())
                 .build();
 
-        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
-                .addSpanProcessor(BatchSpanProcessor.builder(jaegerExporter).build())
-                .setResource(resource)
+        // Reports queue size and dropped spans as metrics, so drops are no longer silent
+        SpanProcessor spanProcessor = BatchSpanProcessor.builder(jaegerExporter)
+                .setMaxQueueSize(AppConfig.getOtelBspMaxQueueSize())
+                .setMaxExportBatchSize(AppConfig.getOtelBspMaxExportBatchSize())
+                .setScheduleDelay(Duration.ofMillis(AppConfig.getOtelBspScheduleDelayMs()))
+                .setExporterTimeout(Duration.ofMillis(AppConfig.getOtelBspExportTimeoutMs()))
+                .setMeterProvider(meterProvider)
                 .build();
 
-        openTelemetry = OpenTelemetrySdk.builder()
-                .setTracerProvider(tracerProvider)
+        Sampler sampler = createSampler(AppConfig.getOtelTracesSampler(), AppConfig.getOtelTracesSamplerArg());
+        if (AppConfig.isTracingKeepErrors()) {
+            // Unsampled spans are recorded rather than dropped so that failures can still be exported
+            sampler = new RecordUnsampledSampler(sampler);
+            spanProcessor = new ErrorKeepingSpanProcessor(spanProcessor, ALWAYS_KEPT_SPANS);
+        }
+
+        return SdkTracerProvider.builder()
+                .addSpanProcessor(spanProcessor)
+                .setSampler(sampler)
+                .setResource(resource)
                 .build();
-        
-        tracer = openTelemetry.getTracer(SERVICE_NAME);
     }
-    
+
+    static Sampler createSampler(String name, double ratio) {
+        switch (name.toLowerCase()) {
+            case "always_on":
+                return Sampler.alwaysOn();
+            case "always_off":
+                return Sampler.alwaysOff();
+            case "traceidratio":
+                return Sampler.traceIdRatioBased(ratio);
+            case "parentbased_always_on":
+                return Sampler.parentBased(Sampler.alwaysOn());
+            case "parentbased_always_off":
+                return Sampler.parentBased(Sampler.alwaysOff());
+            case "parentbased_traceidratio":
+                return Sampler.parentBased(Sampler.traceIdRatioBased(ratio));
+            default:
+                logger.warn("Unknown otel.traces.sampler '{}', using parentbased_always_on", name);
+                return Sampler.parentBased(Sampler.alwaysOn());
+        }
+    }
+
     public static OpenTelemetry getOpenTelemetry() {
         if (openTelemetry == null) {
             initialize();
         }
         return openTelemetry;
     }
-    
+
     public static Tracer getTracer() {
         if (tracer == null) {
             initialize();
         }
         return tracer;
     }
-}
\ No newline at end of file
+
+    /**
+     * Tracer for spans below the per-message level (retry attempts, individual S3 calls). It is a
+     * no-op tracer when app.tracing.span-mode=minimal, leaving one span per message.
+     */
+    public static Tracer getDetailTracer() {
+        if (detailTracer == null) {
+            initialize();
+        }
+        return detailTracer;
+    }
+
+    public static Meter getMeter() {
+        if (meter == null) {
+            initialize();
+        }
+        return meter;
+    }
+
+    /**
+     * Exports spans still queued and stops the exporters.
+     */
+    public static synchronized void shutdown() {
+        if (openTelemetry != null) {
+            openTelemetry.close();
+        }
+    }
+
+    /**
+     * Turns a DROP decision into RECORD_ONLY: the span is recorded but, unless the
+     * {@link ErrorKeepingSpanProcessor} keeps it, not exported, and it is not marked as sampled
+     * for downstream services.
+     */
+    static final class RecordUnsampledSampler implements Sampler {
+        private final Sampler delegate;
+
+        RecordUnsampledSampler(Sampler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                                           Attributes attributes, List<LinkData> parentLinks) {
+            SamplingResult result = delegate.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+            return result.getDecision() == SamplingDecision.DROP
+                    ? SamplingResult.recordOnly() : result;
+        }
+
+        @Override
+        public String getDescription() {
+            return "RecordUnsampled{" + delegate.getDescription() + "}";
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.interspace.batchjob.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AwsClientFactoryTest {
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("app.queues");
+        System.clearProperty("app.queue.orders.url");
+        System.clearProperty("app.queue.audit.url");
+        System.clearProperty("app.queue.audit.bucket-name");
+    }
+
+    @Test
+    void warmUp_IssuesConcurrentCallsPerClientAndIgnoresFailures() {
+        // Given
+        SqsClient sqsClient = mock(SqsClient.class);
+        S3Client s3Client = mock(S3Client.class);
+        S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+        when(s3Client.headBucket(anyHeadBucket())).thenThrow(S3Exception.builder().message("denied").build());
+        when(s3AsyncClient.headBucket(anyHeadBucket()))
+                .thenReturn(CompletableFuture.completedFuture(HeadBucketResponse.builder().build()));
+        int connections = AppConfig.getHttpWarmupConnections();
+
+        // When
+        assertDoesNotThrow(() -> AwsClientFactory.warmUp(sqsClient, s3Client, s3AsyncClient));
+
+        // Then
+        verify(sqsClient, times(connections)).getQueueAttributes(anyGetQueueAttributes());
+        verify(s3Client, times(connections)).headBucket(anyHeadBucket());
+        verify(s3AsyncClient, times(connections)).headBucket(anyHeadBucket());
+    }
+
+    @Test
+    void warmUp_CoversEveryQueueAndBucket() {
+        // Given two queues storing into different buckets
+        System.setProperty("app.queues", "orders,audit");
+        System.setProperty("app.queue.orders.url", "http://localhost:4566/000000000000/orders");
+        System.setProperty("app.queue.audit.url", "http://localhost:4566/000000000000/audit");
+        System.setProperty("app.queue.audit.bucket-name", "audit-bucket");
+        SqsClient sqsClient = mock(SqsClient.class);
+        S3Client s3Client = mock(S3Client.class);
+        Set<String> queueUrls = ConcurrentHashMap.newKeySet();
+        Set<String> buckets = ConcurrentHashMap.newKeySet();
+        when(sqsClient.getQueueAttributes(anyGetQueueAttributes())).thenAnswer(invocation -> {
+            GetQueueAttributesRequest.Builder request = GetQueueAttributesRequest.builder();
+            invocation.<Consumer<GetQueueAttributesRequest.Builder>>getArgument(0).accept(request);
+            queueUrls.add(request.build().queueUrl());
+            return null;
+        });
+        when(s3Client.headBucket(anyHeadBucket())).thenAnswer(invocation -> {
+            HeadBucketRequest.Builder request = HeadBucketRequest.builder();
+            invocation.<Consumer<HeadBucketRequest.Builder>>getArgument(0).accept(request);
+            buckets.add(request.build().bucket());
+            return null;
+        });
+
+        // When
+        AwsClientFactory.warmUp(sqsClient, s3Client, null);
+
+        // Then
+        assertEquals(Set.of("http://localhost:4566/000000000000/orders", "http://localhost:4566/000000000000/audit"),
+                queueUrls);
+        assertEquals(Set.of(AppConfig.getS3BucketName(), "audit-bucket"), buckets);
+    }
+
+    @Test
+    void maxConnections_DerivedFromConcurrencySettingsByDefault() {
+        int workerBatchSenders = AppConfig.getWorkerPoolSize() / 10 + 1;
+        assertEquals(AppConfig.getSqsReceiverCount() + 4 + workerBatchSenders, AwsClientFactory.sqsMaxConnections());
+
+        // Every queue brings its own receivers and batchers
+        System.setProperty("app.queues", "orders,audit");
+        assertEquals(2 * (AppConfig.getSqsReceiverCount() + 4) + workerBatchSenders,
+                AwsClientFactory.sqsMaxConnections());
+        assertEquals(AppConfig.getWorkerPoolSize() + AppConfig.getS3MultipartParallelism(),
+                AwsClientFactory.s3MaxConnections());
+    }
+
+    private static Consumer<GetQueueAttributesRequest.Builder> anyGetQueueAttributes() {
+        return any();
+    }
+
+    private static Consumer<HeadBucketRequest.Builder> anyHeadBucket() {
+        return any();
+    }
+}
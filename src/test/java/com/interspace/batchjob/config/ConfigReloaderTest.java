@@ -0,0 +1,87 @@
+package com.interspace.batchjob.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigReloaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path configFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        configFile = tempDir.resolve("override.properties");
+        Files.writeString(configFile, "app.sqs.batch.size=7\n");
+        System.setProperty("app.config.file", configFile.toString());
+        AppConfig.reload();
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("app.config.file");
+        System.clearProperty("app.sqs.batch.linger-ms");
+        AppConfig.reload();
+    }
+
+    @Test
+    void appConfig_ResolvesSystemPropertyThenFileThenClasspath() {
+        // Given
+        System.setProperty("app.sqs.batch.linger-ms", "3");
+
+        // When / Then
+        assertEquals(3, AppConfig.getSqsBatchLingerMs());
+        assertEquals(7, AppConfig.getSqsBatchSize());
+        assertEquals("batch-job-bucket", AppConfig.getS3BucketName());
+        assertEquals("APP_SQS_BATCH_LINGER_MS", AppConfig.envName("app.sqs.batch.linger-ms"));
+    }
+
+    @Test
+    void checkForChanges_NotifiesListenersWithNewTuning() throws IOException {
+        // Given
+        ConfigReloader reloader = new ConfigReloader(configFile, 1000);
+        List<TuningConfig> applied = new ArrayList<>();
+        reloader.addListener(applied::add);
+
+        // When
+        reloader.checkForChanges();
+        Files.writeString(configFile, "app.sqs.batch.size=9\napp.retry.max-attempts=6\n");
+        reloader.checkForChanges();
+
+        // Then
+        assertEquals(1, applied.size());
+        assertEquals(9, applied.get(0).sqsBatchSize());
+        assertEquals(6, applied.get(0).maxRetryAttempts());
+        assertEquals(applied.get(0), reloader.current());
+        reloader.close();
+    }
+
+    @Test
+    void checkForChanges_KeepsSettingsWhenFileIsUnreadable() throws IOException {
+        // Given
+        ConfigReloader reloader = new ConfigReloader(configFile, 1000);
+        List<TuningConfig> applied = new ArrayList<>();
+        reloader.addListener(applied::add);
+        Files.delete(configFile);
+        Files.createDirectory(configFile);
+
+        // When
+        reloader.checkForChanges();
+
+        // Then
+        assertTrue(applied.isEmpty());
+        assertEquals(7, AppConfig.getSqsBatchSize());
+        reloader.close();
+    }
+}
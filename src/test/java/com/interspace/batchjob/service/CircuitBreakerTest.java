@@ -0,0 +1,82 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        // Given
+        CircuitBreaker breaker = new CircuitBreaker(3, 60_000, 1);
+
+        // When
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        // Then - the success in between reset the count
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // When
+        breaker.onFailure();
+
+        // Then
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenAllowsLimitedTrialCalls() throws Exception {
+        // Given
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, 1);
+        breaker.onFailure();
+        Thread.sleep(100);
+
+        // When & Then - one trial call goes through, the rest wait for its outcome
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        // When the trial succeeds
+        breaker.onSuccess();
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedTrialCallReopens() throws Exception {
+        // Given
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, 1);
+        breaker.onFailure();
+        Thread.sleep(100);
+        assertTrue(breaker.tryAcquire());
+
+        // When
+        breaker.onFailure();
+
+        // Then
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void neutralTrialCallHandsBackItsSlot() throws Exception {
+        // Given
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, 1);
+        breaker.onFailure();
+        Thread.sleep(100);
+        assertTrue(breaker.tryAcquire());
+
+        // When the trial ends in a client error
+        breaker.onNeutral();
+
+        // Then the breaker stays half-open and lets another trial through
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,118 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeadLetterBatcherTest {
+
+    private static final String DLQ_URL = "http://localhost:4566/000000000000/test-queue-dlq";
+    private static final String QUEUE_URL = "http://localhost:4566/000000000000/test-queue";
+    private static final int MAX_REQUEST_BYTES = 262_144;
+
+    @Mock
+    private SqsClient sqsClient;
+
+    private DeadLetterBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        // Long linger so that only explicit flushes send batches
+        batcher = new DeadLetterBatcher(sqsClient, DLQ_URL, QUEUE_URL, 10, 60_000, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    void flush_SplitsRequestsToStayUnderSqsSizeLimit() throws Exception {
+        // Given two 200 KiB bodies and one of 256 KiB, the largest a message can be
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+        Map<String, MessageAttributeValue> original = Map.of("tenant",
+                MessageAttributeValue.builder().dataType("String").stringValue("acme").build());
+        CompletableFuture<Void> first = batcher.submit(deadLetter("msg1", 200 * 1024, original));
+        CompletableFuture<Void> second = batcher.submit(deadLetter("msg2", 200 * 1024, original));
+        CompletableFuture<Void> largest = batcher.submit(deadLetter("msg3", MAX_REQUEST_BYTES, Map.of()));
+
+        // When
+        batcher.flush();
+
+        // Then: one request each, none over the limit, with every copy accepted
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(3)).sendMessageBatch(captor.capture());
+        for (SendMessageBatchRequest request : captor.getAllValues()) {
+            assertEquals(1, request.entries().size());
+            assertTrue(sizeOf(request) <= MAX_REQUEST_BYTES, "request bytes: " + sizeOf(request));
+        }
+        assertEquals("acme", captor.getAllValues().get(0).entries().get(0).messageAttributes().get("tenant").stringValue());
+        assertTrue(captor.getAllValues().get(0).entries().get(0).messageAttributes()
+                .containsKey(DeadLetterBatcher.FAILURE_REASON_ATTRIBUTE));
+        SendMessageBatchRequestEntry trimmed = captor.getAllValues().get(2).entries().get(0);
+        assertEquals("2", trimmed.id());
+        assertTrue(trimmed.messageAttributes().isEmpty());
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+        largest.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void flush_KeepsSmallMessagesInOneRequest() {
+        // Given
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            batcher.submit(deadLetter("msg" + i, 1024, Map.of()));
+        }
+        batcher.flush();
+
+        // Then
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(List.of("0", "1", "2"),
+                captor.getValue().entries().stream().map(SendMessageBatchRequestEntry::id).toList());
+    }
+
+    private static DeadLetterBatcher.DeadLetter deadLetter(String id, int bodyBytes,
+                                                           Map<String, MessageAttributeValue> attributes) {
+        Message message = Message.builder()
+                .messageId(id)
+                .body("x".repeat(bodyBytes))
+                .messageAttributes(attributes)
+                .build();
+        return new DeadLetterBatcher.DeadLetter(message, new RuntimeException("S3 unavailable"));
+    }
+
+    private static int sizeOf(SendMessageBatchRequest request) {
+        int bytes = 0;
+        for (SendMessageBatchRequestEntry entry : request.entries()) {
+            bytes += entry.messageBody().getBytes(StandardCharsets.UTF_8).length;
+            for (Map.Entry<String, MessageAttributeValue> attribute : entry.messageAttributes().entrySet()) {
+                bytes += attribute.getKey().length() + attribute.getValue().dataType().length()
+                        + attribute.getValue().stringValue().length();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,163 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeleteMessageBatcherTest {
+
+    private static final String QUEUE_URL = "http://localhost:4566/000000000000/test-queue";
+
+    @Mock
+    private SqsClient sqsClient;
+
+    private DeleteMessageBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        // Long linger so that only size thresholds and explicit flushes send batches
+        batcher = new DeleteMessageBatcher(sqsClient, QUEUE_URL, 10, 60_000, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    void submit_SendsBatchWhenFull() throws Exception {
+        // Given
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder().build());
+
+        // When
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batcher.submit(message(i)));
+        }
+
+        // Then
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(sqsClient, times(1)).deleteMessageBatch(captor.capture());
+        assertEquals(10, captor.getValue().entries().size());
+        assertEquals(QUEUE_URL, captor.getValue().queueUrl());
+        for (CompletableFuture<Void> future : futures) {
+            assertNull(future.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void flush_RetriesOnlyFailedEntriesAfterBackoff() throws Exception {
+        // Given
+        batcher.close();
+        batcher = new DeleteMessageBatcher("sqs-delete-batcher", sqsClient, QUEUE_URL, 10, 60_000, 3, attempt -> 200);
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder()
+                                .id("1").code("InternalError").message("try again").senderFault(false)
+                                .build())
+                        .build())
+                .thenReturn(DeleteMessageBatchResponse.builder().build());
+
+        CompletableFuture<Void> first = batcher.submit(message(0));
+        CompletableFuture<Void> second = batcher.submit(message(1));
+
+        // When
+        batcher.flush();
+
+        // Then: the failed entry is not resent straight away, but once its backoff has passed
+        verify(sqsClient, times(1)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        assertFalse(second.isDone());
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(sqsClient, timeout(2000).times(2)).deleteMessageBatch(captor.capture());
+        second.get(1, TimeUnit.SECONDS);
+        assertEquals(2, captor.getAllValues().get(0).entries().size());
+        assertEquals(1, captor.getAllValues().get(1).entries().size());
+        assertEquals("receipt-1", captor.getAllValues().get(1).entries().get(0).receiptHandle());
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+        assertTrue(second.isDone() && !second.isCompletedExceptionally());
+    }
+
+    @Test
+    void flush_FailsEntryOnceMaxAttemptsAreUsed() {
+        // Given
+        batcher.close();
+        batcher = new DeleteMessageBatcher("sqs-delete-batcher", sqsClient, QUEUE_URL, 10, 60_000, 3, attempt -> 10);
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder()
+                                .id("0").code("ThrottlingException").message("slow down").senderFault(false)
+                                .build())
+                        .build());
+
+        CompletableFuture<Void> future = batcher.submit(message(0));
+
+        // When
+        batcher.flush();
+
+        // Then
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+        assertTrue(exception.getCause().getMessage().contains("after 3 attempts"));
+        verify(sqsClient, times(3)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+    }
+
+    @Test
+    void flush_FailsSenderFaultEntriesWithoutRetry() {
+        // Given
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder()
+                                .id("0").code("ReceiptHandleIsInvalid").message("expired").senderFault(true)
+                                .build())
+                        .build());
+
+        CompletableFuture<Void> future = batcher.submit(message(0));
+
+        // When
+        batcher.flush();
+
+        // Then
+        verify(sqsClient, times(1)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void close_FlushesPendingEntries() {
+        // Given
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder().build());
+        CompletableFuture<Void> future = batcher.submit(message(0));
+
+        // When
+        batcher.close();
+
+        // Then
+        verify(sqsClient, times(1)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        assertTrue(future.isDone());
+        assertTrue(batcher.submit(message(1)).isCompletedExceptionally());
+    }
+
+    private static Message message(int index) {
+        return Message.builder()
+                .messageId("msg-" + index)
+                .receiptHandle("receipt-" + index)
+                .build();
+    }
+}
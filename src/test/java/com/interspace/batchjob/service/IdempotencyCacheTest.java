@@ -0,0 +1,81 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void contains_OnlyRecordedIds() {
+        // Given
+        IdempotencyCache cache = new IdempotencyCache(1000, 60_000, null, 1000);
+        String recorded = UUID.randomUUID().toString();
+
+        // When
+        cache.record(recorded);
+        cache.record("not-a-uuid");
+
+        // Then
+        assertTrue(cache.contains(recorded));
+        assertTrue(cache.contains("not-a-uuid"));
+        assertFalse(cache.contains(UUID.randomUUID().toString()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void record_NeverHoldsMoreThanMaxEntries() {
+        // Given
+        IdempotencyCache cache = new IdempotencyCache(100, 60_000, null, 1000);
+        String first = UUID.randomUUID().toString();
+        cache.record(first);
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            cache.record(UUID.randomUUID().toString());
+        }
+
+        // Then - the oldest generation was dropped to make room
+        assertTrue(cache.size() <= 100);
+        assertFalse(cache.contains(first));
+    }
+
+    @Test
+    void contains_ForgetsIdsAfterTtl() throws Exception {
+        // Given
+        IdempotencyCache cache = new IdempotencyCache(1000, 100, null, 1000);
+        String messageId = UUID.randomUUID().toString();
+        cache.record(messageId);
+
+        // When
+        Thread.sleep(150);
+
+        // Then
+        assertFalse(cache.contains(messageId));
+    }
+
+    @Test
+    void close_PersistsIdsForTheNextRun() {
+        // Given
+        Path file = tempDir.resolve("cache/idempotency.bin");
+        String messageId = UUID.randomUUID().toString();
+        IdempotencyCache cache = new IdempotencyCache(1000, 60_000, file, 60_000);
+        cache.record(messageId);
+
+        // When
+        cache.close();
+        IdempotencyCache reloaded = new IdempotencyCache(1000, 60_000, file, 60_000);
+
+        // Then
+        assertTrue(reloaded.contains(messageId));
+        assertEquals(1, reloaded.size());
+        reloaded.close();
+    }
+}
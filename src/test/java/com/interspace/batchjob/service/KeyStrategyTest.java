@@ -0,0 +1,76 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyStrategyTest {
+    // 2026-03-05T07:08:09Z
+    private static final long SENT_AT = 1772694489000L;
+
+    @Test
+    void key_FlatKeepsPrefixAndId() {
+        assertEquals("messages/msg1", new KeyStrategy(KeyStrategy.FLAT, 2).key("messages/", "msg1", message()));
+    }
+
+    @Test
+    void key_HashedSpreadsIdsOverStableShards() {
+        // Given
+        KeyStrategy strategy = new KeyStrategy(KeyStrategy.HASHED, 2);
+        Set<String> shards = new HashSet<>();
+
+        // When
+        for (int i = 0; i < 2000; i++) {
+            String key = strategy.key("messages/", UUID.randomUUID().toString(), message());
+            shards.add(key.substring("messages/".length(), key.indexOf('/', "messages/".length())));
+        }
+
+        // Then: close to all 256 two-digit shards are used, and a retry gets the same key
+        assertTrue(shards.size() > 240, "shards used: " + shards.size());
+        assertTrue(shards.stream().allMatch(shard -> shard.matches("[0-9a-f]{2}")));
+        assertEquals(strategy.key("messages/", "msg1", message()), strategy.key("messages/", "msg1", message()));
+    }
+
+    @Test
+    void key_TimePartitionedUsesSentTimestamp() {
+        KeyStrategy strategy = new KeyStrategy(KeyStrategy.TIME_PARTITIONED, 2);
+
+        assertEquals("messages/dt=2026-03-05/hour=07/msg1", strategy.key("messages/", "msg1", message()));
+        assertEquals("batches/dt=2026-03-05/hour=07/b1", strategy.key("batches/", "b1", SENT_AT));
+    }
+
+    @Test
+    void key_TemplateResolvesAndSanitizesAttributes() {
+        // Given
+        KeyStrategy strategy = new KeyStrategy("{prefix}tenant={attr:tenant}/{yyyy}/{MM}/{attr:region}/{id}", 2);
+
+        // When
+        String key = strategy.key("orders/", "msg1", message());
+
+        // Then
+        assertEquals("orders/tenant=acme_eu/2026/03/unknown/msg1", key);
+    }
+
+    @Test
+    void constructor_RejectsTemplatesThatCannotKeepKeysUnique() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyStrategy("{prefix}{yyyy}/{MM}", 2));
+        assertThrows(IllegalArgumentException.class, () -> new KeyStrategy("{prefix}{id}{nope}", 2));
+    }
+
+    private static Message message() {
+        return Message.builder()
+                .messageId("msg1")
+                .attributes(Map.of(MessageSystemAttributeName.SENT_TIMESTAMP, String.valueOf(SENT_AT)))
+                .messageAttributes(Map.of("tenant",
+                        MessageAttributeValue.builder().dataType("String").stringValue("acme/eu").build()))
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageAggregatorTest {
+
+    @Mock
+    private S3Uploader s3Uploader;
+
+    @Mock
+    private RetryService retryService;
+
+    private MessageAggregator aggregator;
+
+    @AfterEach
+    void tearDown() {
+        if (aggregator != null) {
+            aggregator.close();
+        }
+    }
+
+    @Test
+    void add_WritesOneObjectWhenMaxCountReached() throws Exception {
+        // Given
+        aggregator = newAggregator(1024, 3, 60_000);
+        stubUploads(CompletableFuture.completedFuture(null));
+
+        // When
+        CompletableFuture<Void> first = aggregator.add(message("1", "{\"a\":1}"));
+        CompletableFuture<Void> second = aggregator.add(message("2", "{\n  \"b\": 2\n}"));
+        assertFalse(first.isDone());
+        CompletableFuture<Void> third = aggregator.add(message("3", "{\"c\":3}"));
+
+        // Then
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        verify(s3Uploader, times(1)).uploadToS3Async(eq("test-bucket"), startsWith("batches/"),
+                content.capture(), eq(S3Uploader.NDJSON_CONTENT_TYPE));
+        assertEquals("{\"a\":1}\n{   \"b\": 2 }\n{\"c\":3}\n", content.getValue());
+        CompletableFuture.allOf(first, second, third).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void add_SealsBatchBeforeItExceedsMaxBytes() {
+        // Given
+        aggregator = newAggregator(20, 100, 60_000);
+        stubUploads(CompletableFuture.completedFuture(null));
+
+        // When
+        aggregator.add(message("1", "0123456789"));
+        aggregator.add(message("2", "0123456789"));
+
+        // Then - the second message would push the batch past 20 bytes
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        verify(s3Uploader, times(1)).uploadToS3Async(anyString(), anyString(), content.capture(), anyString());
+        assertEquals("0123456789\n", content.getValue());
+    }
+
+    @Test
+    void add_WritesBatchOnceMaxAgeReached() {
+        // Given
+        aggregator = newAggregator(1024, 100, 50);
+        stubUploads(CompletableFuture.completedFuture(null));
+
+        // When
+        CompletableFuture<Void> written = aggregator.add(message("1", "{}"));
+
+        // Then
+        verify(s3Uploader, timeout(1000)).uploadToS3Async(anyString(), anyString(), eq("{}\n"), anyString());
+        assertDoesNotThrow(() -> written.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void flush_FailsEveryMessageOfAFailedBatch() {
+        // Given
+        aggregator = newAggregator(1024, 100, 60_000);
+        stubUploads(CompletableFuture.failedFuture(new RuntimeException("S3 error")));
+        CompletableFuture<Void> first = aggregator.add(message("1", "{}"));
+        CompletableFuture<Void> second = aggregator.add(message("2", "{}"));
+
+        // When
+        aggregator.flush();
+
+        // Then
+        assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> second.get(1, TimeUnit.SECONDS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubUploads(CompletableFuture<Void> result) {
+        lenient().when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(result);
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0, Supplier.class).get());
+    }
+
+    private MessageAggregator newAggregator(long maxBytes, int maxCount, long maxAgeMs) {
+        return new MessageAggregator(s3Uploader, retryService, Runnable::run,
+                "test-bucket", "batches/", maxBytes, maxCount, maxAgeMs);
+    }
+
+    private static Message message(String id, String body) {
+        return Message.builder().messageId(id).body(body).receiptHandle("receipt-" + id).build();
+    }
+}
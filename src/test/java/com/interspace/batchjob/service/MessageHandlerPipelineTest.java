@@ -0,0 +1,101 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHandlerPipelineTest {
+
+    @Test
+    void filter_KeepsMatchingValuesOfNestedField() throws Exception {
+        // Given
+        FilterStage stage = new FilterStage("order.status", Set.of("paid", "shipped"), false);
+
+        // When / Then
+        assertEquals(1, stage.handle(handled("{\"id\":1,\"order\":{\"items\":[1,2],\"status\":\"paid\"}}")).size());
+        assertTrue(stage.handle(handled("{\"order\":{\"status\":\"cancelled\"}}")).isEmpty());
+        assertTrue(stage.handle(handled("{\"status\":\"paid\"}")).isEmpty());
+        assertTrue(stage.handle(handled("not json")).isEmpty());
+    }
+
+    @Test
+    void filter_ExcludeDropsMatchingMessages() throws Exception {
+        FilterStage stage = new FilterStage("type", Set.of("heartbeat"), true);
+
+        assertTrue(stage.handle(handled("{\"type\":\"heartbeat\"}")).isEmpty());
+        assertEquals(1, stage.handle(handled("{\"type\":\"order\"}")).size());
+    }
+
+    @Test
+    void transform_DropsAndAddsTopLevelFields() throws Exception {
+        // Given
+        TransformStage stage = new TransformStage(Set.of("password"), Map.of("source", "batch-job"),
+                List.of("tenant"), "messageId");
+        Message message = Message.builder().messageId("msg1")
+                .body("{\"user\":{\"password\":\"kept\"},\"password\":\"secret\",\"source\":\"old\"}")
+                .messageAttributes(Map.of("tenant", MessageAttributeValue.builder()
+                        .dataType("String").stringValue("acme").build()))
+                .build();
+
+        // When
+        List<HandledMessage> result = stage.handle(HandledMessage.of(message));
+
+        // Then
+        assertEquals("{\"user\":{\"password\":\"kept\"},\"source\":\"batch-job\",\"tenant\":\"acme\","
+                + "\"messageId\":\"msg1\"}", result.get(0).body());
+    }
+
+    @Test
+    void route_AppendsPrefixForMappedValue() throws Exception {
+        RouteStage stage = new RouteStage("type", Map.of("order", "orders/"), "");
+
+        assertEquals("orders/", stage.handle(handled("{\"type\":\"order\"}")).get(0).keyPrefix());
+        assertFalse(stage.handle(handled("{\"type\":\"other\"}")).get(0).isRouted());
+    }
+
+    @Test
+    void split_CreatesOneMessagePerArrayElementWithUniqueIds() throws Exception {
+        // When
+        List<HandledMessage> parts = new SplitStage().handle(handled("[{\"a\":1},{\"a\":[2,3]},\"x\"]"));
+
+        // Then
+        assertEquals(3, parts.size());
+        assertEquals("msg1-0", parts.get(0).id());
+        assertEquals("{\"a\":[2,3]}", parts.get(1).body());
+        assertEquals("\"x\"", parts.get(2).body());
+        assertTrue(new SplitStage().handle(handled("[]")).isEmpty());
+    }
+
+    @Test
+    void handle_SkipsLaterStagesOnceDropped() throws Exception {
+        // Given
+        MessageHandler failing = message -> {
+            throw new AssertionError("stage after the filter should not run");
+        };
+        MessageHandlerPipeline pipeline = new MessageHandlerPipeline(
+                List.of(new FilterStage("type", Set.of("order"), false), failing));
+
+        // When
+        List<HandledMessage> result = pipeline.handle(
+                Message.builder().messageId("msg1").body("{\"type\":\"other\"}").build());
+
+        // Then
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void createStage_LoadsCustomStageByClassName() {
+        assertInstanceOf(SplitStage.class, MessageHandlerPipeline.createStage(SplitStage.class.getName()));
+        assertThrows(IllegalArgumentException.class, () -> MessageHandlerPipeline.createStage("no.such.Stage"));
+    }
+
+    private static HandledMessage handled(String body) {
+        return HandledMessage.of(Message.builder().messageId("msg1").body(body).build());
+    }
+}
@@ -0,0 +1,98 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MultipartUploadStreamTest {
+
+    private static final PutObjectRequest TARGET = PutObjectRequest.builder()
+            .bucket("test-bucket")
+            .key("batches/big.ndjson")
+            .contentType("application/x-ndjson")
+            .build();
+
+    @Mock
+    private S3Client s3Client;
+
+    @Test
+    void close_UsesSinglePutForSmallPayload() throws IOException {
+        // Given
+        MultipartUploadStream stream = new MultipartUploadStream(s3Client, null, Runnable::run, TARGET, 10, 2);
+
+        // When
+        stream.write(new byte[4], 0, 4);
+        stream.close();
+
+        // Then
+        verify(s3Client).putObject(eq(TARGET), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        assertFalse(stream.isMultipart());
+    }
+
+    @Test
+    void close_CompletesMultipartUploadWithPartsInOrder() throws IOException {
+        // Given
+        stubMultipartUpload();
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(invocation -> UploadPartResponse.builder()
+                        .eTag("etag-" + invocation.getArgument(0, UploadPartRequest.class).partNumber())
+                        .build());
+        MultipartUploadStream stream = new MultipartUploadStream(s3Client, null, Runnable::run, TARGET, 10, 2);
+
+        // When - two full parts and a short last one
+        stream.write(new byte[25], 0, 25);
+        stream.close();
+
+        // Then
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3Client, times(3)).uploadPart(parts.capture(), any(RequestBody.class));
+        assertEquals(List.of(10L, 10L, 5L), parts.getAllValues().stream()
+                .map(UploadPartRequest::contentLength).collect(Collectors.toList()));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals("upload-1", complete.getValue().uploadId());
+        assertEquals(List.of("etag-1", "etag-2", "etag-3"), complete.getValue().multipartUpload().parts().stream()
+                .map(CompletedPart::eTag).collect(Collectors.toList()));
+        assertEquals(25, stream.bytesWritten());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void close_AbortsUploadWhenPartFails() {
+        // Given
+        stubMultipartUpload();
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(new RuntimeException("S3 error"));
+        MultipartUploadStream stream = new MultipartUploadStream(s3Client, null, Runnable::run, TARGET, 10, 2);
+
+        // When & Then
+        assertThrows(IOException.class, () -> {
+            stream.write(new byte[15], 0, 15);
+            stream.close();
+        });
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    private void stubMultipartUpload() {
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    }
+}
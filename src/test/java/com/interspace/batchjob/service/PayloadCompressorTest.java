@@ -0,0 +1,62 @@
+package com.interspace.batchjob.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadCompressorTest {
+
+    private static final String PAYLOAD = "{\"id\": \"test-123\", \"data\": \"" + "payload ".repeat(2000) + "\"}";
+
+    @Test
+    void compress_GzipRoundTrip() throws IOException {
+        // Given
+        PayloadCompressor compressor = new PayloadCompressor(PayloadCompressor.Codec.GZIP, 16);
+
+        // When
+        byte[] compressed = compressor.compress(PAYLOAD);
+
+        // Then
+        assertTrue(compressed.length < PAYLOAD.length() / 5);
+        assertEquals(PAYLOAD, decode(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void compress_ZstdRoundTrip() throws IOException {
+        // Given
+        PayloadCompressor compressor = new PayloadCompressor(PayloadCompressor.Codec.ZSTD, 16);
+
+        // When
+        byte[] compressed = compressor.compress(PAYLOAD);
+
+        // Then
+        assertTrue(compressed.length < PAYLOAD.length() / 5);
+        assertEquals(PAYLOAD, decode(new ZstdInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void compress_SkipsSmallPayloadsAndDisabledCodec() {
+        assertNull(new PayloadCompressor(PayloadCompressor.Codec.GZIP, 1024).compress("{}"));
+        assertNull(PayloadCompressor.disabled().compress(PAYLOAD));
+    }
+
+    @Test
+    void codec_FromName() {
+        assertEquals(PayloadCompressor.Codec.ZSTD, PayloadCompressor.Codec.fromName(" zstd "));
+        assertEquals(".gz", PayloadCompressor.Codec.fromName("gzip").keySuffix());
+        assertThrows(IllegalArgumentException.class, () -> PayloadCompressor.Codec.fromName("lz4"));
+    }
+
+    private static String decode(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.interspace.batchjob.service;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollerMetricsTest {
+
+    private InMemoryMetricReader reader;
+    private PollerMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        reader = InMemoryMetricReader.create();
+        SdkMeterProvider meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+        metrics = new PollerMetrics(meterProvider.get("test"), () -> 7, () -> 2, () -> 5);
+    }
+
+    @Test
+    void received_RecordsBacklogAgeFromSentTimestamp() {
+        // Given
+        long now = System.currentTimeMillis();
+        Message message = Message.builder()
+                .messageId("msg1")
+                .attributes(Map.of(MessageSystemAttributeName.SENT_TIMESTAMP, Long.toString(now - 1500)))
+                .build();
+
+        // When
+        metrics.received(message, now);
+
+        // Then
+        Collection<MetricData> data = reader.collectAllMetrics();
+        assertEquals(1, metric(data, "sqs.messages.received").getLongSumData().getPoints().iterator().next().getValue());
+        assertEquals(1500, metric(data, "sqs.message.queue_time").getHistogramData().getPoints().iterator().next().getSum());
+        assertEquals(7, metric(data, "sqs.messages.in_flight").getLongGaugeData().getPoints().iterator().next().getValue());
+    }
+
+    @Test
+    void processed_CountsByOutcome() {
+        // Given
+        long startNanos = System.nanoTime();
+
+        // When
+        metrics.processed(PollerMetrics.STORED, startNanos);
+        metrics.processed(PollerMetrics.STORED, startNanos);
+        metrics.processed(PollerMetrics.FAILED, startNanos);
+
+        // Then
+        MetricData processed = metric(reader.collectAllMetrics(), "sqs.messages.processed");
+        AttributeKey<String> outcome = AttributeKey.stringKey("outcome");
+        assertEquals(2, processed.getLongSumData().getPoints().stream()
+                .filter(point -> PollerMetrics.STORED.equals(point.getAttributes().get(outcome)))
+                .findFirst().orElseThrow().getValue());
+        assertEquals(1, processed.getLongSumData().getPoints().stream()
+                .filter(point -> PollerMetrics.FAILED.equals(point.getAttributes().get(outcome)))
+                .findFirst().orElseThrow().getValue());
+    }
+
+    private static MetricData metric(Collection<MetricData> data, String name) {
+        return data.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No metric " + name));
+    }
+}
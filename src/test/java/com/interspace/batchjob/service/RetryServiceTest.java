@@ -2,9 +2,16 @@ package com.interspace.batchjob.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.IOException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,4 +72,135 @@ class RetryServiceTest {
         assertEquals("Always fails", exception.getMessage());
         assertEquals(3, attempts.get()); // Should attempt 3 times (max attempts)
     }
-}
\ No newline at end of file
+
+    @Test
+    void executeWithRetryAsync_SuccessOnSecondAttempt() throws Exception {
+        // Given
+        AtomicInteger attempts = new AtomicInteger(0);
+        AtomicReference<String> retryThread = new AtomicReference<>();
+        Supplier<CompletableFuture<String>> operation = () -> {
+            if (attempts.incrementAndGet() == 1) {
+                return CompletableFuture.failedFuture(new RuntimeException("First attempt failed"));
+            }
+            retryThread.set(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture("success");
+        };
+
+        // When
+        CompletableFuture<String> result = retryService.executeWithRetryAsync(operation);
+
+        // Then - the caller is not held up by the backoff delay, and the retry does not run on the shared timer
+        assertFalse(result.isDone());
+        assertEquals("success", result.get(10, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+        assertNotEquals("retry-scheduler", retryThread.get());
+    }
+
+    @Test
+    void executeWithRetryAsync_FailsAfterMaxAttempts() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger(0);
+        Supplier<CompletableFuture<String>> operation = () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Always fails");
+        };
+
+        // When
+        CompletableFuture<String> result = retryService.executeWithRetryAsync(operation);
+
+        // Then
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> result.get(20, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void executeWithRetryAsync_RejectsCallsWhileCircuitOpen() {
+        // Given a breaker that opens on the first failure
+        retryService = new RetryService(new CircuitBreaker(1, 60_000, 1), RetryBudget.unlimited());
+        AtomicInteger attempts = new AtomicInteger(0);
+        Supplier<CompletableFuture<String>> operation = () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("S3 down"));
+        };
+
+        // When
+        CompletableFuture<String> first = retryService.executeWithRetryAsync(operation);
+        CompletableFuture<String> second = retryService.executeWithRetryAsync(operation);
+
+        // Then - the retry of the first call and the whole second call are rejected
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> first.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(RetryRejectedException.class, exception.getCause());
+        assertInstanceOf(IllegalStateException.class, exception.getCause().getCause());
+        assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+        assertTrue(retryService.isCircuitOpen());
+    }
+
+    @Test
+    void executeWithRetryAsync_ClientErrorIsNotRetriedAndLeavesCircuitClosed() {
+        // Given a breaker that would open on the first counted failure
+        retryService = new RetryService(new CircuitBreaker(1, 60_000, 1), RetryBudget.unlimited());
+        AtomicInteger attempts = new AtomicInteger(0);
+        Supplier<CompletableFuture<String>> operation = () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to upload to S3",
+                    S3Exception.builder().statusCode(403).message("Access Denied").build()));
+        };
+
+        // When
+        CompletableFuture<String> result = retryService.executeWithRetryAsync(operation);
+
+        // Then
+        assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+        assertEquals(CircuitBreaker.State.CLOSED, retryService.getCircuitState());
+    }
+
+    @Test
+    void isRetryable_ClassifiesServerErrorsAndThrottlingAsRetryable() {
+        assertTrue(RetryService.isRetryable(S3Exception.builder().statusCode(503).build()));
+        assertTrue(RetryService.isRetryable(S3Exception.builder().statusCode(429).build()));
+        assertTrue(RetryService.isRetryable(new RuntimeException(new IOException("connection reset"))));
+        assertFalse(RetryService.isRetryable(S3Exception.builder().statusCode(404).build()));
+    }
+
+    @Test
+    void executeWithRetryAsync_StopsRetryingWhenBudgetIsSpent() {
+        // Given a budget holding a single retry that is never refilled
+        retryService = new RetryService(CircuitBreaker.disabled(), new RetryBudget(0, 0, 1));
+        AtomicInteger attempts = new AtomicInteger(0);
+        Supplier<CompletableFuture<String>> operation = () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("Always fails"));
+        };
+
+        // When
+        CompletableFuture<String> result = retryService.executeWithRetryAsync(operation);
+
+        // Then
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> result.get(20, TimeUnit.SECONDS));
+        assertInstanceOf(RetryRejectedException.class, exception.getCause());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void executeWithRetryAsync_SingleAttemptDoesNotRetry() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger(0);
+        Supplier<CompletableFuture<String>> operation = () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("Fails once"));
+        };
+
+        // When
+        CompletableFuture<String> result = retryService.executeWithRetryAsync(operation, Runnable::run, 1);
+
+        // Then - fails straight away, without waiting for a backoff
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1, attempts.get());
+    }
+}
@@ -3,14 +3,38 @@ package com.interspace.batchjob.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CopyPartResult;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -21,6 +45,9 @@ class S3UploaderTest {
     @Mock
     private S3Client s3Client;
 
+    @Mock
+    private S3AsyncClient s3AsyncClient;
+
     private S3Uploader s3Uploader;
 
     @BeforeEach
@@ -66,4 +93,167 @@ class S3UploaderTest {
         
         verify(s3Client, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void uploadToS3_CompressesLargePayload() {
+        // Given
+        S3Uploader gzipUploader = new S3Uploader(s3Client, null, 4,
+                new PayloadCompressor(PayloadCompressor.Codec.GZIP, 16));
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().eTag("test-etag").build());
+
+        // When
+        gzipUploader.uploadToS3("test-bucket", "messages/1.json", "{\"data\": \"" + "x".repeat(100) + "\"}");
+
+        // Then
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(captor.capture(), any(RequestBody.class));
+        assertEquals("messages/1.json.gz", captor.getValue().key());
+        assertEquals("gzip", captor.getValue().contentEncoding());
+        assertEquals("application/json", captor.getValue().contentType());
+    }
+
+    @Test
+    void uploadToS3_SkipsCompressionBelowThreshold() {
+        // Given
+        S3Uploader gzipUploader = new S3Uploader(s3Client, null, 4,
+                new PayloadCompressor(PayloadCompressor.Codec.GZIP, 1024));
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().eTag("test-etag").build());
+
+        // When
+        gzipUploader.uploadToS3("test-bucket", "messages/1.json", "{}");
+
+        // Then
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(captor.capture(), any(RequestBody.class));
+        assertEquals("messages/1.json", captor.getValue().key());
+        assertNull(captor.getValue().contentEncoding());
+    }
+
+    @Test
+    void uploadToS3Async_Success() throws Exception {
+        // Given
+        S3Uploader asyncUploader = new S3Uploader(s3Client, s3AsyncClient, 4);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().eTag("test-etag").build()));
+
+        // When
+        asyncUploader.uploadToS3Async("test-bucket", "test-key", "test-data").get(1, TimeUnit.SECONDS);
+
+        // Then
+        verify(s3AsyncClient, times(1)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void uploadToS3Async_Failure() {
+        // Given
+        S3Uploader asyncUploader = new S3Uploader(s3Client, s3AsyncClient, 4);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 error")));
+
+        // When
+        CompletableFuture<Void> result = asyncUploader.uploadToS3Async("test-bucket", "test-key", "test-data");
+
+        // Then
+        assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void uploadToS3Async_LimitsOutstandingUploads() throws Exception {
+        // Given
+        S3Uploader asyncUploader = new S3Uploader(s3Client, s3AsyncClient, 1);
+        CompletableFuture<PutObjectResponse> firstPut = new CompletableFuture<>();
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(firstPut)
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+
+        // When both are started from this thread
+        asyncUploader.uploadToS3Async("test-bucket", "key-1", "data");
+        CompletableFuture<Void> second = asyncUploader.uploadToS3Async("test-bucket", "key-2", "data");
+
+        // Then - the caller is not blocked, and the second PUT is only sent once the first finishes
+        assertFalse(second.isDone());
+        verify(s3AsyncClient, times(1)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        firstPut.complete(PutObjectResponse.builder().build());
+        second.get(1, TimeUnit.SECONDS);
+        verify(s3AsyncClient, times(2)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+    }
+
+    @Test
+    void uploadToS3Async_RunsBlockingUploadOffCallerThread() throws Exception {
+        // Given no async client, so the PUT can only be made with the blocking client
+        CompletableFuture<Void> putStarted = new CompletableFuture<>();
+        CompletableFuture<Void> putMayFinish = new CompletableFuture<>();
+        AtomicReference<String> putThread = new AtomicReference<>();
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            putThread.set(Thread.currentThread().getName());
+            putStarted.complete(null);
+            putMayFinish.get(1, TimeUnit.SECONDS);
+            return PutObjectResponse.builder().eTag("test-etag").build();
+        });
+
+        // When
+        CompletableFuture<Void> result = s3Uploader.uploadToS3Async("test-bucket", "test-key", "test-data");
+
+        // Then - the caller gets the future back while the PUT is still running on the blocking pool
+        putStarted.get(1, TimeUnit.SECONDS);
+        assertFalse(result.isDone());
+        putMayFinish.complete(null);
+        result.get(1, TimeUnit.SECONDS);
+        assertTrue(putThread.get().startsWith("s3-blocking-"), putThread.get());
+    }
+
+    @Test
+    void copyToS3Async_DoesNotBlockCaller() throws Exception {
+        // Given
+        S3Uploader asyncUploader = new S3Uploader(s3Client, s3AsyncClient, 4);
+        CompletableFuture<HeadObjectResponse> head = new CompletableFuture<>();
+        when(s3AsyncClient.headObject(any(HeadObjectRequest.class))).thenReturn(head);
+        when(s3AsyncClient.copyObject(any(CopyObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CopyObjectResponse.builder().build()));
+
+        // When
+        CompletableFuture<Void> result = asyncUploader.copyToS3Async("source", "in/1", "test-bucket", "out/1");
+
+        // Then - the caller gets the future back while the HEAD is still outstanding
+        verify(s3AsyncClient, never()).copyObject(any(CopyObjectRequest.class));
+        head.complete(HeadObjectResponse.builder().contentLength(1024L).build());
+        result.get(1, TimeUnit.SECONDS);
+        verify(s3AsyncClient).copyObject(any(CopyObjectRequest.class));
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void copyToS3_CopiesLargeObjectWithBoundedParallelParts() {
+        // Given a 6 GiB object, above the 5 GiB CopyObject limit
+        long size = 6L * 1024 * 1024 * 1024;
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(size).build());
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(s3Client.uploadPartCopy(any(UploadPartCopyRequest.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return UploadPartCopyResponse.builder()
+                    .copyPartResult(CopyPartResult.builder().eTag("etag").build())
+                    .build();
+        });
+
+        // When
+        s3Uploader.copyToS3("source", "in/1", "test-bucket", "out/1");
+
+        // Then - 12 parts of 512 MiB, never more than app.s3.multipart.parallelism (4) at a time
+        ArgumentCaptor<CompleteMultipartUploadRequest> captor =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(captor.capture());
+        assertEquals(12, captor.getValue().multipartUpload().parts().size());
+        assertEquals(12, captor.getValue().multipartUpload().parts().get(11).partNumber());
+        assertTrue(maxInFlight.get() <= 4, "parts in flight: " + maxInFlight.get());
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+}
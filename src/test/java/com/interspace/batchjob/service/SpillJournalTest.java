@@ -0,0 +1,223 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SpillJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private S3Uploader s3Uploader;
+
+    @Test
+    void append_CompletesOnSyncAndUploadsSealedSegmentInBackground() throws Exception {
+        // Given
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        SpillJournal journal = newJournal(1024 * 1024, 4);
+
+        // When
+        CompletableFuture<Void> first = journal.append("bucket", "messages/msg1.json", "{\"n\":1}");
+        CompletableFuture<Void> second = journal.append("bucket", "messages/msg2.json", "{\"n\":2}");
+
+        // Then: both are durable, uploaded once the segment ages out, and the file is kept for reuse
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+        verify(s3Uploader, timeout(2000)).uploadToS3Async("bucket", "messages/msg1.json", "{\"n\":1}");
+        verify(s3Uploader, timeout(2000)).uploadToS3Async("bucket", "messages/msg2.json", "{\"n\":2}");
+        awaitPendingSegments(journal, 0);
+        assertEquals(List.of("free-0.log"), fileNames());
+        journal.close();
+    }
+
+    @Test
+    void constructor_ReplaysSegmentsLeftByPreviousRun() throws Exception {
+        // Given a run that spilled two records while S3 was failing
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")));
+        SpillJournal crashed = new SpillJournal(directory, 1024 * 1024, 4, 5, 50, 8, 100, 10, s3Uploader,
+                CircuitBreaker.disabled());
+        crashed.append("bucket", "messages/msg1.json", "one").get(1, TimeUnit.SECONDS);
+        crashed.append("bucket", "messages/msg2.json", "two").get(1, TimeUnit.SECONDS);
+        crashed.close();
+        assertEquals(List.of("segment-0.log"), fileNames());
+
+        // When the next run starts with S3 back
+        reset(s3Uploader);
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        SpillJournal restarted = newJournal(1024 * 1024, 4);
+
+        // Then both records are uploaded and new segments continue the sequence
+        verify(s3Uploader, timeout(2000)).uploadToS3Async("bucket", "messages/msg1.json", "one");
+        verify(s3Uploader, timeout(2000)).uploadToS3Async("bucket", "messages/msg2.json", "two");
+        awaitPendingSegments(restarted, 0);
+        restarted.append("bucket", "messages/msg3.json", "three").get(1, TimeUnit.SECONDS);
+        assertTrue(fileNames().contains("segment-1.log"));
+        restarted.close();
+    }
+
+    @Test
+    void constructor_NumbersNewSegmentsAfterRecycledAndQuarantinedFiles() throws Exception {
+        // Given a run that drained one segment and quarantined the record of the next
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(s3Uploader.uploadToS3Async("bucket", "messages/msg2.json", "two"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")));
+        SpillJournal previous = newJournal(1024 * 1024, 4);
+        previous.append("bucket", "messages/msg1.json", "one").get(1, TimeUnit.SECONDS);
+        awaitPendingSegments(previous, 0);
+        previous.append("bucket", "messages/msg2.json", "two").get(1, TimeUnit.SECONDS);
+        awaitPendingSegments(previous, 0);
+        previous.close();
+        assertEquals(List.of("free-1.log", "quarantine-1.log"), fileNames());
+
+        // When the next run reopens the journal and spills again
+        SpillJournal restarted = newJournal(1024 * 1024, 4);
+        restarted.append("bucket", "messages/msg3.json", "three").get(1, TimeUnit.SECONDS);
+
+        // Then the new segment follows every sequence on disk and nothing old is replayed
+        assertTrue(fileNames().contains("segment-2.log"), "files: " + fileNames());
+        verify(s3Uploader, timeout(2000)).uploadToS3Async("bucket", "messages/msg3.json", "three");
+        awaitPendingSegments(restarted, 0);
+        verify(s3Uploader, times(1)).uploadToS3Async("bucket", "messages/msg1.json", "one");
+        verify(s3Uploader, times(3)).uploadToS3Async("bucket", "messages/msg2.json", "two");
+        restarted.close();
+    }
+
+    @Test
+    void append_ReturnsNullOnceEverySegmentIsInUse() {
+        // Given S3 never answers, so no segment is ever freed
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString())).thenReturn(new CompletableFuture<>());
+        SpillJournal journal = newJournal(256, 2);
+        String body = "x".repeat(100);
+
+        // When
+        int accepted = 0;
+        while (accepted < 10 && journal.append("bucket", "key-" + accepted, body) != null) {
+            accepted++;
+        }
+
+        // Then: two segments of two records each, then callers fall back to direct uploads
+        assertEquals(4, accepted);
+        assertEquals(2, journal.pendingSegments());
+        journal.close();
+    }
+
+    @Test
+    void drain_UploadsOnlyRecordsThatFailedAgain() throws Exception {
+        // Given S3 rejects the second record once
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(s3Uploader.uploadToS3Async("bucket", "messages/msg2.json", "two"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        SpillJournal journal = newJournal(1024 * 1024, 4);
+
+        // When
+        journal.append("bucket", "messages/msg1.json", "one").get(1, TimeUnit.SECONDS);
+        journal.append("bucket", "messages/msg2.json", "two").get(1, TimeUnit.SECONDS);
+
+        // Then: the record already in S3 is not sent again
+        awaitPendingSegments(journal, 0);
+        verify(s3Uploader, times(1)).uploadToS3Async("bucket", "messages/msg1.json", "one");
+        verify(s3Uploader, times(2)).uploadToS3Async("bucket", "messages/msg2.json", "two");
+        assertEquals(0, journal.stuckSegments());
+        journal.close();
+    }
+
+    @Test
+    void drain_QuarantinesRecordOnceMaxAttemptsAreUsed() throws Exception {
+        // Given S3 always rejects the second record
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(s3Uploader.uploadToS3Async("bucket", "messages/msg2.json", "two"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")));
+        SpillJournal journal = newJournal(1024 * 1024, 4);
+
+        // When
+        journal.append("bucket", "messages/msg1.json", "one").get(1, TimeUnit.SECONDS);
+        journal.append("bucket", "messages/msg2.json", "two").get(1, TimeUnit.SECONDS);
+
+        // Then: after three attempts the record is set aside and the segment is recycled
+        awaitPendingSegments(journal, 0);
+        verify(s3Uploader, times(1)).uploadToS3Async("bucket", "messages/msg1.json", "one");
+        verify(s3Uploader, times(3)).uploadToS3Async("bucket", "messages/msg2.json", "two");
+        assertEquals(List.of("free-0.log", "quarantine-0.log"), fileNames());
+        journal.close();
+
+        // And renaming the quarantine file replays only that record
+        Files.delete(directory.resolve("free-0.log"));
+        Files.move(directory.resolve("quarantine-0.log"), directory.resolve("segment-0.log"));
+        reset(s3Uploader);
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        SpillJournal replayed = newJournal(1024 * 1024, 4);
+        verify(s3Uploader, timeout(2000)).uploadToS3Async("bucket", "messages/msg2.json", "two");
+        awaitPendingSegments(replayed, 0);
+        verify(s3Uploader, never()).uploadToS3Async("bucket", "messages/msg1.json", "one");
+        replayed.close();
+    }
+
+    @Test
+    void drain_StopsPassWhileDrainBreakerIsOpen() throws Exception {
+        // Given a drain breaker that opens after one failure and S3 failing every upload
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")));
+        CircuitBreaker drainBreaker = new CircuitBreaker(1, 60_000, 1);
+        SpillJournal journal = new SpillJournal(directory, 1024 * 1024, 4, 5, 50, 1, 3, 10, s3Uploader,
+                drainBreaker);
+
+        // When
+        journal.append("bucket", "messages/msg1.json", "one").get(1, TimeUnit.SECONDS);
+        journal.append("bucket", "messages/msg2.json", "two").get(1, TimeUnit.SECONDS);
+
+        // Then: one upload opens the breaker, and the segment stays pending and reported as stuck
+        long deadline = System.currentTimeMillis() + 2000;
+        while (journal.stuckSegments() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, journal.stuckSegments());
+        assertEquals(CircuitBreaker.State.OPEN, drainBreaker.getState());
+        verify(s3Uploader, times(1)).uploadToS3Async(anyString(), anyString(), anyString());
+        assertEquals(1, journal.pendingSegments());
+        journal.close();
+    }
+
+    private SpillJournal newJournal(int segmentBytes, int maxSegments) {
+        return new SpillJournal(directory, segmentBytes, maxSegments, 5, 50, 8, 3, 10, s3Uploader,
+                CircuitBreaker.disabled());
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void awaitPendingSegments(SpillJournal journal, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (journal.pendingSegments() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, journal.pendingSegments());
+    }
+}
@@ -3,6 +3,8 @@ package com.interspace.batchjob.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.services.sqs.SqsClient;
@@ -10,8 +12,20 @@ import software.amazon.awssdk.services.sqs.model.*;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -55,22 +69,63 @@ class SqsPollerTest {
         when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
                 .thenReturn(response);
         
-        when(retryService.executeWithRetry(any()))
+        List<String> deletedReceipts = new CopyOnWriteArrayList<>();
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
                 .thenAnswer(invocation -> {
-                    try {
-                        return invocation.getArgument(0, java.util.concurrent.Callable.class).call();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
+                    DeleteMessageBatchRequest request = invocation.getArgument(0);
+                    request.entries().forEach(entry -> deletedReceipts.add(entry.receiptHandle()));
+                    return DeleteMessageBatchResponse.builder().build();
                 });
+        
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0, Supplier.class).get());
 
         // When
         sqsPoller.pollMessages();
 
         // Then
         verify(sqsClient, times(1)).receiveMessage(any(ReceiveMessageRequest.class));
-        verify(retryService, times(2)).executeWithRetry(any());
-        verify(sqsClient, times(2)).deleteMessage(any(DeleteMessageRequest.class));
+        verify(retryService, timeout(1000).times(2)).executeWithRetryAsync(any(), any());
+        verify(s3Uploader, timeout(1000)).uploadToS3Async(anyString(), eq("messages/msg1.json"), eq("test message 1"));
+        verify(sqsClient, timeout(1000).atLeastOnce()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        awaitSize(deletedReceipts, 2);
+        assertTrue(deletedReceipts.containsAll(Arrays.asList("receipt1", "receipt2")));
+        verify(sqsClient, never()).deleteMessage(any(DeleteMessageRequest.class));
+    }
+
+    @Test
+    void pollMessages_RedeliveredMessageIsDeletedWithoutUploading() throws Exception {
+        // Given
+        Message message = Message.builder()
+                .messageId("msg1")
+                .body("test message 1")
+                .receiptHandle("receipt1")
+                .build();
+
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        List<String> deletedReceipts = new CopyOnWriteArrayList<>();
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenAnswer(invocation -> {
+                    DeleteMessageBatchRequest request = invocation.getArgument(0);
+                    request.entries().forEach(entry -> deletedReceipts.add(entry.receiptHandle()));
+                    return DeleteMessageBatchResponse.builder().build();
+                });
+        when(s3Uploader.uploadToS3Async(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0, Supplier.class).get());
+
+        // When the message is received, stored, and then delivered again
+        sqsPoller.pollMessages();
+        awaitSize(deletedReceipts, 1);
+        sqsPoller.pollMessages();
+
+        // Then
+        awaitSize(deletedReceipts, 2);
+        verify(s3Uploader, times(1)).uploadToS3Async(anyString(), anyString(), anyString());
     }
 
     @Test
@@ -88,7 +143,284 @@ class SqsPollerTest {
 
         // Then
         verify(sqsClient, times(1)).receiveMessage(any(ReceiveMessageRequest.class));
-        verify(retryService, never()).executeWithRetry(any());
-        verify(sqsClient, never()).deleteMessage(any(DeleteMessageRequest.class));
+        verify(retryService, never()).executeWithRetryAsync(any(), any());
+        verify(sqsClient, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+    }
+
+    @Test
+    void pollMessages_ReceivesNoMoreThanFreeWorkerSlots() throws Exception {
+        // Given
+        ExecutorService workerPool = Executors.newSingleThreadExecutor();
+        sqsPoller = new SqsPoller(sqsClient, s3Uploader, retryService, workerPool, 3);
+
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(Collections.emptyList()).build());
+
+        // When
+        sqsPoller.pollMessages();
+
+        // Then
+        ArgumentCaptor<ReceiveMessageRequest> captor = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        verify(sqsClient).receiveMessage(captor.capture());
+        assertEquals(3, captor.getValue().maxNumberOfMessages());
+        workerPool.shutdown();
+    }
+
+    @Test
+    void pollMessages_FailedMessageGoesToDlqBeforeDelete() throws Exception {
+        // Given
+        Message message = Message.builder()
+                .messageId("msg1")
+                .body("test message 1")
+                .receiptHandle("receipt1")
+                .build();
+
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("S3 unavailable")));
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder().build());
+
+        // When
+        sqsPoller.pollMessages();
+
+        // Then
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, timeout(1000)).sendMessageBatch(captor.capture());
+        SendMessageBatchRequestEntry entry = captor.getValue().entries().get(0);
+        assertEquals("test message 1", entry.messageBody());
+        assertEquals("S3 unavailable",
+                entry.messageAttributes().get(DeadLetterBatcher.FAILURE_REASON_ATTRIBUTE).stringValue());
+        assertEquals(IllegalStateException.class.getName(),
+                entry.messageAttributes().get(DeadLetterBatcher.FAILURE_TYPE_ATTRIBUTE).stringValue());
+
+        InOrder inOrder = inOrder(sqsClient);
+        inOrder.verify(sqsClient, timeout(1000)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        inOrder.verify(sqsClient, timeout(1000)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        verify(sqsClient, never()).sendMessage(any(SendMessageRequest.class));
+    }
+
+    @Test
+    void pollMessages_RejectedRetryLeavesMessageOnQueue() throws Exception {
+        // Given
+        Message message = Message.builder()
+                .messageId("msg1")
+                .body("test message 1")
+                .receiptHandle("receipt1")
+                .build();
+
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RetryRejectedException("Circuit breaker is open", null)));
+
+        // When
+        sqsPoller.pollMessages();
+
+        // Then
+        verify(retryService, timeout(1000)).executeWithRetryAsync(any(), any());
+        Thread.sleep(200);
+        verify(sqsClient, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(sqsClient, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+    }
+
+    @Test
+    void pollMessages_OriginalKeptWhenDlqRejectsCopy() throws Exception {
+        // Given
+        Message message = Message.builder()
+                .messageId("msg1")
+                .body("test message 1")
+                .receiptHandle("receipt1")
+                .build();
+
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("S3 unavailable")));
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder()
+                                .id("0").code("InvalidParameterValue").message("bad").senderFault(true)
+                                .build())
+                        .build());
+
+        // When
+        sqsPoller.pollMessages();
+
+        // Then
+        verify(sqsClient, timeout(1000)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        Thread.sleep(300); // longer than the batch linger time
+        verify(sqsClient, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+    }
+
+    @Test
+    void pollMessages_ClaimCheckIsCopiedInsideS3() throws Exception {
+        // Given
+        Message message = Message.builder()
+                .messageId("msg1")
+                .body("[\"software.amazon.payloadoffloading.PayloadS3Pointer\","
+                        + "{\"s3BucketName\":\"large-payloads\",\"s3Key\":\"2024/abc\"}]")
+                .receiptHandle("receipt1")
+                .build();
+
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(DeleteMessageBatchResponse.builder().build());
+        when(s3Uploader.copyToS3Async(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(retryService.executeWithRetryAsync(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0, Supplier.class).get());
+
+        // When
+        sqsPoller.pollMessages();
+
+        // Then
+        verify(s3Uploader, timeout(1000)).copyToS3Async(eq("large-payloads"), eq("2024/abc"),
+                anyString(), eq("messages/msg1.json"));
+        verify(s3Uploader, never()).uploadToS3Async(anyString(), anyString(), anyString());
+        verify(sqsClient, timeout(1000)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+    }
+
+    @Test
+    void pollMessages_ShortPollsWhenAskedForZeroWait() throws Exception {
+        // Given
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(Collections.emptyList()).build());
+
+        // When
+        int received = sqsPoller.pollMessages(0);
+
+        // Then
+        ArgumentCaptor<ReceiveMessageRequest> captor = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        verify(sqsClient).receiveMessage(captor.capture());
+        assertEquals(0, captor.getValue().waitTimeSeconds());
+        assertEquals(0, received);
+    }
+
+    @Test
+    void adjustReceivers_ScalesWithQueueDepth() {
+        // Given
+        int initial = sqsPoller.getActiveReceivers();
+
+        // When a deep backlog is sampled
+        sqsPoller.adjustReceivers(1000);
+
+        // Then one more receiver is activated
+        assertEquals(initial + 1, sqsPoller.getActiveReceivers());
+
+        // When the queue drains
+        sqsPoller.adjustReceivers(0);
+
+        // Then it falls back to the minimum
+        assertEquals(initial, sqsPoller.getActiveReceivers());
+    }
+
+    @Test
+    void adjustReceivers_DoesNotScaleUpWhenWorkersAreSaturated() throws Exception {
+        // Given every worker slot is taken by a message whose upload never finishes
+        ExecutorService workerPool = Executors.newSingleThreadExecutor();
+        sqsPoller = new SqsPoller(sqsClient, s3Uploader, retryService, workerPool, 1);
+        Message message = Message.builder().messageId("msg1").body("body").receiptHandle("receipt1").build();
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        when(retryService.executeWithRetryAsync(any(), any())).thenReturn(new CompletableFuture<>());
+        sqsPoller.pollMessages();
+        verify(retryService, timeout(1000)).executeWithRetryAsync(any(), any());
+        int initial = sqsPoller.getActiveReceivers();
+
+        // When
+        sqsPoller.adjustReceivers(1000);
+
+        // Then
+        assertEquals(initial, sqsPoller.getActiveReceivers());
+        workerPool.shutdownNow();
+    }
+
+    @Test
+    void stopPolling_ReleasesMessagesThatHaveNotStartedWithZeroVisibility() throws Exception {
+        // Given two received messages queued behind a busy worker
+        ExecutorService workerPool = Executors.newSingleThreadExecutor();
+        sqsPoller = new SqsPoller(sqsClient, s3Uploader, retryService, workerPool, 2);
+        CountDownLatch workerBusy = new CountDownLatch(1);
+        workerPool.execute(() -> {
+            try {
+                workerBusy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Message message1 = Message.builder().messageId("msg1").body("body 1").receiptHandle("receipt1").build();
+        Message message2 = Message.builder().messageId("msg2").body("body 2").receiptHandle("receipt2").build();
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message1, message2).build());
+        List<ChangeMessageVisibilityBatchRequestEntry> changes = new CopyOnWriteArrayList<>();
+        when(sqsClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenAnswer(invocation -> {
+                    ChangeMessageVisibilityBatchRequest request = invocation.getArgument(0);
+                    changes.addAll(request.entries());
+                    return ChangeMessageVisibilityBatchResponse.builder().build();
+                });
+        sqsPoller.pollMessages();
+
+        // When shutdown starts before the worker gets to them
+        Thread stopper = new Thread(sqsPoller::stopPolling);
+        stopper.start();
+        Thread.sleep(100);
+        workerBusy.countDown();
+        stopper.join(5000);
+
+        // Then both are handed back without being processed
+        assertFalse(stopper.isAlive());
+        verify(retryService, never()).executeWithRetryAsync(any(), any());
+        assertEquals(2, changes.size());
+        assertTrue(changes.stream().allMatch(entry -> entry.visibilityTimeout() == 0));
+        assertTrue(changes.stream().map(ChangeMessageVisibilityBatchRequestEntry::receiptHandle).toList()
+                .containsAll(Arrays.asList("receipt1", "receipt2")));
+    }
+
+    @Test
+    void pollMessages_FilteredMessageIsDeletedWithoutUploading() throws Exception {
+        // Given a filter stage that only keeps orders
+        System.setProperty("app.handler.stages", "filter");
+        System.setProperty("app.handler.filter.field", "type");
+        System.setProperty("app.handler.filter.values", "order");
+        try {
+            sqsPoller = new SqsPoller(sqsClient, s3Uploader, retryService);
+        } finally {
+            System.clearProperty("app.handler.stages");
+            System.clearProperty("app.handler.filter.field");
+            System.clearProperty("app.handler.filter.values");
+        }
+        Message heartbeat = Message.builder().messageId("msg1").body("{\"type\":\"heartbeat\"}")
+                .receiptHandle("receipt1").build();
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(heartbeat).build());
+        List<String> deletedReceipts = new CopyOnWriteArrayList<>();
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenAnswer(invocation -> {
+                    DeleteMessageBatchRequest request = invocation.getArgument(0);
+                    request.entries().forEach(entry -> deletedReceipts.add(entry.receiptHandle()));
+                    return DeleteMessageBatchResponse.builder().build();
+                });
+
+        // When
+        sqsPoller.pollMessages();
+
+        // Then
+        awaitSize(deletedReceipts, 1);
+        verify(retryService, never()).executeWithRetryAsync(any(), any());
+        verify(s3Uploader, never()).uploadToS3Async(anyString(), anyString(), anyString());
+    }
+
+    private static void awaitSize(List<?> list, int expectedSize) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (list.size() < expectedSize && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedSize, list.size());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VisibilityHeartbeatTest {
+
+    private static final String QUEUE_URL = "http://localhost:4566/000000000000/test-queue";
+    private static final int VISIBILITY_TIMEOUT_SECONDS = 30;
+
+    @Mock
+    private SqsClient sqsClient;
+
+    private ChangeVisibilityBatcher batcher;
+    private VisibilityHeartbeat heartbeat;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new ChangeVisibilityBatcher(sqsClient, QUEUE_URL, 10, 10, 3);
+        heartbeat = new VisibilityHeartbeat(batcher, VISIBILITY_TIMEOUT_SECONDS, 300);
+    }
+
+    @AfterEach
+    void tearDown() {
+        heartbeat.close();
+        batcher.close();
+    }
+
+    @Test
+    void extendExpiring_ExtendsOnlyMessagesCloseToExpiry() {
+        // Given
+        long now = System.currentTimeMillis();
+        heartbeat.track(message("msg1", "receipt1"), now - 20_000);
+        heartbeat.track(message("msg2", "receipt2"), now);
+        when(sqsClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenReturn(ChangeMessageVisibilityBatchResponse.builder().build());
+
+        // When
+        heartbeat.extendExpiring(now);
+
+        // Then
+        ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor =
+                ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+        verify(sqsClient, timeout(1000)).changeMessageVisibilityBatch(captor.capture());
+        assertEquals(1, captor.getValue().entries().size());
+        assertEquals("receipt1", captor.getValue().entries().get(0).receiptHandle());
+        assertEquals(VISIBILITY_TIMEOUT_SECONDS, captor.getValue().entries().get(0).visibilityTimeout());
+    }
+
+    @Test
+    void extendExpiring_SkipsUntrackedMessages() throws Exception {
+        // Given
+        long now = System.currentTimeMillis();
+        Message message = message("msg1", "receipt1");
+        heartbeat.track(message, now - 20_000);
+        heartbeat.untrack(message);
+
+        // When
+        heartbeat.extendExpiring(now);
+        Thread.sleep(100);
+
+        // Then
+        verify(sqsClient, never()).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+        assertEquals(0, heartbeat.trackedCount());
+    }
+
+    @Test
+    void extendExpiring_GivesUpAfterMaxExtension() throws Exception {
+        // Given
+        long now = System.currentTimeMillis();
+        heartbeat.track(message("msg1", "receipt1"), now - 290_000);
+
+        // When
+        heartbeat.extendExpiring(now);
+        Thread.sleep(100);
+
+        // Then
+        verify(sqsClient, never()).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+        assertEquals(0, heartbeat.trackedCount());
+    }
+
+    @Test
+    void extendExpiring_StopsTrackingRejectedReceiptHandles() {
+        // Given
+        long now = System.currentTimeMillis();
+        heartbeat.track(message("msg1", "receipt1"), now - 20_000);
+        when(sqsClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenReturn(ChangeMessageVisibilityBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder()
+                                .id("0")
+                                .code("ReceiptHandleIsInvalid")
+                                .message("expired")
+                                .senderFault(true)
+                                .build())
+                        .build());
+
+        // When
+        heartbeat.extendExpiring(now);
+
+        // Then
+        verify(sqsClient, timeout(1000)).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+        long deadline = System.currentTimeMillis() + 1000;
+        while (heartbeat.trackedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(0, heartbeat.trackedCount());
+    }
+
+    private static Message message(String messageId, String receiptHandle) {
+        return Message.builder()
+                .messageId(messageId)
+                .body("body")
+                .receiptHandle(receiptHandle)
+                .build();
+    }
+}
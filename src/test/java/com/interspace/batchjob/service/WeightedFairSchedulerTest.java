@@ -0,0 +1,76 @@
+package com.interspace.batchjob.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeightedFairSchedulerTest {
+
+    @Test
+    void acquire_SingleQueueGetsEverySlot() throws Exception {
+        // Given
+        WeightedFairScheduler scheduler = new WeightedFairScheduler(3, new int[] {1});
+
+        // When
+        int granted = scheduler.acquire(0, 10, 1, TimeUnit.SECONDS);
+        int more = scheduler.acquire(0, 10, 10, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertEquals(3, granted);
+        assertEquals(0, more);
+        assertEquals(3, scheduler.inFlight());
+    }
+
+    @Test
+    void acquire_SharesFollowWeights() {
+        WeightedFairScheduler scheduler = new WeightedFairScheduler(40, new int[] {3, 1});
+
+        assertEquals(30, scheduler.share(0));
+        assertEquals(10, scheduler.share(1));
+    }
+
+    @Test
+    void release_GoesToWaitingQueueBelowItsShareBeforeBorrower() throws Exception {
+        // Given: the bulk queue (0) has borrowed every slot, and both queues are waiting for more
+        WeightedFairScheduler scheduler = new WeightedFairScheduler(4, new int[] {1, 1});
+        assertEquals(4, scheduler.acquire(0, 4, 1, TimeUnit.SECONDS));
+        CompletableFuture<Integer> urgent = acquireInBackground(scheduler, 1);
+        CompletableFuture<Integer> bulk = acquireInBackground(scheduler, 0);
+
+        // When
+        scheduler.release(0, 1);
+
+        // Then: the freed slot belongs to the urgent queue's share
+        assertEquals(1, urgent.get(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertFalse(bulk.isDone());
+
+        // When: the urgent queue no longer waits, freed slots can be borrowed again
+        scheduler.release(0, 1);
+
+        // Then
+        assertEquals(1, bulk.get(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.inFlight(1));
+        assertEquals(3, scheduler.inFlight(0));
+    }
+
+    private static CompletableFuture<Integer> acquireInBackground(WeightedFairScheduler scheduler, int queue)
+            throws InterruptedException {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(scheduler.acquire(queue, 4, 10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING && !result.isDone()) {
+            Thread.sleep(1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package com.interspace.batchjob.sim;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemorySqsClientTest {
+
+    private static final String QUEUE_URL = "http://sqs.in-memory/000000000000/test-queue";
+
+    private final InMemorySqsClient sqsClient = new InMemorySqsClient();
+
+    @Test
+    void receiveMessage_HidesReceivedMessagesUntilDeleted() {
+        // Given
+        sqsClient.sendMessage(SendMessageRequest.builder().queueUrl(QUEUE_URL).messageBody("body").build());
+
+        // When
+        List<Message> first = receive(30);
+        List<Message> second = receive(30);
+        sqsClient.deleteMessage(DeleteMessageRequest.builder()
+                .queueUrl(QUEUE_URL)
+                .receiptHandle(first.get(0).receiptHandle())
+                .build());
+
+        // Then
+        assertEquals(1, first.size());
+        assertEquals("body", first.get(0).body());
+        assertEquals("1", first.get(0).attributes().get(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT));
+        assertTrue(second.isEmpty());
+        assertEquals(1, sqsClient.deletedCount(QUEUE_URL));
+        assertEquals(0, sqsClient.inFlightCount(QUEUE_URL));
+    }
+
+    @Test
+    void changeMessageVisibilityBatch_ZeroTimeoutRedeliversImmediately() {
+        // Given
+        sqsClient.sendMessage(SendMessageRequest.builder().queueUrl(QUEUE_URL).messageBody("body").build());
+        Message received = receive(30).get(0);
+
+        // When
+        ChangeMessageVisibilityBatchResponse response = sqsClient.changeMessageVisibilityBatch(
+                ChangeMessageVisibilityBatchRequest.builder()
+                        .queueUrl(QUEUE_URL)
+                        .entries(ChangeMessageVisibilityBatchRequestEntry.builder()
+                                .id("0")
+                                .receiptHandle(received.receiptHandle())
+                                .visibilityTimeout(0)
+                                .build())
+                        .build());
+        List<Message> redelivered = receive(30);
+
+        // Then
+        assertEquals(1, response.successful().size());
+        assertEquals(1, redelivered.size());
+        assertEquals(received.messageId(), redelivered.get(0).messageId());
+        assertEquals("2", redelivered.get(0).attributes().get(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT));
+    }
+
+    @Test
+    void deleteMessageBatch_ReportsUnknownReceiptHandlesAsFailed() {
+        // When
+        DeleteMessageBatchResponse response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                .queueUrl(QUEUE_URL)
+                .entries(DeleteMessageBatchRequestEntry.builder().id("0").receiptHandle("unknown").build())
+                .build());
+
+        // Then
+        assertEquals(1, response.failed().size());
+        assertEquals("ReceiptHandleIsInvalid", response.failed().get(0).code());
+    }
+
+    private List<Message> receive(int visibilityTimeoutSeconds) {
+        return sqsClient.receiveMessage(ReceiveMessageRequest.builder()
+                .queueUrl(QUEUE_URL)
+                .maxNumberOfMessages(10)
+                .visibilityTimeout(visibilityTimeoutSeconds)
+                .build()).messages();
+    }
+}
@@ -0,0 +1,38 @@
+package com.interspace.batchjob.sim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentile_IsWithinBucketPrecision() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+
+        // When
+        long p50 = histogram.percentile(50);
+        long p99 = histogram.percentile(99);
+        long p999 = histogram.percentile(99.9);
+
+        // Then
+        assertEquals(10_000, histogram.count());
+        assertEquals(5_000_000, p50, 5_000_000 * 0.035);
+        assertEquals(9_900_000, p99, 9_900_000 * 0.035);
+        assertEquals(9_990_000, p999, 9_990_000 * 0.035);
+        assertTrue(histogram.max() >= 10_000_000);
+    }
+
+    @Test
+    void bucket_UpperBoundContainsValue() {
+        for (long value : new long[] {0, 1, 31, 32, 33, 64, 65, 1_000_000, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value, "upper bound of " + value);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < value, "lower bound of " + value);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.interspace.batchjob.telemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErrorKeepingSpanProcessorTest {
+
+    private InMemorySpanExporter exporter;
+    private SdkTracerProvider tracerProvider;
+    private Tracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        // Samples nothing, so only spans promoted by the processor are exported
+        exporter = InMemorySpanExporter.create();
+        tracerProvider = SdkTracerProvider.builder()
+                .setSampler(new TelemetryConfig.RecordUnsampledSampler(Sampler.alwaysOff()))
+                .addSpanProcessor(new ErrorKeepingSpanProcessor(SimpleSpanProcessor.create(exporter),
+                        Set.of("sqs.send_to_dlq")))
+                .build();
+        tracer = tracerProvider.get("test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Test
+    void onEnd_ExportsUnsampledErrorSpans() {
+        // Given
+        Span span = tracer.spanBuilder("s3.upload").startSpan();
+        span.setStatus(StatusCode.ERROR, "boom");
+
+        // When
+        span.end();
+
+        // Then
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertEquals(1, spans.size());
+        assertEquals("s3.upload", spans.get(0).getName());
+        assertTrue(spans.get(0).getSpanContext().isSampled());
+        assertFalse(span.getSpanContext().isSampled());
+    }
+
+    @Test
+    void onEnd_ExportsAlwaysKeptSpansAndDropsOtherSuccesses() {
+        // Given
+        Span dlqSpan = tracer.spanBuilder("sqs.send_to_dlq").startSpan();
+        Span uploadSpan = tracer.spanBuilder("s3.upload").startSpan();
+
+        // When
+        dlqSpan.end();
+        uploadSpan.end();
+
+        // Then
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertEquals(1, spans.size());
+        assertEquals("sqs.send_to_dlq", spans.get(0).getName());
+    }
+
+    @Test
+    void createSampler_FallsBackToParentBasedAlwaysOnForUnknownNames() {
+        // When
+        Sampler sampler = TelemetryConfig.createSampler("bogus", 0.5);
+
+        // Then
+        assertEquals(Sampler.parentBased(Sampler.alwaysOn()).getDescription(), sampler.getDescription());
+        assertTrue(TelemetryConfig.createSampler("traceidratio", 0.5).getDescription().contains("0.5"));
+    }
+}